@@ -0,0 +1,116 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.DetalleFactura;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.Vendedor;
+import com.pe.jm.alpaca.repository.AnticipoAplicadoRepository;
+import com.pe.jm.alpaca.repository.DetalleFacturaRepository;
+import com.pe.jm.alpaca.repository.EnrutadorLecturas;
+import com.pe.jm.alpaca.repository.FacturaRepository;
+import com.pe.jm.alpaca.repository.VendedorRepository;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.mysqlclient.MySQLConnectOptions;
+import io.vertx.mysqlclient.MySQLPool;
+import io.vertx.sqlclient.PoolOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lecturas de los repositorios contra un MySQL real, con y sin caché de sentencias preparadas.
+ * Necesita una base con datos; la conexión se indica con propiedades del sistema, por ejemplo:
+ * -Djmh.args="ConsultasPreparadasBenchmark -jvmArgsAppend -Dmysql.port=3307 -Dmysql.password=..."
+ * y la factura a leer con -Dbenchmark.ruc-vendedor / -Dbenchmark.codigo-factura.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsultasPreparadasBenchmark {
+
+    @Param({"true", "false"})
+    private boolean cache;
+
+    private Vertx vertx;
+    private MySQLPool pool;
+    private FacturaRepository facturaRepository;
+    private DetalleFacturaRepository detalleFacturaRepository;
+    private AnticipoAplicadoRepository anticipoAplicadoRepository;
+    private VendedorRepository vendedorRepository;
+    private Long rucVendedor;
+    private String codigoFactura;
+
+    @Setup
+    public void setup() {
+        vertx = Vertx.vertx();
+        MySQLConnectOptions connectOptions = new MySQLConnectOptions()
+                .setHost(System.getProperty("mysql.host", "localhost"))
+                .setPort(Integer.getInteger("mysql.port", 3306))
+                .setDatabase(System.getProperty("mysql.database", "jm_alpaca_db"))
+                .setUser(System.getProperty("mysql.username", "root"))
+                .setPassword(System.getProperty("mysql.password", ""))
+                .setCachePreparedStatements(cache)
+                .setPreparedStatementCacheMaxSize(256)
+                .setCharset("utf8mb4");
+        // Una sola conexión: se mide el costo por consulta, no el paralelismo
+        pool = MySQLPool.pool(vertx, connectOptions, new PoolOptions().setMaxSize(1));
+
+        EnrutadorLecturas lecturas = new EnrutadorLecturas(pool, pool, 16, 0);
+        facturaRepository = new FacturaRepository(pool, RepositoriosEnMemoria.METRICAS, lecturas);
+        detalleFacturaRepository = new DetalleFacturaRepository(pool, RepositoriosEnMemoria.METRICAS, lecturas);
+        anticipoAplicadoRepository = new AnticipoAplicadoRepository(pool, RepositoriosEnMemoria.METRICAS, lecturas);
+        vendedorRepository = new VendedorRepository(pool, RepositoriosEnMemoria.METRICAS, lecturas, 16, 0, 0);
+
+        rucVendedor = Long.getLong("benchmark.ruc-vendedor", 20608587030L);
+        codigoFactura = System.getProperty("benchmark.codigo-factura", "E001-1");
+        if (esperar(facturaRepository.findByRucVendedorAndCodigoFactura(rucVendedor, codigoFactura)) == null) {
+            throw new IllegalStateException("No existe la factura " + rucVendedor + " " + codigoFactura);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        esperar(pool.close());
+        esperar(vertx.close());
+    }
+
+    @Benchmark
+    public Factura factura() {
+        return esperar(facturaRepository.findByRucVendedorAndCodigoFactura(rucVendedor, codigoFactura));
+    }
+
+    @Benchmark
+    public List<DetalleFactura> detalles() {
+        return esperar(detalleFacturaRepository.findByRucVendedorAndCodigoFactura(rucVendedor, codigoFactura));
+    }
+
+    @Benchmark
+    public List<AnticipoAplicado> anticipos() {
+        return esperar(anticipoAplicadoRepository.findByVenta(rucVendedor, codigoFactura));
+    }
+
+    @Benchmark
+    public Vendedor vendedor() {
+        return esperar(vendedorRepository.findByRuc(rucVendedor));
+    }
+
+    private static <T> T esperar(Future<T> future) {
+        return future.toCompletionStage().toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,107 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.dto.FacturaRequest;
+import com.pe.jm.alpaca.dto.FacturaResponse;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.module.SimpleModule;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Camino de conversión y registro de una factura, sin MySQL (ver RepositoriosEnMemoria).
+ * Se parametriza por número de líneas de detalle y de anticipos aplicados.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FacturaServiceBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int lineas;
+
+    @Param({"0", "5", "50"})
+    private int anticipos;
+
+    private FacturaService facturaService;
+    private ObjectMapper objectMapper;
+    private FacturaRequest request;
+    private byte[] json;
+    private List<String> numerosAnticipos;
+
+    @Setup
+    public void setup() {
+        facturaService = RepositoriosEnMemoria.facturaService();
+        objectMapper = JsonMapper.builder()
+                .addModule(new SimpleModule().addDeserializer(FacturaCompleta.class, new FacturaCompletaDeserializer()))
+                .build();
+        request = FacturasDePrueba.factura("E001-58", lineas, anticipos);
+        json = objectMapper.writeValueAsBytes(request);
+        numerosAnticipos = facturaService.obtenerNumerosAnticipos(request.getFactura());
+    }
+
+    @Benchmark
+    public FacturaRequest deserializarRequest() {
+        return objectMapper.readValue(json, FacturaRequest.class);
+    }
+
+    /**
+     * Camino anterior: árbol de FacturaRequest con Double y luego prepararFactura
+     */
+    @Benchmark
+    public FacturaCompleta deserializarYPreparar() {
+        return facturaService.prepararFactura(objectMapper.readValue(json, FacturaRequest.class).getFactura());
+    }
+
+    /**
+     * FacturaCompletaDeserializer: el JSON directo a las entidades, en una pasada
+     */
+    @Benchmark
+    public FacturaCompleta deserializarFacturaCompleta() {
+        return objectMapper.readValue(json, FacturaCompleta.class);
+    }
+
+    @Benchmark
+    public Factura convertirAFactura() {
+        return facturaService.convertirAFactura(request.getFactura());
+    }
+
+    /**
+     * Construye el buscador (una vez por factura, como en prepararFactura) y recorre todos los detalles
+     */
+    @Benchmark
+    public void buscarAnticipos(Blackhole blackhole) {
+        BuscadorAnticipos buscador = BuscadorAnticipos.de(numerosAnticipos);
+        for (FacturaRequest.DetalleItem item : request.getFactura().getDetalle()) {
+            blackhole.consume(buscador.buscar(item.getDescripcion()));
+        }
+    }
+
+    @Benchmark
+    public FacturaCompleta prepararFactura() {
+        return facturaService.prepararFactura(request.getFactura());
+    }
+
+    @Benchmark
+    public FacturaResponse procesarFactura() {
+        return facturaService.procesarFactura(request).join();
+    }
+}
@@ -0,0 +1,72 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.dto.FacturaRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Genera facturas sintéticas con el formato que envía n8n
+ */
+final class FacturasDePrueba {
+
+    private FacturasDePrueba() {
+    }
+
+    static FacturaRequest factura(String serieNumero, int lineas, int anticipos) {
+        List<FacturaRequest.FacturaAnticipoItem> numeros = new ArrayList<>(anticipos);
+        for (int i = 0; i < anticipos; i++) {
+            numeros.add(FacturaRequest.FacturaAnticipoItem.builder().numero("E001-" + (100 + i)).build());
+        }
+
+        List<FacturaRequest.DetalleItem> detalle = new ArrayList<>(lineas + anticipos);
+        for (int i = 0; i < lineas; i++) {
+            detalle.add(FacturaRequest.DetalleItem.builder()
+                    .cantidad(150.5 + i)
+                    .unidadMedida("KILOGRAMO")
+                    .descripcion("FIBRA DE ALPACA HUACAYA BABY 22.5 MICRONES COLOR BLANCO LOTE " + i)
+                    .valorUnitario(12.75)
+                    .build());
+        }
+        for (int i = 0; i < anticipos; i++) {
+            detalle.add(FacturaRequest.DetalleItem.builder()
+                    .cantidad(1.0)
+                    .unidadMedida("UNIDAD")
+                    .descripcion("ANTICIPO SEGUN FACTURA E001-" + (100 + i) + " DEL 01/12/2024")
+                    .valorUnitario(-500.0)
+                    .build());
+        }
+
+        return FacturaRequest.builder()
+                .factura(FacturaRequest.FacturaData.builder()
+                        .serieNumero(serieNumero)
+                        .rucEmisor("20608587030")
+                        .fechaEmision("06/12/2024")
+                        .ruc("20101019265")
+                        .moneda("DOLAR AMERICANO")
+                        .facturaAnticipo(numeros)
+                        .observacion("NUMERO DE CTA. BCP. DOLARES 215-7429221-1-62.")
+                        .bienServicioCodigo("035")
+                        .medioPagoCodigo("001")
+                        .numeroCuentaBancoNacion("00101794075")
+                        .porcentajeDetraccion(1.5)
+                        .montoDetraccion(1255.0)
+                        .estadoFactura("EMITIDO")
+                        .tipoFactura("VENTA")
+                        .detalle(detalle)
+                        .totales(FacturaRequest.TotalesData.builder()
+                                .subTotalVentas(83670.0)
+                                .anticipos(500.0 * anticipos)
+                                .descuentos(0.0)
+                                .valorVenta(83670.0 - 500.0 * anticipos)
+                                .isc(0.0)
+                                .igv(0.0)
+                                .otrosCargos(0.0)
+                                .otrosTributos(0.0)
+                                .montoRedondeo(0.0)
+                                .importeTotal(83670.0 - 500.0 * anticipos)
+                                .build())
+                        .build())
+                .build();
+    }
+}
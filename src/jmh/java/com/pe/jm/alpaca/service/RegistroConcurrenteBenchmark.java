@@ -0,0 +1,87 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.dto.FacturaRequest;
+import com.pe.jm.alpaca.dto.FacturaResponse;
+import io.vertx.core.Vertx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registro de muchas facturas a la vez en los dos modos de ejecución (facturas.ejecucion.modo):
+ * "async" encadena Futures de Vert.x y "virtual" bloquea un hilo virtual por factura.
+ * Cada consulta simulada tarda "latenciaMs" (ver RepositoriosEnMemoria.Latencia).
+ * El resultado es el tiempo en registrar las "concurrencia" facturas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistroConcurrenteBenchmark {
+
+    @Param({"async", "virtual"})
+    private String modo;
+
+    @Param({"100", "1000"})
+    private int concurrencia;
+
+    @Param({"2"})
+    private long latenciaMs;
+
+    private Vertx vertx;
+    private RepositoriosEnMemoria.Repositorios repositorios;
+    private FacturaRequest[] requests;
+
+    @Setup
+    public void setup() {
+        vertx = Vertx.vertx();
+        repositorios = new RepositoriosEnMemoria.Repositorios(new RepositoriosEnMemoria.Latencia(vertx, latenciaMs));
+        // Series distintas para que la idempotencia no una registros concurrentes
+        requests = new FacturaRequest[concurrencia];
+        for (int i = 0; i < concurrencia; i++) {
+            requests[i] = FacturasDePrueba.factura("E001-" + (1000 + i), 10, 2);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        repositorios.facturaBloqueanteService.detener();
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public int registrar() {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<FacturaResponse>[] registros = new CompletableFuture[concurrencia];
+        for (int i = 0; i < concurrencia; i++) {
+            registros[i] = "virtual".equals(modo)
+                    ? repositorios.facturaBloqueanteService.procesarFactura(requests[i])
+                    : repositorios.facturaService.procesarFactura(requests[i]);
+        }
+
+        int exitosos = 0;
+        for (CompletableFuture<FacturaResponse> registro : registros) {
+            if (registro.join().isSuccess()) {
+                exitosos++;
+            }
+        }
+        if (exitosos != concurrencia) {
+            throw new IllegalStateException("Registros fallidos: " + (concurrencia - exitosos));
+        }
+        return exitosos;
+    }
+}
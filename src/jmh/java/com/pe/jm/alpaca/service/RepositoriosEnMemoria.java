@@ -0,0 +1,208 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.eventos.BandejaEventos;
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.DetalleFactura;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.repository.AccesoBloqueante;
+import com.pe.jm.alpaca.repository.AnticipoAplicadoRepository;
+import com.pe.jm.alpaca.repository.ClienteRepository;
+import com.pe.jm.alpaca.repository.DetalleFacturaRepository;
+import com.pe.jm.alpaca.repository.FacturaRepository;
+import com.pe.jm.alpaca.repository.GestorTransacciones;
+import com.pe.jm.alpaca.repository.LimitadorAdaptativo;
+import com.pe.jm.alpaca.repository.VendedorRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.SqlConnection;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Repositorios sustitutos sin MySQL para medir solo el costo de la capa de servicio:
+ * todos los vendedores y clientes existen, no hay duplicados y los inserts responden al instante,
+ * o tras una latencia simulada con un timer de Vert.x para imitar la ida y vuelta a MySQL.
+ */
+final class RepositoriosEnMemoria {
+
+    static final Metricas METRICAS = new Metricas(new SimpleMeterRegistry());
+    // Deshabilitado: mide el servicio sin rechazos por sobrecarga
+    static final LimitadorAdaptativo LIMITADOR = new LimitadorAdaptativo(METRICAS, false, 1, 1, 0, 0, 1);
+
+    // Sin catálogo cargado: las líneas quedan sin producto
+    static final IndiceProductos PRODUCTOS = new IndiceProductos(null, null, METRICAS, 0);
+
+    // Deshabilitado: no suma resúmenes de ventas
+    static final ResumenVentasService RESUMENES = new ResumenVentasService(null, PRODUCTOS, null, false, 0);
+    static final SaldoAnticiposService SALDOS = new SaldoAnticiposService(null, false, 0, 0);
+    static final ValidadorFactura VALIDADOR = new ValidadorFactura("off", new BigDecimal("0.01"), List.of());
+    static final BandejaEventos EVENTOS = new BandejaEventos(null, null, false);
+
+    private RepositoriosEnMemoria() {
+    }
+
+    static FacturaService facturaService() {
+        return new Repositorios(Latencia.NINGUNA).facturaService;
+    }
+
+    /**
+     * Latencia simulada de cada consulta; con 0 ms los Futures se devuelven ya completos
+     */
+    record Latencia(Vertx vertx, long milisegundos) {
+
+        static final Latencia NINGUNA = new Latencia(null, 0);
+
+        <T> Future<T> responder(T valor) {
+            if (milisegundos <= 0) {
+                return Future.succeededFuture(valor);
+            }
+            Promise<T> promise = Promise.promise();
+            vertx.setTimer(milisegundos, id -> promise.complete(valor));
+            return promise.future();
+        }
+    }
+
+    /**
+     * Los dos servicios de registro (async y virtual) sobre los mismos sustitutos
+     */
+    static final class Repositorios {
+
+        final FacturaService facturaService;
+        final FacturaBloqueanteService facturaBloqueanteService;
+
+        Repositorios(Latencia latencia) {
+            FacturaRepository facturas = new FacturaRepositoryEnMemoria(latencia);
+            DetalleFacturaRepository detalles = new DetalleFacturaRepositoryEnMemoria(latencia);
+            AnticipoAplicadoRepository anticipos = new AnticipoAplicadoRepositoryEnMemoria(latencia);
+            ClienteRepository clientes = new ClienteRepositoryEnMemoria(latencia);
+            VendedorRepository vendedores = new VendedorRepositoryEnMemoria(latencia);
+            ControlIdempotencia idempotencia = new ControlIdempotencia(0, 0);
+
+            facturaService = new FacturaService(facturas, detalles, anticipos, clientes, vendedores,
+                    new GestorTransaccionesEnMemoria(), idempotencia, new CacheFacturas(0, 0), METRICAS, LIMITADOR, PRODUCTOS, RESUMENES, SALDOS, VALIDADOR, EVENTOS, 500);
+            facturaBloqueanteService = new FacturaBloqueanteService(facturaService,
+                    new AccesoBloqueanteEnMemoria(), idempotencia, METRICAS, LIMITADOR);
+        }
+    }
+
+    static final class FacturaRepositoryEnMemoria extends FacturaRepository {
+        private final Latencia latencia;
+
+        FacturaRepositoryEnMemoria(Latencia latencia) {
+            super(null, METRICAS, null);
+            this.latencia = latencia;
+        }
+
+        @Override
+        public Future<Long> insert(SqlClient sqlClient, Factura factura) {
+            return latencia.responder(1L);
+        }
+
+        @Override
+        public Future<Long> insertBatch(SqlClient sqlClient, List<Factura> facturas) {
+            return latencia.responder((long) facturas.size());
+        }
+
+        @Override
+        public Future<Factura> findByRucVendedorAndCodigoFactura(Long rucVendedor, String codigoFactura) {
+            return latencia.responder(null);
+        }
+    }
+
+    static final class DetalleFacturaRepositoryEnMemoria extends DetalleFacturaRepository {
+        private final Latencia latencia;
+
+        DetalleFacturaRepositoryEnMemoria(Latencia latencia) {
+            super(null, METRICAS, null);
+            this.latencia = latencia;
+        }
+
+        @Override
+        public Future<Long> insertBatch(SqlClient sqlClient, List<DetalleFactura> detalles) {
+            return latencia.responder((long) detalles.size());
+        }
+    }
+
+    static final class AnticipoAplicadoRepositoryEnMemoria extends AnticipoAplicadoRepository {
+        private final Latencia latencia;
+
+        AnticipoAplicadoRepositoryEnMemoria(Latencia latencia) {
+            super(null, METRICAS, null);
+            this.latencia = latencia;
+        }
+
+        @Override
+        public Future<Long> insertBatch(SqlClient sqlClient, List<AnticipoAplicado> anticipos) {
+            return latencia.responder((long) anticipos.size());
+        }
+    }
+
+    static final class ClienteRepositoryEnMemoria extends ClienteRepository {
+        private final Latencia latencia;
+
+        ClienteRepositoryEnMemoria(Latencia latencia) {
+            super(null, METRICAS, null, 16, 0, 0);
+            this.latencia = latencia;
+        }
+
+        @Override
+        public Future<Boolean> existsByRuc(Long rucCliente) {
+            return latencia.responder(true);
+        }
+
+        @Override
+        public Future<Set<Long>> findRucsExistentes(Collection<Long> rucs) {
+            return latencia.responder(new HashSet<>(rucs));
+        }
+    }
+
+    static final class VendedorRepositoryEnMemoria extends VendedorRepository {
+        private final Latencia latencia;
+
+        VendedorRepositoryEnMemoria(Latencia latencia) {
+            super(null, METRICAS, null, 16, 0, 0);
+            this.latencia = latencia;
+        }
+
+        @Override
+        public Future<Boolean> existsByRuc(Long rucVendedor) {
+            return latencia.responder(true);
+        }
+
+        @Override
+        public Future<Set<Long>> findRucsExistentes(Collection<Long> rucs) {
+            return latencia.responder(new HashSet<>(rucs));
+        }
+    }
+
+    static final class GestorTransaccionesEnMemoria extends GestorTransacciones {
+        GestorTransaccionesEnMemoria() {
+            super(null, METRICAS, LIMITADOR);
+        }
+
+        @Override
+        public <T> Future<T> ejecutar(Function<SqlConnection, Future<T>> function) {
+            return function.apply(null);
+        }
+    }
+
+    static final class AccesoBloqueanteEnMemoria extends AccesoBloqueante {
+        AccesoBloqueanteEnMemoria() {
+            super(null, METRICAS, LIMITADOR);
+        }
+
+        @Override
+        public <T> T enTransaccion(Function<SqlConnection, T> trabajo) {
+            return trabajo.apply(null);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.pe.jm.alpaca.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caché acotada con expulsión LRU y expiración por TTL.
+ * Al superar maxSize se descarta la entrada usada hace más tiempo.
+ */
+public class LruCache<K, V> {
+
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entrada<V>> entradas;
+
+    public LruCache(int maxSize, long ttlMs) {
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entrada<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return el valor si existe y no ha expirado, null en caso contrario
+     */
+    public synchronized V get(K clave) {
+        Entrada<V> entrada = entradas.get(clave);
+        if (entrada == null) {
+            return null;
+        }
+        if (System.nanoTime() - entrada.expiracion() >= 0) {
+            entradas.remove(clave);
+            return null;
+        }
+        return entrada.valor();
+    }
+
+    public synchronized void put(K clave, V valor) {
+        entradas.put(clave, new Entrada<>(valor, System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized void invalidar(K clave) {
+        entradas.remove(clave);
+    }
+
+    public synchronized void invalidarTodo() {
+        entradas.clear();
+    }
+
+    private record Entrada<V>(V valor, long expiracion) {
+    }
+}
@@ -0,0 +1,72 @@
+package com.pe.jm.alpaca.cache;
+
+import java.util.Arrays;
+
+/**
+ * Caché acotada de existencia de RUCs con claves long primitivas (sin boxing).
+ * Es una tabla de mapeo directo: cada RUC cae en una sola posición y ante una
+ * colisión la entrada nueva reemplaza a la anterior, así el tamaño nunca crece.
+ * Las entradas positivas viven ttlExisteMs y las negativas (RUC inexistente)
+ * ttlNoExisteMs, que debe ser corto para ver pronto los RUCs recién creados.
+ */
+public class RucCache {
+
+    private static final byte VACIO = 0;
+    private static final byte EXISTE = 1;
+    private static final byte NO_EXISTE = 2;
+
+    private final long[] claves;
+    private final long[] expiraciones;
+    private final byte[] estados;
+    private final int mascara;
+    private final long ttlExisteNanos;
+    private final long ttlNoExisteNanos;
+
+    public RucCache(int capacidad, long ttlExisteMs, long ttlNoExisteMs) {
+        int tamano = Integer.highestOneBit(Math.max(capacidad, 2) - 1) << 1;
+        this.claves = new long[tamano];
+        this.expiraciones = new long[tamano];
+        this.estados = new byte[tamano];
+        this.mascara = tamano - 1;
+        this.ttlExisteNanos = ttlExisteMs * 1_000_000L;
+        this.ttlNoExisteNanos = ttlNoExisteMs * 1_000_000L;
+    }
+
+    /**
+     * @return TRUE/FALSE si el RUC está en caché y no ha expirado, null si hay que consultar la BD
+     */
+    public synchronized Boolean consultar(long ruc) {
+        int i = indice(ruc);
+        if (estados[i] == VACIO || claves[i] != ruc) {
+            return null;
+        }
+        if (System.nanoTime() - expiraciones[i] >= 0) {
+            estados[i] = VACIO;
+            return null;
+        }
+        return estados[i] == EXISTE ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    public synchronized void registrar(long ruc, boolean existe) {
+        int i = indice(ruc);
+        claves[i] = ruc;
+        estados[i] = existe ? EXISTE : NO_EXISTE;
+        expiraciones[i] = System.nanoTime() + (existe ? ttlExisteNanos : ttlNoExisteNanos);
+    }
+
+    public synchronized void invalidar(long ruc) {
+        int i = indice(ruc);
+        if (claves[i] == ruc) {
+            estados[i] = VACIO;
+        }
+    }
+
+    public synchronized void invalidarTodo() {
+        Arrays.fill(estados, VACIO);
+    }
+
+    private int indice(long ruc) {
+        long h = ruc * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascara;
+    }
+}
@@ -1,12 +1,17 @@
 package com.pe.jm.alpaca.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.micrometer.MicrometerMetricsOptions;
 import io.vertx.mysqlclient.MySQLConnectOptions;
 import io.vertx.mysqlclient.MySQLPool;
 import io.vertx.sqlclient.PoolOptions;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 @Configuration
 public class MySQLConfig {
@@ -38,13 +43,101 @@ public class MySQLConfig {
     @Value("${mysql.idle.timeout}")
     private int idleTimeout;
 
+    @Value("${mysql.pool.name:alpaca-mysql}")
+    private String poolName;
+
+    // 0 = un event loop del pool por núcleo
+    @Value("${mysql.pool.event-loops:0}")
+    private int poolEventLoops;
+
+    // 0 = valor por defecto de Vert.x (2 por núcleo)
+    @Value("${vertx.event-loops:0}")
+    private int eventLoops;
+
+    @Value("${mysql.prepared-statements.cache:true}")
+    private boolean cachePreparedStatements;
+
+    @Value("${mysql.prepared-statements.cache-max-size:256}")
+    private int preparedStatementCacheMaxSize;
+
+    @Value("${mysql.prepared-statements.cache-sql-limit:4096}")
+    private int preparedStatementCacheSqlLimit;
+
+    @Value("${mysql.replica.enabled:false}")
+    private boolean replicaHabilitada;
+
+    @Value("${mysql.replica.host:${mysql.host}}")
+    private String replicaHost;
+
+    @Value("${mysql.replica.port:${mysql.port}}")
+    private int replicaPort;
+
+    @Value("${mysql.replica.username:${mysql.username}}")
+    private String replicaUsername;
+
+    @Value("${mysql.replica.password:${mysql.password}}")
+    private String replicaPassword;
+
+    @Value("${mysql.replica.pool.max-size:${mysql.pool.max-size}}")
+    private int replicaMaxPoolSize;
+
+    /**
+     * Las métricas de Vert.x (uso y cola de espera del pool) van al mismo registro que Actuator
+     */
     @Bean
-    public Vertx vertx() {
-        return Vertx.vertx();
+    public Vertx vertx(MeterRegistry meterRegistry) {
+        VertxOptions options = new VertxOptions()
+                .setMetricsOptions(new MicrometerMetricsOptions()
+                        .setMicrometerRegistry(meterRegistry)
+                        .setEnabled(true));
+        if (eventLoops > 0) {
+            options.setEventLoopPoolSize(eventLoops);
+        }
+        return Vertx.vertx(options);
     }
 
+    /**
+     * Además de las métricas propias de Vert.x por conexión (vertx_sql_*, con el nombre del pool),
+     * publica el tamaño actual y máximo del pool; la espera por conexión se mide en GestorTransacciones.
+     * Las conexiones se reparten en round robin entre mysql.pool.event-loops event loops, así la lectura
+     * de respuestas de MySQL escala con los núcleos en lugar de depender del hilo que abrió cada conexión.
+     */
     @Bean
-    public MySQLPool mySQLPool(Vertx vertx) {
+    @Primary
+    public MySQLPool mySQLPool(Vertx vertx, MeterRegistry meterRegistry) {
+        MySQLPool pool = crearPool(vertx, host, port, username, password, maxPoolSize, poolName);
+        Gauge.builder("alpaca.pool.conexiones", pool::size)
+                .description("Conexiones abiertas en el pool de MySQL")
+                .register(meterRegistry);
+        Gauge.builder("alpaca.pool.max", () -> maxPoolSize)
+                .description("Tamaño máximo del pool de MySQL")
+                .register(meterRegistry);
+        return pool;
+    }
+
+    /**
+     * Pool de la réplica de lectura (ver EnrutadorLecturas), o el mismo primario si no hay réplica.
+     * Sin destroyMethod para no cerrar dos veces el primario; la réplica se cierra junto con el Vertx.
+     */
+    @Bean(destroyMethod = "")
+    public MySQLPool mySQLPoolLectura(Vertx vertx, MySQLPool primario, MeterRegistry meterRegistry) {
+        if (!replicaHabilitada) {
+            return primario;
+        }
+        MySQLPool replica = crearPool(vertx, replicaHost, replicaPort, replicaUsername, replicaPassword,
+                replicaMaxPoolSize, poolName + "-replica");
+        Gauge.builder("alpaca.pool.replica.conexiones", replica::size)
+                .description("Conexiones abiertas en el pool de la réplica de MySQL")
+                .register(meterRegistry);
+        return replica;
+    }
+
+    /**
+     * Cada conexión guarda sus sentencias preparadas (hasta cache-max-size, solo SQL de hasta
+     * cache-sql-limit caracteres): repetir una consulta no vuelve a hacer PREPARE en el servidor
+     */
+    private MySQLPool crearPool(Vertx vertx, String host, int port, String username, String password,
+                                int maxSize, String nombre) {
         MySQLConnectOptions connectOptions = new MySQLConnectOptions()
                 .setHost(host)
                 .setPort(port)
@@ -53,12 +146,18 @@ public class MySQLConfig {
                 .setPassword(password)
                 .setConnectTimeout(connectionTimeout)
                 .setIdleTimeout(idleTimeout)
+                .setMetricsName(nombre)
+                .setCachePreparedStatements(cachePreparedStatements)
+                .setPreparedStatementCacheMaxSize(preparedStatementCacheMaxSize)
+                .setPreparedStatementCacheSqlLimit(preparedStatementCacheSqlLimit)
                 .setCharset("utf8mb4")
                 .setCollation("utf8mb4_unicode_ci");
 
         PoolOptions poolOptions = new PoolOptions()
-                .setMaxSize(maxPoolSize)
-                .setMaxWaitQueueSize(maxWaitQueueSize);
+                .setMaxSize(maxSize)
+                .setMaxWaitQueueSize(maxWaitQueueSize)
+                .setEventLoopSize(poolEventLoops > 0 ? poolEventLoops : Runtime.getRuntime().availableProcessors())
+                .setName(nombre);
 
         return MySQLPool.pool(vertx, connectOptions, poolOptions);
     }
@@ -2,28 +2,88 @@ package com.pe.jm.alpaca.controller;
 
 import com.pe.jm.alpaca.dto.FacturaRequest;
 import com.pe.jm.alpaca.dto.FacturaResponse;
+import com.pe.jm.alpaca.dto.TicketResponse;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import com.pe.jm.alpaca.repository.SobrecargaException;
+import com.pe.jm.alpaca.service.ConsultaFacturaService;
+import com.pe.jm.alpaca.service.EscrituraDiferidaService;
+import com.pe.jm.alpaca.service.ExportacionFacturaService;
+import com.pe.jm.alpaca.service.FacturaBloqueanteService;
 import com.pe.jm.alpaca.service.FacturaService;
+import com.pe.jm.alpaca.service.ImportacionFacturaService;
+import com.pe.jm.alpaca.service.ModoValidacion;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.*;
+import tools.jackson.core.JacksonException;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/facturas")
 public class FacturaController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final FacturaService facturaService;
+    private final ConsultaFacturaService consultaFacturaService;
+    private final ImportacionFacturaService importacionFacturaService;
+    private final ExportacionFacturaService exportacionFacturaService;
+    private final ObjectProvider<EscrituraDiferidaService> escrituraDiferidaService;
+    private final FacturaBloqueanteService facturaBloqueanteService;
+    // "async": cadena de Futures de Vert.x; "virtual": código secuencial en hilos virtuales
+    private final boolean modoVirtual;
 
-    public FacturaController(FacturaService facturaService) {
+    public FacturaController(FacturaService facturaService,
+                             ConsultaFacturaService consultaFacturaService,
+                             ImportacionFacturaService importacionFacturaService,
+                             ExportacionFacturaService exportacionFacturaService,
+                             ObjectProvider<EscrituraDiferidaService> escrituraDiferidaService,
+                             FacturaBloqueanteService facturaBloqueanteService,
+                             @Value("${facturas.ejecucion.modo:async}") String modoEjecucion) {
         this.facturaService = facturaService;
+        this.consultaFacturaService = consultaFacturaService;
+        this.importacionFacturaService = importacionFacturaService;
+        this.exportacionFacturaService = exportacionFacturaService;
+        this.escrituraDiferidaService = escrituraDiferidaService;
+        this.facturaBloqueanteService = facturaBloqueanteService;
+        this.modoVirtual = "virtual".equalsIgnoreCase(modoEjecucion);
     }
 
+    /**
+     * @param validacion reglas de totales: strict (rechaza), warn (solo informa) u off; por defecto
+     *                   facturas.validacion.modo
+     */
     @PostMapping("/registrarFactura")
     public CompletableFuture<ResponseEntity<FacturaResponse>> registrarFactura(
-            @RequestBody FacturaRequest request) {
+            @RequestBody FacturaCompleta completa,
+            @RequestParam(required = false) String validacion) {
+
+        ModoValidacion modo;
+        try {
+            modo = ModoValidacion.de(validacion);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(FacturaResponse.builder()
+                    .success(false)
+                    .message(e.getMessage())
+                    .build()));
+        }
 
-        return facturaService.procesarFactura(request)
+        CompletableFuture<FacturaResponse> registro = modoVirtual
+                ? facturaBloqueanteService.procesarFactura(completa, modo)
+                : facturaService.procesarFactura(completa, modo);
+        return registro
                 .thenApply(response -> {
                     if (response.isSuccess()) {
                         return ResponseEntity.ok(response);
@@ -32,6 +92,13 @@ public class FacturaController {
                     }
                 })
                 .exceptionally(ex -> {
+                    SobrecargaException sobrecarga = sobrecarga(ex);
+                    if (sobrecarga != null) {
+                        return demasiadasSolicitudes(sobrecarga, FacturaResponse.builder()
+                                .success(false)
+                                .message(sobrecarga.getMessage())
+                                .build());
+                    }
                     FacturaResponse errorResponse = FacturaResponse.builder()
                             .success(false)
                             .message("Error inesperado: " + ex.getMessage())
@@ -39,4 +106,203 @@ public class FacturaController {
                     return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
                 });
     }
+
+    @PostMapping("/registrarFacturas")
+    public CompletableFuture<ResponseEntity<List<FacturaResponse>>> registrarFacturas(
+            @RequestBody List<FacturaRequest> requests,
+            @RequestParam(required = false) String validacion) {
+
+        ModoValidacion modo;
+        try {
+            modo = ModoValidacion.de(validacion);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(List.of(FacturaResponse.builder()
+                    .success(false)
+                    .message(e.getMessage())
+                    .build())));
+        }
+
+        return facturaService.procesarFacturas(requests, modo)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(ex -> {
+                    SobrecargaException sobrecarga = sobrecarga(ex);
+                    if (sobrecarga != null) {
+                        return demasiadasSolicitudes(sobrecarga, List.of(FacturaResponse.builder()
+                                .success(false)
+                                .message(sobrecarga.getMessage())
+                                .build()));
+                    }
+                    FacturaResponse errorResponse = FacturaResponse.builder()
+                            .success(false)
+                            .message("Error inesperado: " + ex.getMessage())
+                            .build();
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(List.of(errorResponse));
+                });
+    }
+
+    /**
+     * Importación masiva: recibe una factura JSON por línea y responde en streaming
+     * con los errores por línea y el progreso de cada lote
+     */
+    @PostMapping(value = "/importarFacturas", consumes = NDJSON)
+    public void importarFacturas(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        importacionFacturaService.importar(request.getInputStream(), response.getOutputStream());
+    }
+
+    /**
+     * Modo diferido: valida, guarda la factura en el journal local y responde 202 con un ticket.
+     * El registro en MySQL lo hace un proceso de fondo; el estado se consulta en /tickets/{ticket}.
+     * @param validacion reglas de totales, como en registrarFactura; una factura que las incumple
+     *                   en modo strict se rechaza con 400 sin pasar por el journal
+     */
+    @PostMapping("/registrarFacturaDiferida")
+    public CompletableFuture<ResponseEntity<TicketResponse>> registrarFacturaDiferida(
+            @RequestBody FacturaRequest request,
+            @RequestParam(required = false) String validacion) {
+
+        ModoValidacion modo;
+        try {
+            modo = ModoValidacion.de(validacion);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(TicketResponse.builder()
+                    .estado("RECHAZADA")
+                    .message(e.getMessage())
+                    .build()));
+        }
+
+        EscrituraDiferidaService servicio = escrituraDiferidaService.getIfAvailable();
+        if (servicio == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(TicketResponse.builder()
+                            .estado("ERROR")
+                            .message("El registro diferido no está habilitado (facturas.journal.enabled)")
+                            .build()));
+        }
+
+        return servicio.aceptar(request, modo)
+                .thenApply(ticket -> switch (ticket.getEstado()) {
+                    case "PENDIENTE" -> ResponseEntity.status(HttpStatus.ACCEPTED).body(ticket);
+                    case "RECHAZADA" -> ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ticket);
+                    default -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ticket);
+                })
+                .exceptionally(ex -> {
+                    SobrecargaException sobrecarga = sobrecarga(ex);
+                    if (sobrecarga != null) {
+                        return demasiadasSolicitudes(sobrecarga, TicketResponse.builder()
+                                .estado("ERROR")
+                                .message(sobrecarga.getMessage())
+                                .build());
+                    }
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(TicketResponse.builder()
+                                    .estado("ERROR")
+                                    .message("Error inesperado: " + ex.getMessage())
+                                    .build());
+                });
+    }
+
+    @GetMapping("/tickets/{ticket}")
+    public ResponseEntity<TicketResponse> consultarTicket(@PathVariable String ticket) {
+        EscrituraDiferidaService servicio = escrituraDiferidaService.getIfAvailable();
+        TicketResponse estado = servicio == null ? null : servicio.consultar(ticket);
+        if (estado == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(estado);
+    }
+
+    /**
+     * Factura registrada con sus detalles y anticipos aplicados
+     */
+    @GetMapping("/{rucVendedor}/{codigoFactura}")
+    public CompletableFuture<ResponseEntity<FacturaCompleta>> obtenerFactura(@PathVariable Long rucVendedor,
+                                                                             @PathVariable String codigoFactura) {
+        return consultaFacturaService.obtenerFactura(rucVendedor, codigoFactura)
+                .thenApply(factura -> factura == null
+                        ? ResponseEntity.notFound().<FacturaCompleta>build()
+                        : ResponseEntity.ok(factura));
+    }
+
+    /**
+     * Facturas del vendedor emitidas entre desde y hasta, paginadas por clave: para la página siguiente
+     * se envían despuesDeFecha y despuesDeCodigo del campo "siguiente" de la respuesta.
+     * La respuesta se escribe en streaming mientras se leen las filas.
+     */
+    @GetMapping("/vendedor/{rucVendedor}")
+    public void listarFacturas(@PathVariable Long rucVendedor,
+                               @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                               @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate despuesDeFecha,
+                               @RequestParam(required = false) String despuesDeCodigo,
+                               @RequestParam(required = false) Integer limite,
+                               HttpServletResponse response) throws IOException, InterruptedException {
+        if (hasta.isBefore(desde) || (limite != null && limite <= 0)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Rango de fechas o límite inválido");
+            return;
+        }
+        if ((despuesDeFecha == null) != (despuesDeCodigo == null)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "despuesDeFecha y despuesDeCodigo deben enviarse juntos");
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        consultaFacturaService.listarFacturas(rucVendedor, desde, hasta, despuesDeFecha, despuesDeCodigo, limite,
+                response.getOutputStream());
+    }
+
+    /**
+     * Descarga en CSV de las facturas emitidas entre desde y hasta, una línea por detalle
+     */
+    @GetMapping("/exportar")
+    public void exportarFacturas(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+                                 @RequestParam(required = false) Long rucVendedor,
+                                 HttpServletResponse response) throws IOException, InterruptedException {
+        if (hasta.isBefore(desde)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Rango de fechas inválido");
+            return;
+        }
+        response.setContentType("text/csv");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"facturas_" + desde + "_" + hasta + ".csv\"");
+        exportacionFacturaService.exportarCsv(desde, hasta, rucVendedor, response.getOutputStream());
+    }
+
+    /**
+     * Cuerpo ilegible o incompleto (por ejemplo, los campos que FacturaCompletaDeserializer reporta como
+     * faltantes): 400 con FacturaResponse, la misma forma que el resto de errores de registro
+     */
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<FacturaResponse> solicitudIlegible(HttpMessageNotReadableException e) {
+        Throwable causa = e.getMostSpecificCause();
+        String mensaje = causa instanceof JacksonException jackson ? jackson.getOriginalMessage() : causa.getMessage();
+        return ResponseEntity.badRequest().body(FacturaResponse.builder()
+                .success(false)
+                .message("Solicitud inválida: " + mensaje)
+                .build());
+    }
+
+    /**
+     * @return la sobrecarga que causó el error, o null si el error es otro
+     */
+    private static SobrecargaException sobrecarga(Throwable ex) {
+        for (Throwable causa = ex; causa != null; causa = causa.getCause()) {
+            if (causa instanceof SobrecargaException sobrecarga) {
+                return sobrecarga;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 429 con Retry-After, para que n8n reintente más tarde en lugar de tratarlo como un error
+     */
+    private static <T> ResponseEntity<T> demasiadasSolicitudes(SobrecargaException sobrecarga, T cuerpo) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(sobrecarga.getReintentarEnSegundos()))
+                .body(cuerpo);
+    }
 }
@@ -0,0 +1,108 @@
+package com.pe.jm.alpaca.controller;
+
+import com.pe.jm.alpaca.dto.FacturaResponse;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import com.pe.jm.alpaca.repository.SobrecargaException;
+import com.pe.jm.alpaca.service.FacturaService;
+import com.pe.jm.alpaca.service.ModoValidacion;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.BodyHandler;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Servidor HTTP en Vert.x Web con el mismo contrato que FacturaController para
+ * POST /api/facturas/registrarFactura: la petición se lee, se registra en MySQL y se responde
+ * en el mismo event loop, sin hilos de Tomcat de por medio.
+ */
+public class FacturaVerticle extends AbstractVerticle {
+
+    private final FacturaService facturaService;
+    private final ObjectMapper objectMapper;
+    private final int puerto;
+    private final long maxBytesCuerpo;
+
+    public FacturaVerticle(FacturaService facturaService, ObjectMapper objectMapper, int puerto, long maxBytesCuerpo) {
+        this.facturaService = facturaService;
+        this.objectMapper = objectMapper;
+        this.puerto = puerto;
+        this.maxBytesCuerpo = maxBytesCuerpo;
+    }
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        Router router = Router.router(vertx);
+        router.post("/api/facturas/registrarFactura")
+                .handler(BodyHandler.create().setBodyLimit(maxBytesCuerpo))
+                .handler(this::registrarFactura);
+
+        vertx.createHttpServer()
+                .requestHandler(router)
+                .listen(puerto)
+                .<Void>mapEmpty()
+                .onComplete(startPromise);
+    }
+
+    private void registrarFactura(RoutingContext ctx) {
+        FacturaCompleta completa;
+        ModoValidacion modo;
+        try {
+            modo = ModoValidacion.de(ctx.queryParams().get("validacion"));
+        } catch (IllegalArgumentException e) {
+            responder(ctx, 400, error(e.getMessage()));
+            return;
+        }
+        try {
+            Buffer cuerpo = ctx.body().buffer();
+            if (cuerpo == null || cuerpo.length() == 0) {
+                responder(ctx, 400, error("Solicitud inválida: cuerpo vacío"));
+                return;
+            }
+            completa = objectMapper.readValue(cuerpo.getBytes(), FacturaCompleta.class);
+        } catch (JacksonException e) {
+            responder(ctx, 400, error("Solicitud inválida: " + e.getOriginalMessage()));
+            return;
+        }
+
+        Future<FacturaResponse> registro;
+        try {
+            registro = facturaService.procesarFacturaEnVertx(completa, modo);
+        } catch (RuntimeException e) {
+            registro = Future.failedFuture(e);
+        }
+
+        registro
+                .onSuccess(response -> responder(ctx, response.isSuccess() ? 200 : 500, response))
+                .onFailure(ex -> {
+                    for (Throwable causa = ex; causa != null; causa = causa.getCause()) {
+                        if (causa instanceof SobrecargaException sobrecarga) {
+                            ctx.response().putHeader(HttpHeaders.RETRY_AFTER,
+                                    String.valueOf(sobrecarga.getReintentarEnSegundos()));
+                            responder(ctx, 429, error(sobrecarga.getMessage()));
+                            return;
+                        }
+                    }
+                    responder(ctx, 500, error("Error inesperado: " + ex.getMessage()));
+                });
+    }
+
+    private void responder(RoutingContext ctx, int estado, FacturaResponse response) {
+        ctx.response()
+                .setStatusCode(estado)
+                .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .end(Buffer.buffer(objectMapper.writeValueAsBytes(response)));
+    }
+
+    private static FacturaResponse error(String mensaje) {
+        return FacturaResponse.builder()
+                .success(false)
+                .message(mensaje)
+                .build();
+    }
+}
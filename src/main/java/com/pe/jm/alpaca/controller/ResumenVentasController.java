@@ -0,0 +1,82 @@
+package com.pe.jm.alpaca.controller;
+
+import com.pe.jm.alpaca.dto.ReconstruccionResponse;
+import com.pe.jm.alpaca.model.ResumenVenta;
+import com.pe.jm.alpaca.service.ResumenVentasService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Consulta y reconstrucción de los resúmenes de ventas (resumenes.enabled)
+ */
+@RestController
+@RequestMapping("/api/resumenes")
+@ConditionalOnProperty(name = "resumenes.enabled", havingValue = "true")
+public class ResumenVentasController {
+
+    private final ResumenVentasService resumenVentasService;
+    private final int limiteMaximo;
+
+    public ResumenVentasController(ResumenVentasService resumenVentasService,
+                                   @Value("${resumenes.consulta.limite:10000}") int limiteMaximo) {
+        this.resumenVentasService = resumenVentasService;
+        this.limiteMaximo = limiteMaximo;
+    }
+
+    /**
+     * Filas del resumen diario (periodo=diario) o mensual (periodo=mensual) del vendedor entre desde y hasta,
+     * opcionalmente de un cliente o una moneda
+     */
+    @GetMapping("/ventas/{rucVendedor}")
+    public CompletableFuture<ResponseEntity<List<ResumenVenta>>> consultarVentas(
+            @PathVariable Long rucVendedor,
+            @RequestParam(defaultValue = "mensual") String periodo,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(required = false) Long rucCliente,
+            @RequestParam(required = false) String moneda) {
+        boolean mensual = "mensual".equalsIgnoreCase(periodo);
+        if ((!mensual && !"diario".equalsIgnoreCase(periodo)) || hasta.isBefore(desde)) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        // En la tabla mensual la fecha es el primer día del mes
+        LocalDate inicio = mensual ? desde.withDayOfMonth(1) : desde;
+        return resumenVentasService.consultar(mensual, rucVendedor, inicio, hasta, rucCliente, moneda, limiteMaximo)
+                .thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * Recalcula desde las facturas los meses completos que tocan el rango
+     */
+    @PostMapping("/ventas/reconstruir")
+    public CompletableFuture<ResponseEntity<ReconstruccionResponse>> reconstruir(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        if (hasta.isBefore(desde)) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        LocalDate inicio = desde.withDayOfMonth(1);
+        LocalDate fin = hasta.withDayOfMonth(hasta.lengthOfMonth());
+        return resumenVentasService.reconstruir(inicio, fin)
+                .thenApply(filas -> ResponseEntity.ok(ReconstruccionResponse.builder()
+                        .desde(inicio)
+                        .hasta(fin)
+                        .filasDiarias(filas)
+                        .message("Resúmenes reconstruidos")
+                        .build()))
+                .exceptionally(ex -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(ReconstruccionResponse.builder()
+                                .desde(inicio)
+                                .hasta(fin)
+                                .message("Error al reconstruir resúmenes: " + ex.getMessage())
+                                .build()));
+    }
+}
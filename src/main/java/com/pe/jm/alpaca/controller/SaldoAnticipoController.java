@@ -0,0 +1,62 @@
+package com.pe.jm.alpaca.controller;
+
+import com.pe.jm.alpaca.dto.ReconstruccionSaldosResponse;
+import com.pe.jm.alpaca.model.SaldoAnticipo;
+import com.pe.jm.alpaca.service.SaldoAnticiposService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Consulta y reconstrucción de los saldos de anticipos (anticipos.saldo.enabled)
+ */
+@RestController
+@RequestMapping("/api/anticipos")
+@ConditionalOnProperty(name = "anticipos.saldo.enabled", havingValue = "true")
+public class SaldoAnticipoController {
+
+    private final SaldoAnticiposService saldoAnticiposService;
+    private final int limiteMaximo;
+
+    public SaldoAnticipoController(SaldoAnticiposService saldoAnticiposService,
+                                   @Value("${anticipos.saldo.consulta.limite:1000}") int limiteMaximo) {
+        this.saldoAnticiposService = saldoAnticiposService;
+        this.limiteMaximo = limiteMaximo;
+    }
+
+    @GetMapping("/{rucVendedor}/{codigoFactura}/saldo")
+    public CompletableFuture<ResponseEntity<SaldoAnticipo>> consultarSaldo(@PathVariable Long rucVendedor,
+                                                                          @PathVariable String codigoFactura) {
+        return saldoAnticiposService.consultar(rucVendedor, codigoFactura)
+                .thenApply(saldo -> saldo == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(saldo));
+    }
+
+    /**
+     * Saldos de los anticipos del vendedor; con pendientes=true solo los que aún tienen saldo
+     */
+    @GetMapping("/{rucVendedor}/saldos")
+    public CompletableFuture<ResponseEntity<List<SaldoAnticipo>>> consultarSaldos(
+            @PathVariable Long rucVendedor,
+            @RequestParam(defaultValue = "false") boolean pendientes) {
+        return saldoAnticiposService.consultarPorVendedor(rucVendedor, pendientes, limiteMaximo)
+                .thenApply(ResponseEntity::ok);
+    }
+
+    @PostMapping("/saldos/reconstruir")
+    public CompletableFuture<ResponseEntity<ReconstruccionSaldosResponse>> reconstruir() {
+        return saldoAnticiposService.reconstruir()
+                .thenApply(anticipos -> ResponseEntity.ok(ReconstruccionSaldosResponse.builder()
+                        .anticipos(anticipos)
+                        .message("Saldos de anticipos reconstruidos")
+                        .build()))
+                .exceptionally(ex -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(ReconstruccionSaldosResponse.builder()
+                                .message("Error al reconstruir saldos: " + ex.getMessage())
+                                .build()));
+    }
+}
@@ -0,0 +1,70 @@
+package com.pe.jm.alpaca.controller;
+
+import com.pe.jm.alpaca.service.FacturaService;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Despliega FacturaVerticle en el Vertx de MySQLConfig cuando vertx.web.enabled=true.
+ * Se despliegan vertx.web.instancias copias (por defecto una por núcleo), cada una en su event loop;
+ * Vert.x reparte las conexiones HTTP entre ellas porque comparten el puerto.
+ * Tomcat sigue atendiendo el resto de la API en server.port.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "vertx.web.enabled", havingValue = "true")
+public class ServidorVertxWeb {
+
+    private final Vertx vertx;
+    private final FacturaService facturaService;
+    private final ObjectMapper objectMapper;
+    private final int puerto;
+    private final long maxBytesCuerpo;
+    private final int instancias;
+
+    private String despliegue;
+
+    public ServidorVertxWeb(Vertx vertx,
+                            FacturaService facturaService,
+                            ObjectMapper objectMapper,
+                            @Value("${vertx.web.port:8081}") int puerto,
+                            @Value("${vertx.web.max-body-size:10485760}") long maxBytesCuerpo,
+                            @Value("${vertx.web.instancias:0}") int instancias) {
+        this.vertx = vertx;
+        this.facturaService = facturaService;
+        this.objectMapper = objectMapper;
+        this.puerto = puerto;
+        this.maxBytesCuerpo = maxBytesCuerpo;
+        this.instancias = instancias > 0 ? instancias : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Espera a que el puerto quede escuchando, así un puerto ocupado hace fallar el arranque
+     */
+    @PostConstruct
+    public void iniciar() throws Exception {
+        despliegue = vertx.deployVerticle(
+                        () -> new FacturaVerticle(facturaService, objectMapper, puerto, maxBytesCuerpo),
+                        new DeploymentOptions().setInstances(instancias))
+                .toCompletionStage()
+                .toCompletableFuture()
+                .get(30, TimeUnit.SECONDS);
+        log.info("Servidor Vert.x Web escuchando en el puerto {} con {} instancias", puerto, instancias);
+    }
+
+    @PreDestroy
+    public void detener() throws Exception {
+        if (despliegue != null) {
+            vertx.undeploy(despliegue).toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.pe.jm.alpaca.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Línea de la respuesta NDJSON de la importación masiva.
+ * tipo = "error" (una línea fallida), "progreso" (tras cada lote) o "resumen" (al final).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EventoImportacion {
+    private String tipo;
+    private Long linea;
+    private String codigoFactura;
+    private String mensaje;
+    private Long lineasLeidas;
+    private Long exitosas;
+    private Long fallidas;
+}
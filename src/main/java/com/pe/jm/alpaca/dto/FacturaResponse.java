@@ -1,10 +1,13 @@
 package com.pe.jm.alpaca.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -14,4 +17,11 @@ public class FacturaResponse {
     private String message;
     private String codigoFactura;
     private Long rucVendedor;
+    private List<String> errores;
+    // Resultado de las reglas de totales; null si la validación está desactivada (ver ModoValidacion)
+    private List<ResultadoRegla> validaciones;
+    // El fallo fue de conexión, timeout, saturación o un error transitorio de MySQL: reintentar puede funcionar.
+    // Solo lo usa el registro diferido para decidir si reintentar sin límite; no se envía al cliente
+    @JsonIgnore
+    private boolean transitorio;
 }
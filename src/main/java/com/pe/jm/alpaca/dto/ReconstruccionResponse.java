@@ -0,0 +1,22 @@
+package com.pe.jm.alpaca.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Resultado de recalcular los resúmenes de ventas: meses completos entre desde y hasta
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconstruccionResponse {
+    private LocalDate desde;
+    private LocalDate hasta;
+    private Long filasDiarias;
+    private String message;
+}
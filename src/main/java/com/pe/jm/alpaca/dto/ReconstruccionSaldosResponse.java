@@ -0,0 +1,18 @@
+package com.pe.jm.alpaca.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado de recalcular los saldos de anticipos desde las facturas
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconstruccionSaldosResponse {
+    private Long anticipos;
+    private String message;
+}
@@ -0,0 +1,16 @@
+package com.pe.jm.alpaca.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoRegla {
+    private String regla;
+    private boolean valido;
+    private String mensaje;
+}
@@ -0,0 +1,26 @@
+package com.pe.jm.alpaca.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Estado de una factura aceptada en modo diferido.
+ * estado = PENDIENTE (en el journal), REGISTRADA, ERROR (falló al escribir en MySQL)
+ * o RECHAZADA (no pasó la validación y no se guardó en el journal).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TicketResponse {
+    private String ticket;
+    private String estado;
+    private String message;
+    private String codigoFactura;
+    private Long rucVendedor;
+    private List<String> errores;
+}
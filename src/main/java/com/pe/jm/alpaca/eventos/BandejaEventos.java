@@ -0,0 +1,58 @@
+package com.pe.jm.alpaca.eventos;
+
+import com.pe.jm.alpaca.model.EventoFactura;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import com.pe.jm.alpaca.repository.EventoFacturaRepository;
+import io.vertx.core.Future;
+import io.vertx.sqlclient.SqlClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bandeja de salida (eventos.enabled): escribe un evento FACTURA_REGISTRADA por factura en la misma
+ * transacción que la registra, así el evento existe si y solo si la factura se confirmó.
+ * RelayEventos los publica después, fuera de la ruta del registro.
+ */
+@Component
+public class BandejaEventos {
+
+    public static final String FACTURA_REGISTRADA = "FACTURA_REGISTRADA";
+
+    private final EventoFacturaRepository eventoFacturaRepository;
+    private final ObjectMapper objectMapper;
+    private final boolean habilitado;
+
+    public BandejaEventos(EventoFacturaRepository eventoFacturaRepository,
+                          ObjectMapper objectMapper,
+                          @Value("${eventos.enabled:false}") boolean habilitado) {
+        this.eventoFacturaRepository = eventoFacturaRepository;
+        this.objectMapper = objectMapper;
+        this.habilitado = habilitado;
+    }
+
+    /**
+     * Inserta los eventos de las facturas con la conexión de la transacción de registro
+     */
+    public Future<Void> registrar(SqlClient conn, List<FacturaCompleta> completas) {
+        if (!habilitado) {
+            return Future.succeededFuture();
+        }
+
+        List<EventoFactura> eventos = new ArrayList<>(completas.size());
+        for (FacturaCompleta completa : completas) {
+            Factura factura = completa.getFactura();
+            eventos.add(EventoFactura.builder()
+                    .rucVendedor(factura.getRucVendedor())
+                    .codigoFactura(factura.getCodigoFactura())
+                    .tipoEvento(FACTURA_REGISTRADA)
+                    .datos(objectMapper.writeValueAsString(factura))
+                    .build());
+        }
+        return eventoFacturaRepository.insertBatch(conn, eventos).mapEmpty();
+    }
+}
@@ -0,0 +1,67 @@
+package com.pe.jm.alpaca.eventos;
+
+import com.pe.jm.alpaca.model.EventoFactura;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Anexa los eventos a eventos.archivo.ruta, un JSON por línea; la escritura termina tras el fsync
+ */
+@Component
+@ConditionalOnProperty(name = "eventos.destino", havingValue = "archivo")
+public class DestinoArchivo implements DestinoEventos {
+
+    private final ObjectMapper objectMapper;
+    private final Vertx vertx;
+    private final Path ruta;
+
+    public DestinoArchivo(ObjectMapper objectMapper,
+                          Vertx vertx,
+                          @Value("${eventos.archivo.ruta:eventos/facturas.ndjson}") String ruta) {
+        this.objectMapper = objectMapper;
+        this.vertx = vertx;
+        this.ruta = Path.of(ruta);
+    }
+
+    @Override
+    public Future<Void> publicar(List<EventoFactura> eventos) {
+        ByteArrayOutputStream lineas = new ByteArrayOutputStream();
+        for (EventoFactura evento : eventos) {
+            lineas.writeBytes(objectMapper.writeValueAsBytes(evento));
+            lineas.write('\n');
+        }
+        byte[] bytes = lineas.toByteArray();
+        // Sin ordenar: los vendedores se publican en paralelo y anexar es atómico por llamada
+        return vertx.executeBlocking(() -> {
+            anexar(bytes);
+            return null;
+        }, false);
+    }
+
+    private synchronized void anexar(byte[] bytes) throws Exception {
+        Path directorio = ruta.toAbsolutePath().getParent();
+        if (directorio != null) {
+            Files.createDirectories(directorio);
+        }
+        try (FileChannel canal = FileChannel.open(ruta,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            canal.force(false);
+        }
+    }
+}
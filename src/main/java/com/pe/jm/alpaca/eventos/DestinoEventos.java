@@ -0,0 +1,17 @@
+package com.pe.jm.alpaca.eventos;
+
+import com.pe.jm.alpaca.model.EventoFactura;
+import io.vertx.core.Future;
+
+import java.util.List;
+
+/**
+ * Destino al que RelayEventos publica los eventos de la bandeja (eventos.destino).
+ * Cada llamada recibe eventos de un solo vendedor en orden de ID; si el future falla se considera
+ * que ninguno se publicó y se reintentan desde el primero. La entrega es al-menos-una-vez:
+ * el consumidor descarta duplicados por id.
+ */
+public interface DestinoEventos {
+
+    Future<Void> publicar(List<EventoFactura> eventos);
+}
@@ -0,0 +1,36 @@
+package com.pe.jm.alpaca.eventos;
+
+import com.pe.jm.alpaca.model.EventoFactura;
+import io.vertx.core.Future;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Destino por defecto: publica cada evento como evento de Spring, para listeners (@EventListener
+ * de EventoFactura) dentro de la misma aplicación. Si un listener lanza una excepción, el grupo se reintenta.
+ */
+@Component
+@ConditionalOnProperty(name = "eventos.destino", havingValue = "local", matchIfMissing = true)
+public class DestinoLocal implements DestinoEventos {
+
+    private final ApplicationEventPublisher publisher;
+
+    public DestinoLocal(ApplicationEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public Future<Void> publicar(List<EventoFactura> eventos) {
+        try {
+            for (EventoFactura evento : eventos) {
+                publisher.publishEvent(evento);
+            }
+            return Future.succeededFuture();
+        } catch (RuntimeException e) {
+            return Future.failedFuture(e);
+        }
+    }
+}
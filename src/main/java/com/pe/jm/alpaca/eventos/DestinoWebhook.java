@@ -0,0 +1,51 @@
+package com.pe.jm.alpaca.eventos;
+
+import com.pe.jm.alpaca.model.EventoFactura;
+import io.vertx.core.Future;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Publica los eventos con un POST a eventos.webhook.url, como arreglo JSON en el cuerpo.
+ * Cualquier respuesta fuera de 2xx o un timeout cuenta como fallo.
+ */
+@Component
+@ConditionalOnProperty(name = "eventos.destino", havingValue = "webhook")
+public class DestinoWebhook implements DestinoEventos {
+
+    private final ObjectMapper objectMapper;
+    private final URI url;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+
+    public DestinoWebhook(ObjectMapper objectMapper,
+                          @Value("${eventos.webhook.url}") String url,
+                          @Value("${eventos.webhook.timeout-ms:5000}") long timeoutMs) {
+        this.objectMapper = objectMapper;
+        this.url = URI.create(url);
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    @Override
+    public Future<Void> publicar(List<EventoFactura> eventos) {
+        HttpRequest request = HttpRequest.newBuilder(url)
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(eventos)))
+                .build();
+        return Future.fromCompletionStage(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()))
+                .compose(response -> response.statusCode() / 100 == 2
+                        ? Future.<Void>succeededFuture()
+                        : Future.failedFuture("El webhook respondió HTTP " + response.statusCode()));
+    }
+}
@@ -0,0 +1,178 @@
+package com.pe.jm.alpaca.eventos;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.EventoFactura;
+import com.pe.jm.alpaca.repository.EventoFacturaRepository;
+import io.micrometer.core.instrument.Counter;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publica los eventos pendientes de la bandeja en el DestinoEventos configurado.
+ * Cada ciclo lee hasta eventos.relay.lote eventos en orden de ID, con al menos eventos.relay.margen-ms
+ * de creados (así ya se confirmaron los de IDs menores), y los agrupa por vendedor:
+ * los de un vendedor salen en una sola llamada y en orden, los de vendedores distintos en paralelo.
+ * Si la publicación falla, el primer evento del grupo se reintenta con espera exponencial y los
+ * siguientes de ese vendedor esperan detrás de él; tras eventos.relay.max-intentos queda FALLIDO
+ * y el vendedor continúa. Solo una instancia debe tener eventos.relay.enabled=true.
+ */
+@Slf4j
+@Component
+public class RelayEventos {
+
+    private static final long ESPERA_MAXIMA_MS = 300_000;
+    private static final long INTERVALO_PURGA_MS = 3_600_000;
+
+    private final EventoFacturaRepository eventoFacturaRepository;
+    private final ObjectProvider<DestinoEventos> destinos;
+    private final Vertx vertx;
+    private final boolean habilitado;
+    private final long intervaloMs;
+    private final long margenMs;
+    private final int lote;
+    private final long reintentoMs;
+    private final int maxIntentos;
+    private final int retencionHoras;
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+    private final Counter publicados;
+    private final Counter fallidos;
+    private DestinoEventos destino;
+    private long temporizador = -1;
+    private long temporizadorPurga = -1;
+
+    public RelayEventos(EventoFacturaRepository eventoFacturaRepository,
+                        ObjectProvider<DestinoEventos> destinos,
+                        Vertx vertx,
+                        Metricas metricas,
+                        @Value("${eventos.enabled:false}") boolean habilitado,
+                        @Value("${eventos.relay.enabled:true}") boolean relayHabilitado,
+                        @Value("${eventos.relay.intervalo-ms:1000}") long intervaloMs,
+                        @Value("${eventos.relay.margen-ms:5000}") long margenMs,
+                        @Value("${eventos.relay.lote:100}") int lote,
+                        @Value("${eventos.relay.reintento-ms:1000}") long reintentoMs,
+                        @Value("${eventos.relay.max-intentos:10}") int maxIntentos,
+                        @Value("${eventos.retencion-horas:72}") int retencionHoras) {
+        this.eventoFacturaRepository = eventoFacturaRepository;
+        this.destinos = destinos;
+        this.vertx = vertx;
+        this.habilitado = habilitado && relayHabilitado;
+        this.intervaloMs = intervaloMs;
+        this.margenMs = margenMs;
+        this.lote = lote;
+        this.reintentoMs = reintentoMs;
+        this.maxIntentos = maxIntentos;
+        this.retencionHoras = retencionHoras;
+        this.publicados = metricas.contador("alpaca.eventos.publicados", "Eventos de facturas publicados");
+        this.fallidos = metricas.contador("alpaca.eventos.fallidos", "Intentos fallidos de publicar eventos de facturas");
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            return;
+        }
+        destino = destinos.getIfAvailable();
+        if (destino == null) {
+            throw new IllegalStateException("eventos.enabled=true requiere un DestinoEventos (eventos.destino=webhook|archivo|local)");
+        }
+        temporizador = vertx.setPeriodic(intervaloMs, id -> ciclo());
+        if (retencionHoras > 0) {
+            temporizadorPurga = vertx.setPeriodic(INTERVALO_PURGA_MS, id -> eventoFacturaRepository
+                    .purgarPublicados(retencionHoras)
+                    .onFailure(e -> log.warn("No se pudieron purgar los eventos publicados: {}", e.getMessage())));
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (temporizador >= 0) {
+            vertx.cancelTimer(temporizador);
+        }
+        if (temporizadorPurga >= 0) {
+            vertx.cancelTimer(temporizadorPurga);
+        }
+    }
+
+    /**
+     * Un ciclo a la vez; si el lote vino lleno se encadena otro sin esperar al temporizador
+     */
+    void ciclo() {
+        if (!enCurso.compareAndSet(false, true)) {
+            return;
+        }
+        eventoFacturaRepository.pendientes(margenMs, lote)
+                .compose(eventos -> publicarPorVendedor(eventos).map(v -> eventos.size()))
+                .onComplete(ar -> {
+                    enCurso.set(false);
+                    if (ar.failed()) {
+                        log.warn("Falló el ciclo de publicación de eventos: {}", ar.cause().getMessage());
+                    } else if (ar.result() == lote) {
+                        vertx.runOnContext(v -> ciclo());
+                    }
+                });
+    }
+
+    private Future<Void> publicarPorVendedor(List<EventoFactura> eventos) {
+        Map<Long, List<EventoFactura>> porVendedor = new LinkedHashMap<>();
+        for (EventoFactura evento : eventos) {
+            porVendedor.computeIfAbsent(evento.getRucVendedor(), ruc -> new ArrayList<>()).add(evento);
+        }
+
+        List<Future<Void>> publicaciones = new ArrayList<>(porVendedor.size());
+        for (List<EventoFactura> grupo : porVendedor.values()) {
+            publicaciones.add(publicar(grupo));
+        }
+        return Future.join(publicaciones).mapEmpty();
+    }
+
+    /**
+     * Un evento que ya falló se publica solo, para no reenviar el grupo completo en cada reintento
+     */
+    private Future<Void> publicar(List<EventoFactura> grupo) {
+        EventoFactura primero = grupo.get(0);
+        List<EventoFactura> envio = primero.getIntentos() != null && primero.getIntentos() > 0
+                ? List.of(primero) : grupo;
+
+        Future<Void> publicacion;
+        try {
+            publicacion = destino.publicar(envio);
+        } catch (RuntimeException e) {
+            publicacion = Future.failedFuture(e);
+        }
+        return publicacion
+                .compose(v -> {
+                    publicados.increment(envio.size());
+                    return eventoFacturaRepository.marcarPublicados(envio).<Void>mapEmpty();
+                }, error -> {
+                    fallidos.increment();
+                    int intentos = (primero.getIntentos() == null ? 0 : primero.getIntentos()) + 1;
+                    boolean definitivo = intentos >= maxIntentos;
+                    if (definitivo) {
+                        log.error("Evento {} de la factura {}-{} descartado tras {} intentos: {}", primero.getId(),
+                                primero.getRucVendedor(), primero.getCodigoFactura(), intentos, error.getMessage());
+                    } else {
+                        log.warn("No se pudo publicar el evento {} (intento {}): {}", primero.getId(), intentos,
+                                error.getMessage());
+                    }
+                    return eventoFacturaRepository.marcarFallido(primero.getId(), definitivo, espera(intentos),
+                            String.valueOf(error.getMessage()));
+                });
+    }
+
+    private long espera(int intentos) {
+        int exponente = Math.min(intentos - 1, 20);
+        return Math.min(reintentoMs << exponente, ESPERA_MAXIMA_MS);
+    }
+}
@@ -0,0 +1,246 @@
+package com.pe.jm.alpaca.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal local de solo-anexado, un registro por línea.
+ * Un único hilo escritor agrupa los registros pendientes y hace un solo fsync por grupo
+ * (group commit); agregar() termina cuando su registro ya es durable. El consumidor lee
+ * desde el offset confirmado, que se guarda en un archivo aparte, y cuando lo ha consumido
+ * todo y el archivo supera maxBytes, el journal se trunca a cero.
+ */
+public class JournalFacturas implements AutoCloseable {
+
+    private static final int LECTURA_INICIAL = 1 << 20;
+
+    private final FileChannel canal;
+    private final FileChannel canalOffset;
+    private final BlockingQueue<Escritura> cola;
+    private final int maxGrupo;
+    private final long maxBytes;
+    private final Thread escritor;
+    private final Object monitor = new Object();
+
+    private volatile boolean activo = true;
+    private long tamanoConfirmado;
+    private long offset;
+
+    public JournalFacturas(Path directorio, int maxGrupo, int maxPendientes, long maxBytes) throws IOException {
+        Files.createDirectories(directorio);
+        this.canal = FileChannel.open(directorio.resolve("facturas.journal"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.canalOffset = FileChannel.open(directorio.resolve("facturas.offset"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.cola = new ArrayBlockingQueue<>(maxPendientes);
+        this.maxGrupo = maxGrupo;
+        this.maxBytes = maxBytes;
+
+        // Descartar una última línea incompleta (caída a mitad de escritura)
+        this.tamanoConfirmado = finDeUltimaLinea();
+        canal.truncate(tamanoConfirmado);
+        this.offset = Math.min(leerOffset(), tamanoConfirmado);
+
+        this.escritor = new Thread(this::escribirGrupos, "journal-facturas-escritor");
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+
+    /**
+     * Encola un registro (sin salto de línea) y devuelve un future que termina tras el fsync
+     */
+    public CompletableFuture<Void> agregar(byte[] registro) {
+        Escritura escritura = new Escritura(registro, new CompletableFuture<>());
+        if (!activo || !cola.offer(escritura)) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Journal de facturas lleno o cerrado"));
+        }
+        return escritura.resultado();
+    }
+
+    /**
+     * Espera hasta que haya registros sin consumir o venza el timeout
+     * @return true si hay registros por leer
+     */
+    public boolean esperarRegistros(long timeoutMs) throws InterruptedException {
+        synchronized (monitor) {
+            if (offset >= tamanoConfirmado) {
+                monitor.wait(timeoutMs);
+            }
+            return offset < tamanoConfirmado;
+        }
+    }
+
+    /**
+     * Lee hasta maxRegistros registros completos desde el offset confirmado, sin consumirlos
+     */
+    public Lectura leer(int maxRegistros) throws IOException {
+        long desde;
+        long hasta;
+        synchronized (monitor) {
+            desde = offset;
+            hasta = tamanoConfirmado;
+        }
+
+        List<byte[]> registros = new ArrayList<>();
+        long posicion = desde;
+        int tamanoLectura = LECTURA_INICIAL;
+        while (posicion < hasta && registros.size() < maxRegistros) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(tamanoLectura, hasta - posicion));
+            leerCompleto(buffer, posicion);
+            byte[] bytes = buffer.array();
+            int inicio = 0;
+            for (int i = 0; i < buffer.position() && registros.size() < maxRegistros; i++) {
+                if (bytes[i] == '\n') {
+                    byte[] registro = new byte[i - inicio];
+                    System.arraycopy(bytes, inicio, registro, 0, registro.length);
+                    registros.add(registro);
+                    inicio = i + 1;
+                }
+            }
+            if (inicio == 0) {
+                // Registro más grande que el buffer: leer con un buffer mayor
+                tamanoLectura *= 2;
+            }
+            posicion += inicio;
+        }
+        return new Lectura(registros, posicion);
+    }
+
+    /**
+     * Marca como consumido todo lo anterior a nuevoOffset y lo guarda de forma durable
+     */
+    public void confirmar(long nuevoOffset) throws IOException {
+        synchronized (monitor) {
+            offset = nuevoOffset;
+            guardarOffset(offset);
+        }
+    }
+
+    /**
+     * Deja de aceptar registros, espera a que se escriban los ya encolados y cierra los archivos.
+     * No se interrumpe al escritor: un hilo interrumpido durante una operación de FileChannel cierra el canal.
+     */
+    @Override
+    public void close() throws IOException {
+        activo = false;
+        try {
+            escritor.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        canal.close();
+        canalOffset.close();
+    }
+
+    private void escribirGrupos() {
+        List<Escritura> grupo = new ArrayList<>(maxGrupo);
+        while (activo || !cola.isEmpty()) {
+            try {
+                Escritura primera = cola.poll(1, TimeUnit.SECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                grupo.add(primera);
+                cola.drainTo(grupo, maxGrupo - 1);
+                escribirGrupo(grupo);
+                grupo.forEach(escritura -> escritura.resultado().complete(null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                grupo.forEach(escritura -> escritura.resultado().completeExceptionally(e));
+            }
+            grupo.clear();
+        }
+    }
+
+    private void escribirGrupo(List<Escritura> grupo) throws IOException {
+        compactarSiCorresponde();
+
+        int total = 0;
+        for (Escritura escritura : grupo) {
+            total += escritura.registro().length + 1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (Escritura escritura : grupo) {
+            buffer.put(escritura.registro()).put((byte) '\n');
+        }
+        buffer.flip();
+
+        long posicion = tamanoConfirmado;
+        while (buffer.hasRemaining()) {
+            posicion += canal.write(buffer, posicion);
+        }
+        canal.force(false);
+
+        synchronized (monitor) {
+            tamanoConfirmado = posicion;
+            monitor.notifyAll();
+        }
+    }
+
+    private void compactarSiCorresponde() throws IOException {
+        synchronized (monitor) {
+            if (offset == tamanoConfirmado && tamanoConfirmado >= maxBytes) {
+                canal.truncate(0);
+                canal.force(true);
+                tamanoConfirmado = 0;
+                offset = 0;
+                guardarOffset(0);
+            }
+        }
+    }
+
+    private void leerCompleto(ByteBuffer buffer, long posicion) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicion + buffer.position()) < 0) {
+                throw new IOException("Fin inesperado del journal de facturas");
+            }
+        }
+    }
+
+    private long finDeUltimaLinea() throws IOException {
+        long fin = canal.size();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (fin > 0) {
+            int leer = (int) Math.min(buffer.capacity(), fin);
+            buffer.clear().limit(leer);
+            canal.read(buffer, fin - leer);
+            for (int i = leer - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return fin - leer + i + 1;
+                }
+            }
+            fin -= leer;
+        }
+        return 0;
+    }
+
+    private long leerOffset() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        canalOffset.read(buffer, 0);
+        return buffer.position() == Long.BYTES ? buffer.flip().getLong() : 0;
+    }
+
+    private void guardarOffset(long valor) throws IOException {
+        canalOffset.write(ByteBuffer.allocate(Long.BYTES).putLong(0, valor), 0);
+        canalOffset.force(false);
+    }
+
+    public record Lectura(List<byte[]> registros, long offsetSiguiente) {
+    }
+
+    private record Escritura(byte[] registro, CompletableFuture<Void> resultado) {
+    }
+}
@@ -0,0 +1,106 @@
+package com.pe.jm.alpaca.metricas;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.Future;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Timers de repositorios, etapas del servicio y adquisición de conexiones, publicados con
+ * histograma de percentiles. Los timers se crean una vez por combinación de etiquetas.
+ *
+ * alpaca.repositorio{repositorio, metodo, resultado}
+ * alpaca.servicio{etapa, resultado}
+ * alpaca.pool.adquisicion{resultado}
+ */
+@Component
+public class Metricas {
+
+    public static final String REPOSITORIO = "alpaca.repositorio";
+    public static final String SERVICIO = "alpaca.servicio";
+    public static final String ADQUISICION = "alpaca.pool.adquisicion";
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public Metricas(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Mide un método de repositorio, desde que se lanza la consulta hasta que termina su Future
+     */
+    public <T> Future<T> repositorio(String repositorio, String metodo, Supplier<Future<T>> operacion) {
+        return medir(operacion, REPOSITORIO, "repositorio", repositorio, "metodo", metodo);
+    }
+
+    /**
+     * Mide una etapa asíncrona del servicio
+     */
+    public <T> Future<T> etapa(String etapa, Supplier<Future<T>> operacion) {
+        return medir(operacion, SERVICIO, "etapa", etapa);
+    }
+
+    /**
+     * Mide una etapa síncrona del servicio (por ejemplo, la conversión de la factura)
+     */
+    public <T> T etapaSincrona(String etapa, Supplier<T> operacion) {
+        long inicio = System.nanoTime();
+        boolean exito = false;
+        try {
+            T resultado = operacion.get();
+            exito = true;
+            return resultado;
+        } finally {
+            timer(exito, SERVICIO, "etapa", etapa).record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Registra cuánto se esperó por una conexión del pool
+     */
+    public void adquisicion(long nanos, boolean exito) {
+        timer(exito, ADQUISICION).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void gauge(String nombre, String descripcion, Supplier<Number> valor) {
+        Gauge.builder(nombre, valor).description(descripcion).register(registry);
+    }
+
+    public Counter contador(String nombre, String descripcion) {
+        return Counter.builder(nombre).description(descripcion).register(registry);
+    }
+
+    private <T> Future<T> medir(Supplier<Future<T>> operacion, String nombre, String... etiquetas) {
+        Timer.Sample muestra = Timer.start(registry);
+        Future<T> future;
+        try {
+            future = operacion.get();
+        } catch (RuntimeException e) {
+            muestra.stop(timer(false, nombre, etiquetas));
+            return Future.failedFuture(e);
+        }
+        return future.onComplete(ar -> muestra.stop(timer(ar.succeeded(), nombre, etiquetas)));
+    }
+
+    private Timer timer(boolean exito, String nombre, String... etiquetas) {
+        String resultado = exito ? "ok" : "error";
+        String id = nombre + '|' + String.join("|", etiquetas) + '|' + resultado;
+        Timer timer = timers.get(id);
+        if (timer != null) {
+            return timer;
+        }
+        return timers.computeIfAbsent(id, k -> Timer.builder(nombre)
+                .tags(etiquetas)
+                .tag("resultado", resultado)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+}
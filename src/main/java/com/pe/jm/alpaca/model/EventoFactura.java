@@ -0,0 +1,27 @@
+package com.pe.jm.alpaca.model;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento de la bandeja de salida AA_EVENTO_FACTURA; datos es la cabecera de la factura en JSON
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventoFactura {
+    private Long id;
+    private Long rucVendedor;
+    private String codigoFactura;
+    private String tipoEvento;
+    @JsonRawValue
+    private String datos;
+    private LocalDateTime fechaCreacion;
+    private Integer intentos;
+}
@@ -0,0 +1,18 @@
+package com.pe.jm.alpaca.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacturaCompleta {
+    private Factura factura;
+    private List<DetalleFactura> detalles;
+    private List<AnticipoAplicado> anticipos;
+}
@@ -0,0 +1,29 @@
+package com.pe.jm.alpaca.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Fila de AA_RESUMEN_VENTA_DIARIO o AA_RESUMEN_VENTA_MENSUAL (en la mensual, fecha es el primer día del mes)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumenVenta {
+    private Long rucVendedor;
+    private LocalDate fecha;
+    private Long rucCliente;
+    private String tipoMoneda;
+    private String tipoFibra;
+    private String tipoCalidad;
+    private BigDecimal cantidad;
+    private BigDecimal importe;
+    private Integer lineas;
+    private Integer facturas;
+}
@@ -0,0 +1,21 @@
+package com.pe.jm.alpaca.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SaldoAnticipo {
+    private Long rucVendedor;
+    private String codigoFactura;
+    private BigDecimal montoTotal;
+    private BigDecimal montoAplicado;
+    private BigDecimal saldo;
+    private Integer aplicaciones;
+}
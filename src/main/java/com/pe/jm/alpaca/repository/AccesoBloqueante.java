@@ -0,0 +1,89 @@
+package com.pe.jm.alpaca.repository;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.mysqlclient.MySQLPool;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Transaction;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Fachada bloqueante sobre los repositorios, para código secuencial que corre en hilos virtuales:
+ * esperar un Future estaciona el hilo virtual (no ocupa un hilo del sistema) hasta que Vert.x lo completa.
+ * Nunca se debe usar desde el event loop.
+ */
+@Component
+public class AccesoBloqueante {
+
+    private final MySQLPool client;
+    private final Metricas metricas;
+    private final LimitadorAdaptativo limitador;
+
+    public AccesoBloqueante(MySQLPool client, Metricas metricas, LimitadorAdaptativo limitador) {
+        this.client = client;
+        this.metricas = metricas;
+        this.limitador = limitador;
+    }
+
+    /**
+     * Espera el resultado del Future.
+     * @throws CompletionException con el mensaje de la causa si el Future falla
+     */
+    public static <T> T esperar(Future<T> future) {
+        if (Context.isOnEventLoopThread()) {
+            throw new IllegalStateException("No se puede bloquear el event loop de Vert.x");
+        }
+        try {
+            return future.toCompletionStage().toCompletableFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException("Espera interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Ejecuta el trabajo en una sola conexión del pool dentro de una transacción:
+     * commit si termina normalmente, rollback si lanza una excepción; la conexión vuelve al pool siempre.
+     */
+    public <T> T enTransaccion(Function<SqlConnection, T> trabajo) {
+        long inicio = System.nanoTime();
+        SqlConnection conn;
+        try {
+            conn = esperar(client.getConnection());
+        } catch (RuntimeException e) {
+            long espera = System.nanoTime() - inicio;
+            metricas.adquisicion(espera, false);
+            limitador.registrarEspera(espera, false);
+            throw e;
+        }
+        long espera = System.nanoTime() - inicio;
+        metricas.adquisicion(espera, true);
+        limitador.registrarEspera(espera, true);
+
+        try {
+            Transaction tx = esperar(conn.begin());
+            T resultado;
+            try {
+                resultado = trabajo.apply(conn);
+            } catch (RuntimeException e) {
+                try {
+                    esperar(tx.rollback());
+                } catch (RuntimeException errorRollback) {
+                    e.addSuppressed(errorRollback);
+                }
+                throw e;
+            }
+            esperar(tx.commit());
+            return resultado;
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.pe.jm.alpaca.repository;
 
+import com.pe.jm.alpaca.metricas.Metricas;
 import com.pe.jm.alpaca.model.AnticipoAplicado;
 import io.vertx.core.Future;
 import io.vertx.mysqlclient.MySQLPool;
 import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.SqlClient;
 import io.vertx.sqlclient.Tuple;
 import org.springframework.stereotype.Repository;
 
@@ -13,40 +15,68 @@ import java.util.List;
 @Repository
 public class AnticipoAplicadoRepository {
 
+    private static final String INSERT_SQL = """
+            INSERT INTO AA_ANTICIPO_APLICADO (
+                VENTA_RUC_VENDEDOR, VENTA_CODIGO_FACTURA,
+                ANTICIPO_RUC_VENDEDOR, ANTICIPO_CODIGO_FACTURA, MONTO_APLICADO
+            ) VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private static final String FIND_BY_VENTA_SQL = """
+            SELECT VENTA_RUC_VENDEDOR, VENTA_CODIGO_FACTURA, ANTICIPO_RUC_VENDEDOR,
+                   ANTICIPO_CODIGO_FACTURA, MONTO_APLICADO
+            FROM AA_ANTICIPO_APLICADO
+            WHERE VENTA_RUC_VENDEDOR = ? AND VENTA_CODIGO_FACTURA = ?
+            """;
+
     private final MySQLPool client;
+    private final Metricas metricas;
+    private final EnrutadorLecturas lecturas;
 
-    public AnticipoAplicadoRepository(MySQLPool client) {
+    public AnticipoAplicadoRepository(MySQLPool client, Metricas metricas, EnrutadorLecturas lecturas) {
         this.client = client;
+        this.metricas = metricas;
+        this.lecturas = lecturas;
     }
 
     public Future<Long> insert(AnticipoAplicado anticipo) {
-        String sql = """
-            INSERT INTO AA_ANTICIPO_APLICADO (
-                VENTA_RUC_VENDEDOR, VENTA_CODIGO_FACTURA,
-                ANTICIPO_RUC_VENDEDOR, ANTICIPO_CODIGO_FACTURA, MONTO_APLICADO
-            ) VALUES (?, ?, ?, ?, ?)
-            """;
+        return insert(client, anticipo);
+    }
 
-        Tuple params = Tuple.of(
-                anticipo.getVentaRucVendedor(),
-                anticipo.getVentaCodigoFactura(),
-                anticipo.getAnticipoRucVendedor(),
-                anticipo.getAnticipoCodigoFactura(),
-                anticipo.getMontoAplicado()
-        );
+    /**
+     * Inserta usando la conexión indicada (por ejemplo, la de una transacción en curso)
+     */
+    public Future<Long> insert(SqlClient sqlClient, AnticipoAplicado anticipo) {
+        return metricas.repositorio("AnticipoAplicadoRepository", "insert", () -> sqlClient.preparedQuery(INSERT_SQL)
+                .execute(toTuple(anticipo))
+                .map(rowSet -> (long) rowSet.rowCount()));
+    }
 
-        return client.preparedQuery(sql)
-                .execute(params)
-                .map(rowSet -> (long) rowSet.rowCount());
+    /**
+     * Inserta varios anticipos aplicados en un solo batch (un round trip por lote)
+     */
+    public Future<Long> insertBatch(List<AnticipoAplicado> anticipos) {
+        return insertBatch(client, anticipos);
     }
 
-    public Future<List<AnticipoAplicado>> findByVenta(Long rucVendedor, String codigoFactura) {
-        String sql = """
-            SELECT * FROM AA_ANTICIPO_APLICADO
-            WHERE VENTA_RUC_VENDEDOR = ? AND VENTA_CODIGO_FACTURA = ?
-            """;
+    public Future<Long> insertBatch(SqlClient sqlClient, List<AnticipoAplicado> anticipos) {
+        if (anticipos.isEmpty()) {
+            return Future.succeededFuture(0L);
+        }
+
+        List<Tuple> batch = new ArrayList<>(anticipos.size());
+        for (AnticipoAplicado anticipo : anticipos) {
+            batch.add(toTuple(anticipo));
+        }
+
+        return metricas.repositorio("AnticipoAplicadoRepository", "insertBatch", () -> sqlClient.preparedQuery(INSERT_SQL)
+                .executeBatch(batch)
+                .map(FacturaRepository::contarFilas));
+    }
 
-        return client.preparedQuery(sql)
+    public Future<List<AnticipoAplicado>> findByVenta(Long rucVendedor, String codigoFactura) {
+        MySQLPool pool = lecturas.lectura(EnrutadorLecturas.claveFactura(rucVendedor, codigoFactura));
+        return metricas.repositorio("AnticipoAplicadoRepository", "findByVenta", () -> pool.preparedQuery(FIND_BY_VENTA_SQL)
                 .execute(Tuple.of(rucVendedor, codigoFactura))
                 .map(rows -> {
                     List<AnticipoAplicado> anticipos = new ArrayList<>();
@@ -54,16 +84,29 @@ public class AnticipoAplicadoRepository {
                         anticipos.add(mapRowToAnticipoAplicado(row));
                     }
                     return anticipos;
-                });
+                }));
+    }
+
+    private Tuple toTuple(AnticipoAplicado anticipo) {
+        return Tuple.of(
+                anticipo.getVentaRucVendedor(),
+                anticipo.getVentaCodigoFactura(),
+                anticipo.getAnticipoRucVendedor(),
+                anticipo.getAnticipoCodigoFactura(),
+                anticipo.getMontoAplicado()
+        );
     }
 
+    /**
+     * Mapea por posición, en el orden de FIND_BY_VENTA_SQL
+     */
     private AnticipoAplicado mapRowToAnticipoAplicado(Row row) {
         return AnticipoAplicado.builder()
-                .ventaRucVendedor(row.getLong("VENTA_RUC_VENDEDOR"))
-                .ventaCodigoFactura(row.getString("VENTA_CODIGO_FACTURA"))
-                .anticipoRucVendedor(row.getLong("ANTICIPO_RUC_VENDEDOR"))
-                .anticipoCodigoFactura(row.getString("ANTICIPO_CODIGO_FACTURA"))
-                .montoAplicado(row.getBigDecimal("MONTO_APLICADO"))
+                .ventaRucVendedor(row.getLong(0))
+                .ventaCodigoFactura(row.getString(1))
+                .anticipoRucVendedor(row.getLong(2))
+                .anticipoCodigoFactura(row.getString(3))
+                .montoAplicado(row.getBigDecimal(4))
                 .build();
     }
 }
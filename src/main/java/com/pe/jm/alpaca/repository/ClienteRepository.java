@@ -1,28 +1,61 @@
 package com.pe.jm.alpaca.repository;
 
+import com.pe.jm.alpaca.cache.RucCache;
+import com.pe.jm.alpaca.metricas.Metricas;
 import com.pe.jm.alpaca.model.Cliente;
 import io.vertx.core.Future;
 import io.vertx.mysqlclient.MySQLPool;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.Tuple;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 @Repository
 public class ClienteRepository {
 
+    private static final String FIND_BY_RUC_SQL = """
+            SELECT RUC_CLIENTE, NOMBRE_CLIENTE FROM AA_CLIENTE
+            WHERE RUC_CLIENTE = ?
+            """;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO AA_CLIENTE (RUC_CLIENTE, NOMBRE_CLIENTE)
+            VALUES (?, ?)
+            """;
+
+    private static final String EXISTS_SQL = """
+            SELECT COUNT(*) FROM AA_CLIENTE
+            WHERE RUC_CLIENTE = ?
+            """;
+
+    private static final String RUCS_EXISTENTES_SQL = "SELECT RUC_CLIENTE FROM AA_CLIENTE WHERE RUC_CLIENTE IN ";
+
     private final MySQLPool client;
+    private final Metricas metricas;
+    private final EnrutadorLecturas lecturas;
+    private final RucCache cache;
 
-    public ClienteRepository(MySQLPool client) {
+    public ClienteRepository(MySQLPool client,
+                             Metricas metricas,
+                             EnrutadorLecturas lecturas,
+                             @Value("${cache.ruc.max-size:4096}") int cacheMaxSize,
+                             @Value("${cache.ruc.ttl:600000}") long cacheTtl,
+                             @Value("${cache.ruc.ttl-negativo:30000}") long cacheTtlNegativo) {
         this.client = client;
+        this.metricas = metricas;
+        this.lecturas = lecturas;
+        this.cache = new RucCache(cacheMaxSize, cacheTtl, cacheTtlNegativo);
     }
 
     public Future<Cliente> findByRuc(Long rucCliente) {
-        String sql = """
-            SELECT * FROM AA_CLIENTE
-            WHERE RUC_CLIENTE = ?
-            """;
-
-        return client.preparedQuery(sql)
+        MySQLPool pool = lecturas.lectura(EnrutadorLecturas.claveCliente(rucCliente));
+        return metricas.repositorio("ClienteRepository", "findByRuc", () -> pool.preparedQuery(FIND_BY_RUC_SQL)
                 .execute(Tuple.of(rucCliente))
                 .map(rows -> {
                     if (rows.size() == 0) {
@@ -30,44 +63,83 @@ public class ClienteRepository {
                     }
                     Row row = rows.iterator().next();
                     return mapRowToCliente(row);
-                });
+                }));
     }
 
     public Future<Long> insert(Cliente cliente) {
-        String sql = """
-            INSERT INTO AA_CLIENTE (RUC_CLIENTE, NOMBRE_CLIENTE)
-            VALUES (?, ?)
-            """;
-
         Tuple params = Tuple.of(
                 cliente.getRucCliente(),
                 cliente.getNombreCliente()
         );
 
-        return client.preparedQuery(sql)
+        return metricas.repositorio("ClienteRepository", "insert", () -> client.preparedQuery(INSERT_SQL)
                 .execute(params)
-                .map(rowSet -> (long) rowSet.rowCount());
+                .onComplete(ar -> cache.invalidar(cliente.getRucCliente()))
+                .onSuccess(rowSet -> lecturas.registrarEscritura(EnrutadorLecturas.claveCliente(cliente.getRucCliente())))
+                .map(rowSet -> (long) rowSet.rowCount()));
     }
 
     public Future<Boolean> existsByRuc(Long rucCliente) {
-        String sql = """
-            SELECT COUNT(*) as total FROM AA_CLIENTE
-            WHERE RUC_CLIENTE = ?
-            """;
+        Boolean enCache = cache.consultar(rucCliente);
+        if (enCache != null) {
+            return Future.succeededFuture(enCache);
+        }
 
-        return client.preparedQuery(sql)
+        MySQLPool pool = lecturas.lectura(EnrutadorLecturas.claveCliente(rucCliente));
+        return metricas.repositorio("ClienteRepository", "existsByRuc", () -> pool.preparedQuery(EXISTS_SQL)
                 .execute(Tuple.of(rucCliente))
                 .map(rows -> {
                     Row row = rows.iterator().next();
-                    Long count = row.getLong("total");
-                    return count > 0;
-                });
+                    boolean existe = row.getLong(0) > 0;
+                    cache.registrar(rucCliente, existe);
+                    return existe;
+                }));
+    }
+
+    /**
+     * Devuelve el subconjunto de RUCs que existen; solo consulta con IN (...) los que no están en caché
+     */
+    public Future<Set<Long>> findRucsExistentes(Collection<Long> rucs) {
+        Set<Long> existentes = new HashSet<>();
+        List<Object> pendientes = new ArrayList<>();
+        for (Long ruc : rucs) {
+            Boolean enCache = cache.consultar(ruc);
+            if (enCache == null) {
+                pendientes.add(ruc);
+            } else if (enCache) {
+                existentes.add(ruc);
+            }
+        }
+
+        if (pendientes.isEmpty()) {
+            return Future.succeededFuture(existentes);
+        }
+
+        MySQLPool pool = lecturas.lectura(pendientes.stream()
+                .map(ruc -> EnrutadorLecturas.claveCliente((Long) ruc))
+                .toList());
+        return metricas.repositorio("ClienteRepository", "findRucsExistentes", () -> pool.preparedQuery(ListaIn.sql(RUCS_EXISTENTES_SQL, pendientes.size()))
+                .execute(ListaIn.parametros(pendientes))
+                .map(rows -> {
+                    Set<Long> encontrados = new HashSet<>();
+                    for (Row row : rows) {
+                        encontrados.add(row.getLong(0));
+                    }
+                    for (Object ruc : pendientes) {
+                        boolean existe = encontrados.contains(ruc);
+                        cache.registrar((Long) ruc, existe);
+                        if (existe) {
+                            existentes.add((Long) ruc);
+                        }
+                    }
+                    return existentes;
+                }));
     }
 
     private Cliente mapRowToCliente(Row row) {
         return Cliente.builder()
-                .rucCliente(row.getLong("RUC_CLIENTE"))
-                .nombreCliente(row.getString("NOMBRE_CLIENTE"))
+                .rucCliente(row.getLong(0))
+                .nombreCliente(row.getString(1))
                 .build();
     }
 }
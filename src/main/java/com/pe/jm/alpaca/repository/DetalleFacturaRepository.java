@@ -1,10 +1,12 @@
 package com.pe.jm.alpaca.repository;
 
+import com.pe.jm.alpaca.metricas.Metricas;
 import com.pe.jm.alpaca.model.DetalleFactura;
 import io.vertx.core.Future;
 import io.vertx.mysqlclient.MySQLPool;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlClient;
 import io.vertx.sqlclient.Tuple;
 import org.springframework.stereotype.Repository;
 
@@ -14,43 +16,69 @@ import java.util.List;
 @Repository
 public class DetalleFacturaRepository {
 
+    private static final String INSERT_SQL = """
+            INSERT INTO AA_DETALLE_FACTURA (
+                RUC_VENDEDOR, CODIGO_FACTURA, ID_PRODUCTO, CANTIDAD,
+                UNIDAD_MEDIDA, CODIGO, DESCRIPCION, VALOR_UNITARIO
+            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String FIND_BY_FACTURA_SQL = """
+            SELECT DETALLE_ID, RUC_VENDEDOR, CODIGO_FACTURA, ID_PRODUCTO, CANTIDAD,
+                   UNIDAD_MEDIDA, CODIGO, DESCRIPCION, VALOR_UNITARIO
+            FROM AA_DETALLE_FACTURA
+            WHERE RUC_VENDEDOR = ? AND CODIGO_FACTURA = ?
+            ORDER BY DETALLE_ID
+            """;
+
     private final MySQLPool client;
+    private final Metricas metricas;
+    private final EnrutadorLecturas lecturas;
 
-    public DetalleFacturaRepository(MySQLPool client) {
+    public DetalleFacturaRepository(MySQLPool client, Metricas metricas, EnrutadorLecturas lecturas) {
         this.client = client;
+        this.metricas = metricas;
+        this.lecturas = lecturas;
     }
 
     public Future<Long> insert(DetalleFactura detalle) {
-        String sql = """
-            INSERT INTO AA_DETALLE_FACTURA (
-                RUC_VENDEDOR, CODIGO_FACTURA, ID_PRODUCTO, CANTIDAD,
-                UNIDAD_MEDIDA, CODIGO, DESCRIPCION, VALOR_UNITARIO
-            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?)
-            """;
+        return insert(client, detalle);
+    }
 
-        Tuple params = Tuple.of(
-                detalle.getRucVendedor(),
-                detalle.getCodigoFactura(),
-                detalle.getIdProducto(),
-                detalle.getCantidad(),
-                detalle.getUnidadMedida(),
-                detalle.getCodigo(),
-                detalle.getDescripcion(),
-                detalle.getValorUnitario()
-        );
+    /**
+     * Inserta usando la conexión indicada (por ejemplo, la de una transacción en curso)
+     */
+    public Future<Long> insert(SqlClient sqlClient, DetalleFactura detalle) {
+        return metricas.repositorio("DetalleFacturaRepository", "insert", () -> sqlClient.preparedQuery(INSERT_SQL)
+                .execute(toTuple(detalle))
+                .map(rowSet -> (long) rowSet.rowCount()));
+    }
 
-        return client.preparedQuery(sql)
-                .execute(params)
-                .map(rowSet -> (long) rowSet.rowCount());
+    /**
+     * Inserta varios detalles en un solo batch (un round trip por lote)
+     */
+    public Future<Long> insertBatch(List<DetalleFactura> detalles) {
+        return insertBatch(client, detalles);
     }
 
-    public Future<List<DetalleFactura>> findByRucVendedorAndCodigoFactura(Long rucVendedor, String codigoFactura) {
-        String sql = """
-            SELECT * FROM AA_DETALLE_FACTURA
-            WHERE RUC_VENDEDOR = ? AND CODIGO_FACTURA = ?
-            """;
+    public Future<Long> insertBatch(SqlClient sqlClient, List<DetalleFactura> detalles) {
+        if (detalles.isEmpty()) {
+            return Future.succeededFuture(0L);
+        }
 
-        return client.preparedQuery(sql)
+        List<Tuple> batch = new ArrayList<>(detalles.size());
+        for (DetalleFactura detalle : detalles) {
+            batch.add(toTuple(detalle));
+        }
+
+        return metricas.repositorio("DetalleFacturaRepository", "insertBatch", () -> sqlClient.preparedQuery(INSERT_SQL)
+                .executeBatch(batch)
+                .map(FacturaRepository::contarFilas));
+    }
+
+    public Future<List<DetalleFactura>> findByRucVendedorAndCodigoFactura(Long rucVendedor, String codigoFactura) {
+        MySQLPool pool = lecturas.lectura(EnrutadorLecturas.claveFactura(rucVendedor, codigoFactura));
+        return metricas.repositorio("DetalleFacturaRepository", "findByRucVendedorAndCodigoFactura", () -> pool.preparedQuery(FIND_BY_FACTURA_SQL)
                 .execute(Tuple.of(rucVendedor, codigoFactura))
                 .map(rows -> {
                     List<DetalleFactura> detalles = new ArrayList<>();
@@ -58,20 +86,36 @@ public class DetalleFacturaRepository {
                         detalles.add(mapRowToDetalleFactura(row));
                     }
                     return detalles;
-                });
+                }));
+    }
+
+    private Tuple toTuple(DetalleFactura detalle) {
+        return Tuple.of(
+                detalle.getRucVendedor(),
+                detalle.getCodigoFactura(),
+                detalle.getIdProducto(),
+                detalle.getCantidad(),
+                detalle.getUnidadMedida(),
+                detalle.getCodigo(),
+                detalle.getDescripcion(),
+                detalle.getValorUnitario()
+        );
     }
 
+    /**
+     * Mapea por posición, en el orden de FIND_BY_FACTURA_SQL
+     */
     private DetalleFactura mapRowToDetalleFactura(Row row) {
         return DetalleFactura.builder()
-                .detalleId(row.getLong("DETALLE_ID"))
-                .rucVendedor(row.getLong("RUC_VENDEDOR"))
-                .codigoFactura(row.getString("CODIGO_FACTURA"))
-                .idProducto(row.getLong("ID_PRODUCTO"))
-                .cantidad(row.getBigDecimal("CANTIDAD"))
-                .unidadMedida(row.getString("UNIDAD_MEDIDA"))
-                .codigo(row.getString("CODIGO"))
-                .descripcion(row.getString("DESCRIPCION"))
-                .valorUnitario(row.getBigDecimal("VALOR_UNITARIO"))
+                .detalleId(row.getLong(0))
+                .rucVendedor(row.getLong(1))
+                .codigoFactura(row.getString(2))
+                .idProducto(row.getLong(3))
+                .cantidad(row.getBigDecimal(4))
+                .unidadMedida(row.getString(5))
+                .codigo(row.getString(6))
+                .descripcion(row.getString(7))
+                .valorUnitario(row.getBigDecimal(8))
                 .build();
     }
 }
@@ -0,0 +1,82 @@
+package com.pe.jm.alpaca.repository;
+
+import com.pe.jm.alpaca.cache.LruCache;
+import io.vertx.mysqlclient.MySQLPool;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Decide a qué pool va cada lectura cuando hay réplica (mysql.replica.enabled): las consultas y
+ * validaciones van a la réplica y las escrituras siempre al primario. Para leer lo propio, lo que esta
+ * instancia escribió en los últimos mysql.replica.lectura-propia-ms se sigue leyendo del primario,
+ * porque la réplica puede no tenerlo todavía. Sin réplica ambos pools son el mismo.
+ */
+@Component
+public class EnrutadorLecturas {
+
+    private final MySQLPool primario;
+    private final MySQLPool replica;
+    private final LruCache<String, Boolean> escriturasRecientes;
+
+    public EnrutadorLecturas(MySQLPool primario,
+                             @Qualifier("mySQLPoolLectura") MySQLPool replica,
+                             @Value("${mysql.replica.lectura-propia.max-size:100000}") int maxSize,
+                             @Value("${mysql.replica.lectura-propia-ms:5000}") long ventanaMs) {
+        this.primario = primario;
+        this.replica = replica;
+        this.escriturasRecientes = new LruCache<>(maxSize, ventanaMs);
+    }
+
+    /**
+     * Pool para lecturas que toleran el retraso de la réplica (listados, exportaciones)
+     */
+    public MySQLPool lectura() {
+        return replica;
+    }
+
+    /**
+     * Pool para leer el registro de la clave: el primario si se escribió hace poco, si no la réplica
+     */
+    public MySQLPool lectura(String clave) {
+        if (replica == primario || escriturasRecientes.get(clave) == null) {
+            return replica;
+        }
+        return primario;
+    }
+
+    /**
+     * Pool para leer varios registros a la vez: el primario si alguno se escribió hace poco
+     */
+    public MySQLPool lectura(Collection<String> claves) {
+        if (replica == primario) {
+            return replica;
+        }
+        for (String clave : claves) {
+            if (escriturasRecientes.get(clave) != null) {
+                return primario;
+            }
+        }
+        return replica;
+    }
+
+    public void registrarEscritura(String clave) {
+        if (replica != primario) {
+            escriturasRecientes.put(clave, Boolean.TRUE);
+        }
+    }
+
+    public static String claveFactura(Long rucVendedor, String codigoFactura) {
+        return "F|" + rucVendedor + "|" + codigoFactura;
+    }
+
+    public static String claveVendedor(Long rucVendedor) {
+        return "V|" + rucVendedor;
+    }
+
+    public static String claveCliente(Long rucCliente) {
+        return "C|" + rucCliente;
+    }
+}
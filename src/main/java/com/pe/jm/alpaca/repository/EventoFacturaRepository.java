@@ -0,0 +1,146 @@
+package com.pe.jm.alpaca.repository;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.EventoFactura;
+import io.vertx.core.Future;
+import io.vertx.mysqlclient.MySQLPool;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.Tuple;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bandeja de salida de eventos de facturas (DDL en db/eventos_factura.sql). Los eventos se insertan en la
+ * transacción del registro y el relay los lee y marca siempre en el primario.
+ */
+@Repository
+public class EventoFacturaRepository {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO AA_EVENTO_FACTURA (RUC_VENDEDOR, CODIGO_FACTURA, TIPO_EVENTO, DATOS)
+            VALUES (?, ?, ?, ?)
+            """;
+
+    // El ID se asigna al insertar, no al confirmar: dos registros simultáneos del mismo vendedor pueden
+    // confirmarse en orden inverso. Solo se leen los eventos con más de margenMs de creados, cuando las
+    // transacciones con IDs menores ya terminaron. Además se excluye a los vendedores cuyo evento más
+    // antiguo espera un reintento: sus eventos siguientes no se publican antes que él, y tampoco ocupan
+    // el lote de los demás vendedores
+    private static final String PENDIENTES_SQL = """
+            SELECT ID, RUC_VENDEDOR, CODIGO_FACTURA, TIPO_EVENTO, DATOS, FECHA_CREACION, INTENTOS
+            FROM AA_EVENTO_FACTURA
+            WHERE ESTADO = 'PENDIENTE'
+              AND FECHA_CREACION < DATE_SUB(NOW(3), INTERVAL ? MICROSECOND)
+              AND RUC_VENDEDOR NOT IN (
+                  SELECT RUC_VENDEDOR FROM AA_EVENTO_FACTURA
+                  WHERE ESTADO = 'PENDIENTE' AND PROXIMO_INTENTO > NOW(3))
+            ORDER BY ID
+            LIMIT ?
+            """;
+
+    private static final String MARCAR_PUBLICADO_SQL = """
+            UPDATE AA_EVENTO_FACTURA SET ESTADO = 'PUBLICADO', PUBLICADO_EN = NOW(3), ULTIMO_ERROR = NULL
+            WHERE ID = ?
+            """;
+
+    private static final String MARCAR_FALLIDO_SQL = """
+            UPDATE AA_EVENTO_FACTURA
+            SET ESTADO = ?, INTENTOS = INTENTOS + 1, ULTIMO_ERROR = ?,
+                PROXIMO_INTENTO = DATE_ADD(NOW(3), INTERVAL ? MICROSECOND)
+            WHERE ID = ?
+            """;
+
+    private static final String PURGAR_SQL = """
+            DELETE FROM AA_EVENTO_FACTURA
+            WHERE ESTADO = 'PUBLICADO' AND PUBLICADO_EN < DATE_SUB(NOW(3), INTERVAL ? HOUR)
+            LIMIT 10000
+            """;
+
+    private final MySQLPool client;
+    private final Metricas metricas;
+
+    public EventoFacturaRepository(MySQLPool client, Metricas metricas) {
+        this.client = client;
+        this.metricas = metricas;
+    }
+
+    /**
+     * Inserta los eventos usando la conexión de la transacción que registra las facturas
+     */
+    public Future<Long> insertBatch(SqlClient sqlClient, List<EventoFactura> eventos) {
+        if (eventos.isEmpty()) {
+            return Future.succeededFuture(0L);
+        }
+
+        List<Tuple> batch = new ArrayList<>(eventos.size());
+        for (EventoFactura evento : eventos) {
+            batch.add(Tuple.of(evento.getRucVendedor(), evento.getCodigoFactura(), evento.getTipoEvento(),
+                    evento.getDatos()));
+        }
+
+        return metricas.repositorio("EventoFacturaRepository", "insertBatch", () -> sqlClient.preparedQuery(INSERT_SQL)
+                .executeBatch(batch)
+                .map(FacturaRepository::contarFilas));
+    }
+
+    /**
+     * @param margenMs antigüedad mínima del evento; debe superar la duración máxima de una transacción de registro
+     * @return hasta limite eventos pendientes, en orden de ID
+     */
+    public Future<List<EventoFactura>> pendientes(long margenMs, int limite) {
+        return metricas.repositorio("EventoFacturaRepository", "pendientes", () -> client.preparedQuery(PENDIENTES_SQL)
+                .execute(Tuple.of(margenMs * 1000, limite))
+                .map(rows -> {
+                    List<EventoFactura> eventos = new ArrayList<>(rows.size());
+                    for (Row row : rows) {
+                        eventos.add(mapRowToEvento(row));
+                    }
+                    return eventos;
+                }));
+    }
+
+    public Future<Long> marcarPublicados(List<EventoFactura> eventos) {
+        List<Tuple> batch = new ArrayList<>(eventos.size());
+        for (EventoFactura evento : eventos) {
+            batch.add(Tuple.of(evento.getId()));
+        }
+        return metricas.repositorio("EventoFacturaRepository", "marcarPublicados", () -> client.preparedQuery(MARCAR_PUBLICADO_SQL)
+                .executeBatch(batch)
+                .map(FacturaRepository::contarFilas));
+    }
+
+    /**
+     * Cuenta un intento fallido; el evento se reintenta tras esperaMs, o queda FALLIDO si es definitivo
+     */
+    public Future<Void> marcarFallido(Long id, boolean definitivo, long esperaMs, String error) {
+        String mensaje = error == null ? null : error.substring(0, Math.min(error.length(), 500));
+        return metricas.repositorio("EventoFacturaRepository", "marcarFallido", () -> client.preparedQuery(MARCAR_FALLIDO_SQL)
+                .execute(Tuple.of(definitivo ? "FALLIDO" : "PENDIENTE", mensaje, esperaMs * 1000, id))
+                .mapEmpty());
+    }
+
+    /**
+     * Borra eventos publicados hace más de horas
+     * @return filas borradas (a lo más 10000 por llamada)
+     */
+    public Future<Long> purgarPublicados(int horas) {
+        return metricas.repositorio("EventoFacturaRepository", "purgarPublicados", () -> client.preparedQuery(PURGAR_SQL)
+                .execute(Tuple.of(horas))
+                .map(rows -> (long) rows.rowCount()));
+    }
+
+    private EventoFactura mapRowToEvento(Row row) {
+        return EventoFactura.builder()
+                .id(row.getLong(0))
+                .rucVendedor(row.getLong(1))
+                .codigoFactura(row.getString(2))
+                .tipoEvento(row.getString(3))
+                .datos(row.getString(4))
+                .fechaCreacion(row.getLocalDateTime(5))
+                .intentos(row.getInteger(6))
+                .build();
+    }
+}
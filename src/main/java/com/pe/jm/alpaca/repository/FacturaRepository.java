@@ -1,24 +1,24 @@
 package com.pe.jm.alpaca.repository;
 
+import com.pe.jm.alpaca.metricas.Metricas;
 import com.pe.jm.alpaca.model.Factura;
 import io.vertx.core.Future;
 import io.vertx.mysqlclient.MySQLPool;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlClient;
 import io.vertx.sqlclient.Tuple;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
 @Repository
 public class FacturaRepository {
 
-    private final MySQLPool client;
-
-    public FacturaRepository(MySQLPool client) {
-        this.client = client;
-    }
-
-    public Future<Long> insert(Factura factura) {
-        String sql = """
+    private static final String INSERT_SQL = """
             INSERT INTO AA_FACTURA (
                 RUC_VENDEDOR, CODIGO_FACTURA, FECHA_EMISION, RUC_CLIENTE,
                 FORMA_PAGO, FACTURA_ANTICIPO, TIPO_MONEDA, SUB_TOTAL_VENTAS,
@@ -28,7 +28,173 @@ public class FacturaRepository {
             ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
             """;
 
-        Tuple params = Tuple.of(
+    private static final String COLUMNAS = """
+            RUC_VENDEDOR, CODIGO_FACTURA, FECHA_EMISION, RUC_CLIENTE,
+            FORMA_PAGO, FACTURA_ANTICIPO, TIPO_MONEDA, SUB_TOTAL_VENTAS,
+            ANTICIPOS, VALOR_VENTA, MONTO_DETRACCION, OBSERVACION,
+            COD_BIEN_SERVICIO, COD_MEDIO_PAGO, NRO_CTA_BANCO_NACION,
+            PORCENTAJE_DETRACCION, IMPORTE_TOTAL, TIPO, ANULACION
+            """;
+
+    private static final String FIND_BY_CODIGO_SQL = "SELECT " + COLUMNAS + """
+            FROM AA_FACTURA
+            WHERE RUC_VENDEDOR = ? AND CODIGO_FACTURA = ?
+            """;
+
+    private static final String EXISTE_SQL = """
+            SELECT 1 FROM AA_FACTURA WHERE RUC_VENDEDOR = ? AND CODIGO_FACTURA = ?
+            """;
+
+    // Paginación por clave (FECHA_EMISION, CODIGO_FACTURA): cada página continúa después de la
+    // última fila de la anterior, sin OFFSET. Usa el índice (RUC_VENDEDOR, FECHA_EMISION, CODIGO_FACTURA).
+    private static final String LISTADO_SQL = "SELECT " + COLUMNAS + """
+            FROM AA_FACTURA
+            WHERE RUC_VENDEDOR = ? AND FECHA_EMISION BETWEEN ? AND ?
+            ORDER BY FECHA_EMISION, CODIGO_FACTURA
+            LIMIT ?
+            """;
+
+    private static final String LISTADO_DESDE_CURSOR_SQL = "SELECT " + COLUMNAS + """
+            FROM AA_FACTURA
+            WHERE RUC_VENDEDOR = ? AND FECHA_EMISION BETWEEN ? AND ?
+              AND (FECHA_EMISION > ? OR (FECHA_EMISION = ? AND CODIGO_FACTURA > ?))
+            ORDER BY FECHA_EMISION, CODIGO_FACTURA
+            LIMIT ?
+            """;
+
+    // Una fila por detalle, con los datos de su cabecera; el orden de columnas es el de COLUMNAS_EXPORTACION
+    private static final String EXPORTACION_SQL = """
+            SELECT f.RUC_VENDEDOR, f.CODIGO_FACTURA, f.FECHA_EMISION, f.RUC_CLIENTE, f.TIPO_MONEDA,
+                   f.TIPO, f.ANULACION, f.SUB_TOTAL_VENTAS, f.ANTICIPOS, f.VALOR_VENTA, f.IMPORTE_TOTAL,
+                   d.DETALLE_ID, d.CANTIDAD, d.UNIDAD_MEDIDA, d.DESCRIPCION, d.VALOR_UNITARIO
+            FROM AA_FACTURA f
+            JOIN AA_DETALLE_FACTURA d ON d.RUC_VENDEDOR = f.RUC_VENDEDOR AND d.CODIGO_FACTURA = f.CODIGO_FACTURA
+            WHERE f.FECHA_EMISION BETWEEN ? AND ?
+            """;
+
+    private static final String EXPORTACION_ORDEN = "ORDER BY f.FECHA_EMISION, f.RUC_VENDEDOR, f.CODIGO_FACTURA, d.DETALLE_ID";
+
+    public static final List<String> COLUMNAS_EXPORTACION = List.of(
+            "RUC_VENDEDOR", "CODIGO_FACTURA", "FECHA_EMISION", "RUC_CLIENTE", "TIPO_MONEDA",
+            "TIPO", "ANULACION", "SUB_TOTAL_VENTAS", "ANTICIPOS", "VALOR_VENTA", "IMPORTE_TOTAL",
+            "DETALLE_ID", "CANTIDAD", "UNIDAD_MEDIDA", "DESCRIPCION", "VALOR_UNITARIO");
+
+    private final MySQLPool client;
+    private final Metricas metricas;
+    private final EnrutadorLecturas lecturas;
+
+    public FacturaRepository(MySQLPool client, Metricas metricas, EnrutadorLecturas lecturas) {
+        this.client = client;
+        this.metricas = metricas;
+        this.lecturas = lecturas;
+    }
+
+    public Future<Long> insert(Factura factura) {
+        return insert(client, factura);
+    }
+
+    /**
+     * Inserta usando la conexión indicada (por ejemplo, la de una transacción en curso)
+     */
+    public Future<Long> insert(SqlClient sqlClient, Factura factura) {
+        return metricas.repositorio("FacturaRepository", "insert", () -> sqlClient.preparedQuery(INSERT_SQL)
+                .execute(toTuple(factura))
+                .onSuccess(rowSet -> lecturas.registrarEscritura(
+                        EnrutadorLecturas.claveFactura(factura.getRucVendedor(), factura.getCodigoFactura())))
+                .map(rowSet -> (long) rowSet.rowCount()));
+    }
+
+    /**
+     * Inserta varias facturas en un solo batch (un round trip por lote)
+     */
+    public Future<Long> insertBatch(List<Factura> facturas) {
+        return insertBatch(client, facturas);
+    }
+
+    public Future<Long> insertBatch(SqlClient sqlClient, List<Factura> facturas) {
+        if (facturas.isEmpty()) {
+            return Future.succeededFuture(0L);
+        }
+
+        List<Tuple> batch = new ArrayList<>(facturas.size());
+        for (Factura factura : facturas) {
+            batch.add(toTuple(factura));
+        }
+
+        return metricas.repositorio("FacturaRepository", "insertBatch", () -> sqlClient.preparedQuery(INSERT_SQL)
+                .executeBatch(batch)
+                .onSuccess(rowSet -> facturas.forEach(factura -> lecturas.registrarEscritura(
+                        EnrutadorLecturas.claveFactura(factura.getRucVendedor(), factura.getCodigoFactura()))))
+                .map(FacturaRepository::contarFilas));
+    }
+
+    public Future<Factura> findByRucVendedorAndCodigoFactura(Long rucVendedor, String codigoFactura) {
+        MySQLPool pool = lecturas.lectura(EnrutadorLecturas.claveFactura(rucVendedor, codigoFactura));
+        return metricas.repositorio("FacturaRepository", "findByRucVendedorAndCodigoFactura", () -> pool.preparedQuery(FIND_BY_CODIGO_SQL)
+                .execute(Tuple.of(rucVendedor, codigoFactura))
+                .map(rows -> {
+                    if (rows.size() == 0) {
+                        return null;
+                    }
+                    Row row = rows.iterator().next();
+                    return mapRowToFactura(row);
+                }));
+    }
+
+    /**
+     * Consulta el primario, sin pasar por las réplicas: sirve para saber si una factura ya quedó
+     * registrada aunque el registro se haya hecho antes de un reinicio
+     */
+    public Future<Boolean> existe(Long rucVendedor, String codigoFactura) {
+        return metricas.repositorio("FacturaRepository", "existe", () -> client.preparedQuery(EXISTE_SQL)
+                .execute(Tuple.of(rucVendedor, codigoFactura))
+                .map(rows -> rows.size() > 0));
+    }
+
+    /**
+     * Facturas del vendedor emitidas entre desde y hasta (inclusive), ordenadas por fecha y código,
+     * leídas con un cursor. Si se indica el cursor (despuesDeFecha y despuesDeCodigo, ambos o ninguno)
+     * la página empieza después de esa factura.
+     */
+    public FlujoFilas<Factura> listarPorVendedorYFechas(Long rucVendedor, LocalDate desde, LocalDate hasta,
+                                                        LocalDate despuesDeFecha, String despuesDeCodigo,
+                                                        int limite, int tamanoFetch) {
+        if (despuesDeFecha == null || despuesDeCodigo == null) {
+            return FlujoFilas.abrir(lecturas.lectura(), LISTADO_SQL,
+                    Tuple.of(rucVendedor, desde, hasta, limite), tamanoFetch, this::mapRowToFactura);
+        }
+        return FlujoFilas.abrir(lecturas.lectura(), LISTADO_DESDE_CURSOR_SQL,
+                Tuple.of(rucVendedor, desde, hasta, despuesDeFecha, despuesDeFecha, despuesDeCodigo, limite),
+                tamanoFetch, this::mapRowToFactura);
+    }
+
+    /**
+     * Detalles de las facturas emitidas entre desde y hasta junto con su cabecera, leídos con un cursor.
+     * Entrega las filas tal cual, sin convertirlas a Factura/DetalleFactura.
+     * @param rucVendedor para filtrar por vendedor, o null para todos
+     */
+    public FlujoFilas<Row> exportarConDetalles(LocalDate desde, LocalDate hasta, Long rucVendedor, int tamanoFetch) {
+        if (rucVendedor == null) {
+            return FlujoFilas.abrir(lecturas.lectura(), EXPORTACION_SQL + EXPORTACION_ORDEN,
+                    Tuple.of(desde, hasta), tamanoFetch, Function.identity());
+        }
+        return FlujoFilas.abrir(lecturas.lectura(), EXPORTACION_SQL + "AND f.RUC_VENDEDOR = ?\n" + EXPORTACION_ORDEN,
+                Tuple.of(desde, hasta, rucVendedor), tamanoFetch, Function.identity());
+    }
+
+    /**
+     * Suma las filas afectadas de todos los resultados de un executeBatch
+     */
+    static long contarFilas(RowSet<Row> rowSet) {
+        long total = 0;
+        for (RowSet<Row> actual = rowSet; actual != null; actual = actual.next()) {
+            total += actual.rowCount();
+        }
+        return total;
+    }
+
+    private Tuple toTuple(Factura factura) {
+        return Tuple.of(
                 factura.getRucVendedor(),
                 factura.getCodigoFactura(),
                 factura.getFechaEmision(),
@@ -49,50 +215,32 @@ public class FacturaRepository {
                 factura.getTipo(),
                 factura.getAnulacion()
         );
-
-        return client.preparedQuery(sql)
-                .execute(params)
-                .map(rowSet -> (long) rowSet.rowCount());
-    }
-
-    public Future<Factura> findByRucVendedorAndCodigoFactura(Long rucVendedor, String codigoFactura) {
-        String sql = """
-            SELECT * FROM AA_FACTURA
-            WHERE RUC_VENDEDOR = ? AND CODIGO_FACTURA = ?
-            """;
-
-        return client.preparedQuery(sql)
-                .execute(Tuple.of(rucVendedor, codigoFactura))
-                .map(rows -> {
-                    if (rows.size() == 0) {
-                        return null;
-                    }
-                    Row row = rows.iterator().next();
-                    return mapRowToFactura(row);
-                });
     }
 
+    /**
+     * Mapea por posición, en el orden de COLUMNAS
+     */
     private Factura mapRowToFactura(Row row) {
         return Factura.builder()
-                .rucVendedor(row.getLong("RUC_VENDEDOR"))
-                .codigoFactura(row.getString("CODIGO_FACTURA"))
-                .fechaEmision(row.getLocalDate("FECHA_EMISION"))
-                .rucCliente(row.getLong("RUC_CLIENTE"))
-                .formaPago(row.getString("FORMA_PAGO"))
-                .facturaAnticipo(row.getString("FACTURA_ANTICIPO"))
-                .tipoMoneda(row.getString("TIPO_MONEDA"))
-                .subTotalVentas(row.getBigDecimal("SUB_TOTAL_VENTAS"))
-                .anticipos(row.getBigDecimal("ANTICIPOS"))
-                .valorVenta(row.getBigDecimal("VALOR_VENTA"))
-                .montoDetraccion(row.getBigDecimal("MONTO_DETRACCION"))
-                .observacion(row.getString("OBSERVACION"))
-                .codBienServicio(row.getString("COD_BIEN_SERVICIO"))
-                .codMedioPago(row.getString("COD_MEDIO_PAGO"))
-                .nroCtaBancoNacion(row.getString("NRO_CTA_BANCO_NACION"))
-                .porcentajeDetraccion(row.getBigDecimal("PORCENTAJE_DETRACCION"))
-                .importeTotal(row.getBigDecimal("IMPORTE_TOTAL"))
-                .tipo(row.getString("TIPO"))
-                .anulacion(row.getString("ANULACION"))
+                .rucVendedor(row.getLong(0))
+                .codigoFactura(row.getString(1))
+                .fechaEmision(row.getLocalDate(2))
+                .rucCliente(row.getLong(3))
+                .formaPago(row.getString(4))
+                .facturaAnticipo(row.getString(5))
+                .tipoMoneda(row.getString(6))
+                .subTotalVentas(row.getBigDecimal(7))
+                .anticipos(row.getBigDecimal(8))
+                .valorVenta(row.getBigDecimal(9))
+                .montoDetraccion(row.getBigDecimal(10))
+                .observacion(row.getString(11))
+                .codBienServicio(row.getString(12))
+                .codMedioPago(row.getString(13))
+                .nroCtaBancoNacion(row.getString(14))
+                .porcentajeDetraccion(row.getBigDecimal(15))
+                .importeTotal(row.getBigDecimal(16))
+                .tipo(row.getString(17))
+                .anulacion(row.getString(18))
                 .build();
     }
 }
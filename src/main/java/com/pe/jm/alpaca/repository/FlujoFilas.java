@@ -0,0 +1,161 @@
+package com.pe.jm.alpaca.repository;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.PreparedStatement;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowStream;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Lee el resultado de una consulta fila a fila con un cursor (RowStream) y lo entrega a un hilo
+ * bloqueante, por ejemplo el de la petición HTTP que escribe la respuesta.
+ * En memoria hay como mucho unas "capacidad" filas: al llenarse la cola se pausa el cursor y se
+ * reanuda cuando el consumidor la vacía hasta la mitad. La conexión se libera al terminar, ante
+ * un error o al llamar a close(), lo que ocurra primero.
+ */
+public class FlujoFilas<T> implements AutoCloseable {
+
+    private static final Object FIN = new Object();
+    private static final long ESPERA_MAXIMA_MS = 60_000;
+
+    private final LinkedBlockingQueue<Object> cola = new LinkedBlockingQueue<>();
+    private final AtomicBoolean pausado = new AtomicBoolean();
+    private final int capacidad;
+    private final Function<Row, T> mapeo;
+
+    private volatile Context contexto;
+    private volatile Throwable error;
+    private volatile boolean cerrado;
+
+    // Solo se usan en el event loop
+    private SqlConnection conexion;
+    private RowStream<Row> stream;
+    private boolean liberado;
+
+    // Solo los usa el consumidor
+    private boolean terminado;
+
+    private FlujoFilas(int capacidad, Function<Row, T> mapeo) {
+        this.capacidad = capacidad;
+        this.mapeo = mapeo;
+    }
+
+    /**
+     * Toma una conexión del pool, abre una transacción (el cursor la necesita) y empieza a leer.
+     * Vuelve de inmediato; los errores de conexión o de la consulta se reciben en siguiente().
+     */
+    static <T> FlujoFilas<T> abrir(Pool pool, String sql, Tuple parametros, int capacidad, Function<Row, T> mapeo) {
+        FlujoFilas<T> flujo = new FlujoFilas<>(capacidad, mapeo);
+        pool.getConnection()
+                .compose(conn -> {
+                    flujo.conexion = conn;
+                    flujo.contexto = Vertx.currentContext();
+                    return conn.begin().compose(tx -> conn.prepare(sql));
+                })
+                .onSuccess(preparedStatement -> flujo.iniciar(preparedStatement, parametros))
+                .onFailure(flujo::fallar);
+        return flujo;
+    }
+
+    /**
+     * Bloquea hasta tener la siguiente fila
+     * @return la fila convertida, o null al terminar el resultado
+     */
+    @SuppressWarnings("unchecked")
+    public T siguiente() throws InterruptedException {
+        if (terminado) {
+            return null;
+        }
+
+        Object elemento = cola.poll(ESPERA_MAXIMA_MS, TimeUnit.MILLISECONDS);
+        if (elemento == null) {
+            throw new IllegalStateException("Tiempo de espera agotado leyendo filas de la base de datos");
+        }
+        if (elemento == FIN) {
+            terminado = true;
+            if (error != null) {
+                throw new IllegalStateException("Error leyendo filas de la base de datos: " + error.getMessage(), error);
+            }
+            return null;
+        }
+
+        if (cola.size() <= capacidad / 2 && pausado.compareAndSet(true, false)) {
+            contexto.runOnContext(v -> {
+                if (!liberado) {
+                    stream.resume();
+                }
+            });
+        }
+        return (T) elemento;
+    }
+
+    /**
+     * Cierra el cursor y devuelve la conexión al pool aunque no se haya leído todo
+     */
+    @Override
+    public void close() {
+        cerrado = true;
+        Context actual = contexto;
+        if (actual != null) {
+            actual.runOnContext(v -> liberar());
+        }
+    }
+
+    private void iniciar(PreparedStatement preparedStatement, Tuple parametros) {
+        if (cerrado) {
+            liberar();
+            return;
+        }
+
+        stream = preparedStatement.createStream(capacidad, parametros);
+        stream.exceptionHandler(this::fallar);
+        stream.endHandler(v -> {
+            cola.add(FIN);
+            liberar();
+        });
+        stream.handler(row -> {
+            try {
+                cola.add(mapeo.apply(row));
+            } catch (RuntimeException e) {
+                fallar(e);
+                return;
+            }
+            if (cola.size() >= capacidad && pausado.compareAndSet(false, true)) {
+                stream.pause();
+                // El consumidor pudo vaciar la cola antes de que pausado fuera true, sin reanudar:
+                // si ya hay sitio se reanuda aquí, si no lo hará el consumidor al llegar a la mitad
+                if (cola.size() <= capacidad / 2 && pausado.compareAndSet(true, false)) {
+                    stream.resume();
+                }
+            }
+        });
+    }
+
+    private void fallar(Throwable causa) {
+        error = causa;
+        cola.add(FIN);
+        liberar();
+    }
+
+    private void liberar() {
+        if (liberado) {
+            return;
+        }
+        liberado = true;
+        if (stream != null) {
+            stream.close();
+        }
+        if (conexion != null) {
+            // Cerrar la conexión del pool hace rollback de la transacción de solo lectura
+            conexion.close();
+        }
+    }
+}
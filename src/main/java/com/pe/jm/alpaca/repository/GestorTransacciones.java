@@ -0,0 +1,61 @@
+package com.pe.jm.alpaca.repository;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import io.vertx.core.Future;
+import io.vertx.mysqlclient.MySQLPool;
+import io.vertx.sqlclient.SqlConnection;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+@Component
+public class GestorTransacciones {
+
+    private final MySQLPool client;
+    private final Metricas metricas;
+    private final LimitadorAdaptativo limitador;
+    private final AtomicInteger esperando = new AtomicInteger();
+    private final AtomicInteger activas = new AtomicInteger();
+
+    public GestorTransacciones(MySQLPool client, Metricas metricas, LimitadorAdaptativo limitador) {
+        this.client = client;
+        this.metricas = metricas;
+        this.limitador = limitador;
+        metricas.gauge("alpaca.pool.transacciones.esperando",
+                "Transacciones esperando una conexión del pool", esperando::get);
+        metricas.gauge("alpaca.pool.transacciones.activas",
+                "Transacciones con una conexión del pool asignada", activas::get);
+    }
+
+    /**
+     * Ejecuta la función en una sola conexión del pool dentro de una transacción.
+     * Hace commit si el Future resultante tiene éxito y rollback si falla;
+     * la conexión vuelve al pool en ambos casos.
+     */
+    public <T> Future<T> ejecutar(Function<SqlConnection, Future<T>> function) {
+        long inicio = System.nanoTime();
+        boolean[] adquirida = new boolean[1];
+        esperando.incrementAndGet();
+
+        // withTransaction llama a la función cuando ya tiene la conexión y la transacción iniciada
+        return client.withTransaction((SqlConnection conn) -> {
+            adquirida[0] = true;
+            esperando.decrementAndGet();
+            activas.incrementAndGet();
+            long espera = System.nanoTime() - inicio;
+            metricas.adquisicion(espera, true);
+            limitador.registrarEspera(espera, true);
+            return function.apply(conn);
+        }).onComplete(ar -> {
+            if (adquirida[0]) {
+                activas.decrementAndGet();
+            } else {
+                esperando.decrementAndGet();
+                long espera = System.nanoTime() - inicio;
+                metricas.adquisicion(espera, false);
+                limitador.registrarEspera(espera, false);
+            }
+        });
+    }
+}
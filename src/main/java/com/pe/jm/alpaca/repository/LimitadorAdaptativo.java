@@ -0,0 +1,148 @@
+package com.pe.jm.alpaca.repository;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import io.micrometer.core.instrument.Counter;
+import io.vertx.core.Future;
+import io.vertx.core.http.ConnectionPoolTooBusyException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Control de admisión AIMD delante del pool de MySQL: limita cuántos registros pueden estar en curso
+ * a la vez. Si la espera por una conexión supera el objetivo, o el pool rechaza por cola llena, el límite
+ * baja multiplicativamente (como mucho una vez por ventana); si las conexiones llegan a tiempo y el límite
+ * se está usando, sube de a poco (+1 por cada "límite" adquisiciones). Lo que excede el límite se rechaza
+ * de inmediato con SobrecargaException en lugar de esperar en la cola del pool hasta agotar el timeout.
+ */
+@Component
+public class LimitadorAdaptativo {
+
+    private static final double FACTOR_REDUCCION = 0.75;
+
+    private final boolean habilitado;
+    private final int minimo;
+    private final int maximo;
+    private final long esperaObjetivoNanos;
+    private final long ventanaNanos;
+    private final int reintentarEnSegundos;
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final Counter rechazos;
+
+    private volatile double limite;
+    // Solo se usa dentro de reducir, siempre con el monitor tomado
+    private long ultimaReduccion = System.nanoTime();
+
+    public LimitadorAdaptativo(Metricas metricas,
+                               @Value("${mysql.limitador.enabled:true}") boolean habilitado,
+                               @Value("${mysql.limitador.minimo:${mysql.pool.max-size:10}}") int minimo,
+                               @Value("${mysql.limitador.maximo:110}") int maximo,
+                               @Value("${mysql.limitador.espera-objetivo-ms:100}") long esperaObjetivoMs,
+                               @Value("${mysql.limitador.ventana-ms:500}") long ventanaMs,
+                               @Value("${mysql.limitador.retry-after:1}") int reintentarEnSegundos) {
+        this.habilitado = habilitado;
+        this.minimo = Math.max(1, minimo);
+        this.maximo = Math.max(this.minimo, maximo);
+        this.esperaObjetivoNanos = esperaObjetivoMs * 1_000_000L;
+        this.ventanaNanos = ventanaMs * 1_000_000L;
+        this.reintentarEnSegundos = reintentarEnSegundos;
+        this.limite = this.maximo;
+
+        metricas.gauge("alpaca.limitador.limite", "Registros en curso admitidos por el limitador", () -> (int) limite);
+        metricas.gauge("alpaca.limitador.en.curso", "Registros en curso", enCurso::get);
+        this.rechazos = metricas.contador("alpaca.limitador.rechazos", "Registros rechazados por sobrecarga");
+    }
+
+    /**
+     * Ejecuta la operación si hay cupo; si no, devuelve un Future fallido con SobrecargaException
+     */
+    public <T> Future<T> admitir(Supplier<Future<T>> operacion) {
+        if (!entrar()) {
+            return Future.failedFuture(sobrecarga());
+        }
+        Future<T> future;
+        try {
+            future = operacion.get();
+        } catch (RuntimeException e) {
+            enCurso.decrementAndGet();
+            return Future.failedFuture(e);
+        }
+        return future.onComplete(ar -> enCurso.decrementAndGet());
+    }
+
+    /**
+     * Versión bloqueante de admitir, para el modo de hilos virtuales
+     * @throws SobrecargaException si no hay cupo
+     */
+    public <T> T admitirBloqueante(Supplier<T> operacion) {
+        if (!entrar()) {
+            throw sobrecarga();
+        }
+        try {
+            return operacion.get();
+        } finally {
+            enCurso.decrementAndGet();
+        }
+    }
+
+    /**
+     * Ajusta el límite con el tiempo que se esperó por una conexión del pool
+     */
+    public synchronized void registrarEspera(long nanos, boolean exito) {
+        if (!exito || nanos > esperaObjetivoNanos) {
+            reducir();
+        } else if (enCurso.get() * 2 >= limite) {
+            limite = Math.min(maximo, limite + 1.0 / limite);
+        }
+    }
+
+    /**
+     * @return la excepción a propagar si el error indica saturación del pool, o null si es otro error.
+     * Que el pool rechace por cola llena también reduce el límite.
+     */
+    public SobrecargaException comoSobrecarga(Throwable error) {
+        for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+            if (causa instanceof SobrecargaException sobrecarga) {
+                return sobrecarga;
+            }
+            if (causa instanceof ConnectionPoolTooBusyException) {
+                synchronized (this) {
+                    reducir();
+                }
+                return sobrecarga();
+            }
+        }
+        return null;
+    }
+
+    private void reducir() {
+        long ahora = System.nanoTime();
+        if (ahora - ultimaReduccion >= ventanaNanos) {
+            limite = Math.max(minimo, limite * FACTOR_REDUCCION);
+            ultimaReduccion = ahora;
+        }
+    }
+
+    private boolean entrar() {
+        if (!habilitado) {
+            enCurso.incrementAndGet();
+            return true;
+        }
+        while (true) {
+            int actual = enCurso.get();
+            if (actual >= (int) limite) {
+                rechazos.increment();
+                return false;
+            }
+            if (enCurso.compareAndSet(actual, actual + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private SobrecargaException sobrecarga() {
+        return new SobrecargaException(reintentarEnSegundos);
+    }
+}
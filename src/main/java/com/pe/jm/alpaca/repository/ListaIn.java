@@ -0,0 +1,40 @@
+package com.pe.jm.alpaca.repository;
+
+import io.vertx.sqlclient.Tuple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consultas con IN (?, ?, ...) de largo variable. La cantidad de marcadores se redondea a la siguiente
+ * potencia de dos (rellenando con el último valor), así un puñado de textos SQL distintos cubre todos
+ * los tamaños y sus sentencias preparadas se reutilizan desde la caché de la conexión.
+ */
+final class ListaIn {
+
+    private ListaIn() {
+    }
+
+    /**
+     * @param prefijo la consulta hasta "IN " inclusive
+     */
+    static String sql(String prefijo, int valores) {
+        return prefijo + "(" + String.join(", ", Collections.nCopies(tamano(valores), "?")) + ")";
+    }
+
+    static Tuple parametros(List<Object> valores) {
+        int tamano = tamano(valores.size());
+        List<Object> relleno = new ArrayList<>(tamano);
+        relleno.addAll(valores);
+        Object ultimo = valores.get(valores.size() - 1);
+        while (relleno.size() < tamano) {
+            relleno.add(ultimo);
+        }
+        return Tuple.wrap(relleno);
+    }
+
+    static int tamano(int valores) {
+        return valores <= 1 ? 1 : Integer.highestOneBit(valores - 1) << 1;
+    }
+}
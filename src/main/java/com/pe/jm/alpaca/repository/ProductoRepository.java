@@ -0,0 +1,54 @@
+package com.pe.jm.alpaca.repository;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.Producto;
+import io.vertx.core.Future;
+import io.vertx.sqlclient.Row;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Repository
+public class ProductoRepository {
+
+    private static final String FIND_ALL_SQL = """
+            SELECT ID_PRODUCTO, DESCRIPCION, TIPO_PRESENTACION, TIPO_FIBRA, TIPO_CALIDAD
+            FROM AA_PRODUCTO
+            ORDER BY ID_PRODUCTO
+            """;
+
+    private final Metricas metricas;
+    private final EnrutadorLecturas lecturas;
+
+    public ProductoRepository(Metricas metricas, EnrutadorLecturas lecturas) {
+        this.metricas = metricas;
+        this.lecturas = lecturas;
+    }
+
+    /**
+     * Catálogo completo; lo usa IndiceProductos para armar su índice en memoria
+     */
+    public Future<List<Producto>> findAll() {
+        return metricas.repositorio("ProductoRepository", "findAll", () -> lecturas.lectura()
+                .preparedQuery(FIND_ALL_SQL)
+                .execute()
+                .map(rows -> {
+                    List<Producto> productos = new ArrayList<>(rows.size());
+                    for (Row row : rows) {
+                        productos.add(mapRowToProducto(row));
+                    }
+                    return productos;
+                }));
+    }
+
+    private Producto mapRowToProducto(Row row) {
+        return Producto.builder()
+                .idProducto(row.getLong(0))
+                .descripcion(row.getString(1))
+                .tipoPresentacion(row.getString(2))
+                .tipoFibra(row.getString(3))
+                .tipoCalidad(row.getString(4))
+                .build();
+    }
+}
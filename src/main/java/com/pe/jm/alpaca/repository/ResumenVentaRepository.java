@@ -0,0 +1,180 @@
+package com.pe.jm.alpaca.repository;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.ResumenVenta;
+import io.vertx.core.Future;
+import io.vertx.mysqlclient.MySQLPool;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.Tuple;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tablas de resumen de ventas (DDL en db/resumen_ventas.sql). Las filas se acumulan con
+ * INSERT ... ON DUPLICATE KEY UPDATE dentro de la transacción que registra la factura,
+ * y se pueden recalcular por mes desde AA_FACTURA / AA_DETALLE_FACTURA.
+ */
+@Repository
+public class ResumenVentaRepository {
+
+    private static final String COLUMNAS = """
+            RUC_VENDEDOR, FECHA, RUC_CLIENTE, TIPO_MONEDA, TIPO_FIBRA, TIPO_CALIDAD,
+            CANTIDAD, IMPORTE, LINEAS, FACTURAS
+            """;
+
+    private static final String ACUMULAR_SQL = """
+            (%s) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE
+                CANTIDAD = CANTIDAD + VALUES(CANTIDAD),
+                IMPORTE = IMPORTE + VALUES(IMPORTE),
+                LINEAS = LINEAS + VALUES(LINEAS),
+                FACTURAS = FACTURAS + VALUES(FACTURAS)
+            """.formatted(COLUMNAS);
+
+    private static final String ACUMULAR_DIARIO_SQL = "INSERT INTO AA_RESUMEN_VENTA_DIARIO " + ACUMULAR_SQL;
+
+    private static final String ACUMULAR_MENSUAL_SQL = "INSERT INTO AA_RESUMEN_VENTA_MENSUAL " + ACUMULAR_SQL;
+
+    private static final String BORRAR_DIARIO_SQL = "DELETE FROM AA_RESUMEN_VENTA_DIARIO WHERE FECHA BETWEEN ? AND ?";
+
+    private static final String BORRAR_MENSUAL_SQL = "DELETE FROM AA_RESUMEN_VENTA_MENSUAL WHERE FECHA BETWEEN ? AND ?";
+
+    // Misma regla que el acumulado incremental: sin facturas anuladas ni líneas que aplican un anticipo,
+    // importe por línea redondeado a 4 decimales
+    private static final String RECALCULAR_DIARIO_SQL = "INSERT INTO AA_RESUMEN_VENTA_DIARIO (" + COLUMNAS + """
+            )
+            SELECT f.RUC_VENDEDOR, f.FECHA_EMISION, f.RUC_CLIENTE, COALESCE(f.TIPO_MONEDA, ''),
+                   COALESCE(p.TIPO_FIBRA, ''), COALESCE(p.TIPO_CALIDAD, ''),
+                   SUM(d.CANTIDAD), SUM(ROUND(d.CANTIDAD * d.VALOR_UNITARIO, 4)), COUNT(*),
+                   COUNT(DISTINCT d.CODIGO_FACTURA)
+            FROM AA_FACTURA f
+            JOIN AA_DETALLE_FACTURA d ON d.RUC_VENDEDOR = f.RUC_VENDEDOR AND d.CODIGO_FACTURA = f.CODIGO_FACTURA
+            LEFT JOIN AA_PRODUCTO p ON p.ID_PRODUCTO = d.ID_PRODUCTO
+            WHERE f.FECHA_EMISION BETWEEN ? AND ? AND (f.ANULACION IS NULL OR f.ANULACION <> '1')
+              AND NOT EXISTS (
+                  SELECT 1 FROM AA_ANTICIPO_APLICADO a
+                  WHERE a.VENTA_RUC_VENDEDOR = d.RUC_VENDEDOR AND a.VENTA_CODIGO_FACTURA = d.CODIGO_FACTURA
+                    AND LOCATE(CAST(a.ANTICIPO_CODIGO_FACTURA AS BINARY), CAST(d.DESCRIPCION AS BINARY)) > 0)
+            GROUP BY f.RUC_VENDEDOR, f.FECHA_EMISION, f.RUC_CLIENTE, COALESCE(f.TIPO_MONEDA, ''),
+                     COALESCE(p.TIPO_FIBRA, ''), COALESCE(p.TIPO_CALIDAD, '')
+            """;
+
+    // Cada factura tiene una sola fecha, así que los conteos diarios se pueden sumar por mes
+    private static final String RECALCULAR_MENSUAL_SQL = "INSERT INTO AA_RESUMEN_VENTA_MENSUAL (" + COLUMNAS + """
+            )
+            SELECT RUC_VENDEDOR, ?, RUC_CLIENTE, TIPO_MONEDA, TIPO_FIBRA, TIPO_CALIDAD,
+                   SUM(CANTIDAD), SUM(IMPORTE), SUM(LINEAS), SUM(FACTURAS)
+            FROM AA_RESUMEN_VENTA_DIARIO
+            WHERE FECHA BETWEEN ? AND ?
+            GROUP BY RUC_VENDEDOR, RUC_CLIENTE, TIPO_MONEDA, TIPO_FIBRA, TIPO_CALIDAD
+            """;
+
+    private static final String CONSULTA_SQL = "SELECT " + COLUMNAS + """
+            FROM %s
+            WHERE RUC_VENDEDOR = ? AND FECHA BETWEEN ? AND ?
+              AND (? IS NULL OR RUC_CLIENTE = ?)
+              AND (? IS NULL OR TIPO_MONEDA = ?)
+            ORDER BY FECHA, RUC_CLIENTE, TIPO_MONEDA, TIPO_FIBRA, TIPO_CALIDAD
+            LIMIT ?
+            """;
+
+    private static final String CONSULTA_DIARIO_SQL = CONSULTA_SQL.formatted("AA_RESUMEN_VENTA_DIARIO");
+
+    private static final String CONSULTA_MENSUAL_SQL = CONSULTA_SQL.formatted("AA_RESUMEN_VENTA_MENSUAL");
+
+    private final MySQLPool client;
+    private final Metricas metricas;
+    private final EnrutadorLecturas lecturas;
+
+    public ResumenVentaRepository(MySQLPool client, Metricas metricas, EnrutadorLecturas lecturas) {
+        this.client = client;
+        this.metricas = metricas;
+        this.lecturas = lecturas;
+    }
+
+    /**
+     * Suma los incrementos a las tablas diaria y mensual usando la conexión de la transacción en curso.
+     * Las filas deben venir en un orden fijo (por clave) para que dos transacciones no se bloqueen mutuamente.
+     */
+    public Future<Void> acumular(SqlClient sqlClient, List<ResumenVenta> diarios, List<ResumenVenta> mensuales) {
+        if (diarios.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        return metricas.repositorio("ResumenVentaRepository", "acumular", () -> sqlClient
+                .preparedQuery(ACUMULAR_DIARIO_SQL)
+                .executeBatch(toTuples(diarios))
+                .compose(v -> sqlClient.preparedQuery(ACUMULAR_MENSUAL_SQL).executeBatch(toTuples(mensuales)))
+                .mapEmpty());
+    }
+
+    /**
+     * Recalcula un mes completo de ambas tablas en una transacción
+     * @return filas diarias generadas
+     */
+    public Future<Long> recalcularMes(LocalDate primerDia) {
+        LocalDate ultimoDia = primerDia.withDayOfMonth(primerDia.lengthOfMonth());
+        return metricas.repositorio("ResumenVentaRepository", "recalcularMes", () -> client.withTransaction(conn ->
+                conn.preparedQuery(BORRAR_DIARIO_SQL).execute(Tuple.of(primerDia, ultimoDia))
+                        .compose(v -> conn.preparedQuery(BORRAR_MENSUAL_SQL).execute(Tuple.of(primerDia, ultimoDia)))
+                        .compose(v -> conn.preparedQuery(RECALCULAR_DIARIO_SQL).execute(Tuple.of(primerDia, ultimoDia)))
+                        .compose(diarias -> conn.preparedQuery(RECALCULAR_MENSUAL_SQL)
+                                .execute(Tuple.of(primerDia, primerDia, ultimoDia))
+                                .map(v -> (long) diarias.rowCount()))));
+    }
+
+    /**
+     * @param mensual true para la tabla mensual; rucCliente y tipoMoneda son filtros opcionales (null = todos)
+     */
+    public Future<List<ResumenVenta>> consultar(boolean mensual, Long rucVendedor, LocalDate desde, LocalDate hasta,
+                                                Long rucCliente, String tipoMoneda, int limite) {
+        Tuple params = Tuple.of(rucVendedor, desde, hasta, rucCliente, rucCliente, tipoMoneda, tipoMoneda, limite);
+        return metricas.repositorio("ResumenVentaRepository", "consultar", () -> lecturas.lectura()
+                .preparedQuery(mensual ? CONSULTA_MENSUAL_SQL : CONSULTA_DIARIO_SQL)
+                .execute(params)
+                .map(rows -> {
+                    List<ResumenVenta> resumenes = new ArrayList<>(rows.size());
+                    for (Row row : rows) {
+                        resumenes.add(mapRowToResumen(row));
+                    }
+                    return resumenes;
+                }));
+    }
+
+    private List<Tuple> toTuples(List<ResumenVenta> resumenes) {
+        List<Tuple> batch = new ArrayList<>(resumenes.size());
+        for (ResumenVenta resumen : resumenes) {
+            batch.add(Tuple.of(
+                    resumen.getRucVendedor(),
+                    resumen.getFecha(),
+                    resumen.getRucCliente(),
+                    resumen.getTipoMoneda(),
+                    resumen.getTipoFibra(),
+                    resumen.getTipoCalidad(),
+                    resumen.getCantidad(),
+                    resumen.getImporte(),
+                    resumen.getLineas(),
+                    resumen.getFacturas()
+            ));
+        }
+        return batch;
+    }
+
+    private ResumenVenta mapRowToResumen(Row row) {
+        return ResumenVenta.builder()
+                .rucVendedor(row.getLong(0))
+                .fecha(row.getLocalDate(1))
+                .rucCliente(row.getLong(2))
+                .tipoMoneda(row.getString(3))
+                .tipoFibra(row.getString(4))
+                .tipoCalidad(row.getString(5))
+                .cantidad(row.getBigDecimal(6))
+                .importe(row.getBigDecimal(7))
+                .lineas(row.getInteger(8))
+                .facturas(row.getInteger(9))
+                .build();
+    }
+}
@@ -0,0 +1,199 @@
+package com.pe.jm.alpaca.repository;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.SaldoAnticipo;
+import io.vertx.core.Future;
+import io.vertx.mysqlclient.MySQLPool;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.Tuple;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saldo por factura de anticipo (DDL en db/saldo_anticipos.sql). Las escrituras van en la
+ * transacción que registra la factura; el consumo solo se aplica si queda saldo (SALDO >= monto),
+ * así MySQL nunca deja un anticipo sobreaplicado aunque la caché de SaldoAnticiposService se equivoque.
+ */
+@Repository
+public class SaldoAnticipoRepository {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO AA_SALDO_ANTICIPO (
+                ANTICIPO_RUC_VENDEDOR, ANTICIPO_CODIGO_FACTURA, MONTO_TOTAL, MONTO_APLICADO, SALDO, APLICACIONES
+            ) VALUES (?, ?, ?, 0, ?, 0)
+            """;
+
+    private static final String CONSUMIR_SQL = """
+            UPDATE AA_SALDO_ANTICIPO
+            SET MONTO_APLICADO = MONTO_APLICADO + ?, SALDO = SALDO - ?, APLICACIONES = APLICACIONES + 1
+            WHERE ANTICIPO_RUC_VENDEDOR = ? AND ANTICIPO_CODIGO_FACTURA = ? AND SALDO >= ?
+            """;
+
+    private static final String COLUMNAS = """
+            ANTICIPO_RUC_VENDEDOR, ANTICIPO_CODIGO_FACTURA, MONTO_TOTAL, MONTO_APLICADO, SALDO, APLICACIONES
+            """;
+
+    private static final String FIND_BY_ANTICIPO_SQL = "SELECT " + COLUMNAS + """
+            FROM AA_SALDO_ANTICIPO
+            WHERE ANTICIPO_RUC_VENDEDOR = ? AND ANTICIPO_CODIGO_FACTURA = ?
+            """;
+
+    private static final String FIND_BY_VENDEDOR_SQL = "SELECT " + COLUMNAS + """
+            FROM AA_SALDO_ANTICIPO
+            WHERE ANTICIPO_RUC_VENDEDOR = ? AND (? = FALSE OR SALDO > 0)
+            ORDER BY ANTICIPO_CODIGO_FACTURA
+            LIMIT ?
+            """;
+
+    private static final String BORRAR_SQL = "DELETE FROM AA_SALDO_ANTICIPO";
+
+    // Misma regla que el registro: solo anticipos y ventas no anuladas
+    private static final String RECONSTRUIR_SQL = "INSERT INTO AA_SALDO_ANTICIPO (" + COLUMNAS + """
+            )
+            SELECT f.RUC_VENDEDOR, f.CODIGO_FACTURA, f.IMPORTE_TOTAL, COALESCE(a.APLICADO, 0),
+                   f.IMPORTE_TOTAL - COALESCE(a.APLICADO, 0), COALESCE(a.APLICACIONES, 0)
+            FROM AA_FACTURA f
+            LEFT JOIN (
+                SELECT aa.ANTICIPO_RUC_VENDEDOR, aa.ANTICIPO_CODIGO_FACTURA,
+                       SUM(ABS(aa.MONTO_APLICADO)) AS APLICADO, COUNT(*) AS APLICACIONES
+                FROM AA_ANTICIPO_APLICADO aa
+                JOIN AA_FACTURA v ON v.RUC_VENDEDOR = aa.VENTA_RUC_VENDEDOR
+                                 AND v.CODIGO_FACTURA = aa.VENTA_CODIGO_FACTURA
+                WHERE v.ANULACION IS NULL OR v.ANULACION <> '1'
+                GROUP BY aa.ANTICIPO_RUC_VENDEDOR, aa.ANTICIPO_CODIGO_FACTURA
+            ) a ON a.ANTICIPO_RUC_VENDEDOR = f.RUC_VENDEDOR AND a.ANTICIPO_CODIGO_FACTURA = f.CODIGO_FACTURA
+            WHERE f.TIPO = 'ANTICIPO' AND (f.ANULACION IS NULL OR f.ANULACION <> '1')
+            """;
+
+    private final MySQLPool client;
+    private final Metricas metricas;
+    private final EnrutadorLecturas lecturas;
+
+    public SaldoAnticipoRepository(MySQLPool client, Metricas metricas, EnrutadorLecturas lecturas) {
+        this.client = client;
+        this.metricas = metricas;
+        this.lecturas = lecturas;
+    }
+
+    /**
+     * Abre el saldo de los anticipos con su monto total, usando la conexión de la transacción en curso
+     */
+    public Future<Long> insertBatch(SqlClient sqlClient, List<SaldoAnticipo> saldos) {
+        if (saldos.isEmpty()) {
+            return Future.succeededFuture(0L);
+        }
+
+        List<Tuple> batch = new ArrayList<>(saldos.size());
+        for (SaldoAnticipo saldo : saldos) {
+            batch.add(Tuple.of(saldo.getRucVendedor(), saldo.getCodigoFactura(), saldo.getMontoTotal(),
+                    saldo.getMontoTotal()));
+        }
+
+        return metricas.repositorio("SaldoAnticipoRepository", "insertBatch", () -> sqlClient.preparedQuery(INSERT_SQL)
+                .executeBatch(batch)
+                .map(FacturaRepository::contarFilas));
+    }
+
+    /**
+     * Descuenta ABS(montoAplicado) del saldo de cada anticipo, en el orden recibido.
+     * @return los anticipos aplicados que no se descontaron por no existir o no tener saldo suficiente
+     */
+    public Future<List<AnticipoAplicado>> consumirBatch(SqlClient sqlClient, List<AnticipoAplicado> anticipos) {
+        if (anticipos.isEmpty()) {
+            return Future.succeededFuture(List.of());
+        }
+
+        List<Tuple> batch = new ArrayList<>(anticipos.size());
+        for (AnticipoAplicado anticipo : anticipos) {
+            batch.add(Tuple.of(
+                    anticipo.getMontoAplicado().abs(),
+                    anticipo.getMontoAplicado().abs(),
+                    anticipo.getAnticipoRucVendedor(),
+                    anticipo.getAnticipoCodigoFactura(),
+                    anticipo.getMontoAplicado().abs()
+            ));
+        }
+
+        return metricas.repositorio("SaldoAnticipoRepository", "consumirBatch", () -> sqlClient.preparedQuery(CONSUMIR_SQL)
+                .executeBatch(batch)
+                .map(rowSet -> {
+                    // executeBatch devuelve un RowSet por tupla, encadenados con next()
+                    List<AnticipoAplicado> rechazados = new ArrayList<>();
+                    int i = 0;
+                    for (RowSet<Row> actual = rowSet; actual != null; actual = actual.next(), i++) {
+                        if (actual.rowCount() == 0) {
+                            rechazados.add(anticipos.get(i));
+                        }
+                    }
+                    return rechazados;
+                }));
+    }
+
+    /**
+     * Lee el saldo en el primario, para no partir de una réplica atrasada al reservar
+     * @return el saldo, o null si el anticipo no tiene saldo registrado
+     */
+    public Future<SaldoAnticipo> findByAnticipo(Long rucVendedor, String codigoFactura) {
+        return findByAnticipo(client, rucVendedor, codigoFactura);
+    }
+
+    /**
+     * Igual que findByAnticipo pero puede leer de la réplica, para consultas
+     */
+    public Future<SaldoAnticipo> consultar(Long rucVendedor, String codigoFactura) {
+        return findByAnticipo(lecturas.lectura(EnrutadorLecturas.claveFactura(rucVendedor, codigoFactura)),
+                rucVendedor, codigoFactura);
+    }
+
+    private Future<SaldoAnticipo> findByAnticipo(MySQLPool pool, Long rucVendedor, String codigoFactura) {
+        return metricas.repositorio("SaldoAnticipoRepository", "findByAnticipo", () -> pool.preparedQuery(FIND_BY_ANTICIPO_SQL)
+                .execute(Tuple.of(rucVendedor, codigoFactura))
+                .map(rows -> rows.size() == 0 ? null : mapRowToSaldo(rows.iterator().next())));
+    }
+
+    /**
+     * @param soloConSaldo true para omitir los anticipos ya consumidos por completo
+     */
+    public Future<List<SaldoAnticipo>> findByVendedor(Long rucVendedor, boolean soloConSaldo, int limite) {
+        return metricas.repositorio("SaldoAnticipoRepository", "findByVendedor", () -> lecturas.lectura()
+                .preparedQuery(FIND_BY_VENDEDOR_SQL)
+                .execute(Tuple.of(rucVendedor, soloConSaldo, limite))
+                .map(rows -> {
+                    List<SaldoAnticipo> saldos = new ArrayList<>(rows.size());
+                    for (Row row : rows) {
+                        saldos.add(mapRowToSaldo(row));
+                    }
+                    return saldos;
+                }));
+    }
+
+    /**
+     * Recalcula todos los saldos desde AA_FACTURA y AA_ANTICIPO_APLICADO en una transacción
+     * @return anticipos con saldo
+     */
+    public Future<Long> reconstruir() {
+        return metricas.repositorio("SaldoAnticipoRepository", "reconstruir", () -> client.withTransaction(conn ->
+                conn.query(BORRAR_SQL).execute()
+                        .compose(v -> conn.query(RECONSTRUIR_SQL).execute())
+                        .map(rows -> (long) rows.rowCount())));
+    }
+
+    /**
+     * Mapea por posición, en el orden de COLUMNAS
+     */
+    private SaldoAnticipo mapRowToSaldo(Row row) {
+        return SaldoAnticipo.builder()
+                .rucVendedor(row.getLong(0))
+                .codigoFactura(row.getString(1))
+                .montoTotal(row.getBigDecimal(2))
+                .montoAplicado(row.getBigDecimal(3))
+                .saldo(row.getBigDecimal(4))
+                .aplicaciones(row.getInteger(5))
+                .build();
+    }
+}
@@ -0,0 +1,19 @@
+package com.pe.jm.alpaca.repository;
+
+/**
+ * La base de datos está saturada y la solicitud se rechazó sin intentarla; se puede reintentar
+ * pasados reintentarEnSegundos (el controlador responde 429 con Retry-After)
+ */
+public class SobrecargaException extends RuntimeException {
+
+    private final int reintentarEnSegundos;
+
+    public SobrecargaException(int reintentarEnSegundos) {
+        super("Servicio saturado, reintente en " + reintentarEnSegundos + " s");
+        this.reintentarEnSegundos = reintentarEnSegundos;
+    }
+
+    public int getReintentarEnSegundos() {
+        return reintentarEnSegundos;
+    }
+}
@@ -1,28 +1,61 @@
 package com.pe.jm.alpaca.repository;
 
+import com.pe.jm.alpaca.cache.RucCache;
+import com.pe.jm.alpaca.metricas.Metricas;
 import com.pe.jm.alpaca.model.Vendedor;
 import io.vertx.core.Future;
 import io.vertx.mysqlclient.MySQLPool;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.Tuple;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 @Repository
 public class VendedorRepository {
 
+    private static final String FIND_BY_RUC_SQL = """
+            SELECT RUC_VENDEDOR, NOMBRE_VENDEDOR FROM AA_VENDEDOR
+            WHERE RUC_VENDEDOR = ?
+            """;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO AA_VENDEDOR (RUC_VENDEDOR, NOMBRE_VENDEDOR)
+            VALUES (?, ?)
+            """;
+
+    private static final String EXISTS_SQL = """
+            SELECT COUNT(*) FROM AA_VENDEDOR
+            WHERE RUC_VENDEDOR = ?
+            """;
+
+    private static final String RUCS_EXISTENTES_SQL = "SELECT RUC_VENDEDOR FROM AA_VENDEDOR WHERE RUC_VENDEDOR IN ";
+
     private final MySQLPool client;
+    private final Metricas metricas;
+    private final EnrutadorLecturas lecturas;
+    private final RucCache cache;
 
-    public VendedorRepository(MySQLPool client) {
+    public VendedorRepository(MySQLPool client,
+                              Metricas metricas,
+                              EnrutadorLecturas lecturas,
+                              @Value("${cache.ruc.max-size:4096}") int cacheMaxSize,
+                              @Value("${cache.ruc.ttl:600000}") long cacheTtl,
+                              @Value("${cache.ruc.ttl-negativo:30000}") long cacheTtlNegativo) {
         this.client = client;
+        this.metricas = metricas;
+        this.lecturas = lecturas;
+        this.cache = new RucCache(cacheMaxSize, cacheTtl, cacheTtlNegativo);
     }
 
     public Future<Vendedor> findByRuc(Long rucVendedor) {
-        String sql = """
-            SELECT * FROM AA_VENDEDOR
-            WHERE RUC_VENDEDOR = ?
-            """;
-
-        return client.preparedQuery(sql)
+        MySQLPool pool = lecturas.lectura(EnrutadorLecturas.claveVendedor(rucVendedor));
+        return metricas.repositorio("VendedorRepository", "findByRuc", () -> pool.preparedQuery(FIND_BY_RUC_SQL)
                 .execute(Tuple.of(rucVendedor))
                 .map(rows -> {
                     if (rows.size() == 0) {
@@ -30,44 +63,83 @@ public class VendedorRepository {
                     }
                     Row row = rows.iterator().next();
                     return mapRowToVendedor(row);
-                });
+                }));
     }
 
     public Future<Long> insert(Vendedor vendedor) {
-        String sql = """
-            INSERT INTO AA_VENDEDOR (RUC_VENDEDOR, NOMBRE_VENDEDOR)
-            VALUES (?, ?)
-            """;
-
         Tuple params = Tuple.of(
                 vendedor.getRucVendedor(),
                 vendedor.getNombreVendedor()
         );
 
-        return client.preparedQuery(sql)
+        return metricas.repositorio("VendedorRepository", "insert", () -> client.preparedQuery(INSERT_SQL)
                 .execute(params)
-                .map(rowSet -> (long) rowSet.rowCount());
+                .onComplete(ar -> cache.invalidar(vendedor.getRucVendedor()))
+                .onSuccess(rowSet -> lecturas.registrarEscritura(EnrutadorLecturas.claveVendedor(vendedor.getRucVendedor())))
+                .map(rowSet -> (long) rowSet.rowCount()));
     }
 
     public Future<Boolean> existsByRuc(Long rucVendedor) {
-        String sql = """
-            SELECT COUNT(*) as total FROM AA_VENDEDOR
-            WHERE RUC_VENDEDOR = ?
-            """;
+        Boolean enCache = cache.consultar(rucVendedor);
+        if (enCache != null) {
+            return Future.succeededFuture(enCache);
+        }
 
-        return client.preparedQuery(sql)
+        MySQLPool pool = lecturas.lectura(EnrutadorLecturas.claveVendedor(rucVendedor));
+        return metricas.repositorio("VendedorRepository", "existsByRuc", () -> pool.preparedQuery(EXISTS_SQL)
                 .execute(Tuple.of(rucVendedor))
                 .map(rows -> {
                     Row row = rows.iterator().next();
-                    Long count = row.getLong("total");
-                    return count > 0;
-                });
+                    boolean existe = row.getLong(0) > 0;
+                    cache.registrar(rucVendedor, existe);
+                    return existe;
+                }));
+    }
+
+    /**
+     * Devuelve el subconjunto de RUCs que existen; solo consulta con IN (...) los que no están en caché
+     */
+    public Future<Set<Long>> findRucsExistentes(Collection<Long> rucs) {
+        Set<Long> existentes = new HashSet<>();
+        List<Object> pendientes = new ArrayList<>();
+        for (Long ruc : rucs) {
+            Boolean enCache = cache.consultar(ruc);
+            if (enCache == null) {
+                pendientes.add(ruc);
+            } else if (enCache) {
+                existentes.add(ruc);
+            }
+        }
+
+        if (pendientes.isEmpty()) {
+            return Future.succeededFuture(existentes);
+        }
+
+        MySQLPool pool = lecturas.lectura(pendientes.stream()
+                .map(ruc -> EnrutadorLecturas.claveVendedor((Long) ruc))
+                .toList());
+        return metricas.repositorio("VendedorRepository", "findRucsExistentes", () -> pool.preparedQuery(ListaIn.sql(RUCS_EXISTENTES_SQL, pendientes.size()))
+                .execute(ListaIn.parametros(pendientes))
+                .map(rows -> {
+                    Set<Long> encontrados = new HashSet<>();
+                    for (Row row : rows) {
+                        encontrados.add(row.getLong(0));
+                    }
+                    for (Object ruc : pendientes) {
+                        boolean existe = encontrados.contains(ruc);
+                        cache.registrar((Long) ruc, existe);
+                        if (existe) {
+                            existentes.add((Long) ruc);
+                        }
+                    }
+                    return existentes;
+                }));
     }
 
     private Vendedor mapRowToVendedor(Row row) {
         return Vendedor.builder()
-                .rucVendedor(row.getLong("RUC_VENDEDOR"))
-                .nombreVendedor(row.getString("NOMBRE_VENDEDOR"))
+                .rucVendedor(row.getLong(0))
+                .nombreVendedor(row.getString(1))
                 .build();
     }
 }
@@ -0,0 +1,143 @@
+package com.pe.jm.alpaca.service;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Busca números de anticipo dentro de las descripciones de detalle con Aho-Corasick:
+ * se construye una vez por factura y recorre cada descripción en una sola pasada,
+ * sin importar cuántos anticipos haya. Si varios números aparecen en la descripción
+ * gana el más largo (así F001-12 no tapa a F001-123); a igual largo, el que aparece primero.
+ */
+final class BuscadorAnticipos {
+
+    private static final BuscadorAnticipos VACIO = new BuscadorAnticipos(new String[0], new int[128], Map.of(),
+            new int[][]{new int[1]}, new int[]{-1});
+
+    private final String[] numeros;
+    // Índice en el alfabeto de cada carácter de los números (0 = carácter que no aparece en ninguno)
+    private final int[] indiceAscii;
+    private final Map<Character, Integer> indiceOtros;
+    // Autómata completo: transiciones[estado][índice de carácter] -> siguiente estado
+    private final int[][] transiciones;
+    // Número más largo reconocido al llegar a cada estado, o -1
+    private final int[] salida;
+
+    private BuscadorAnticipos(String[] numeros, int[] indiceAscii, Map<Character, Integer> indiceOtros,
+                              int[][] transiciones, int[] salida) {
+        this.numeros = numeros;
+        this.indiceAscii = indiceAscii;
+        this.indiceOtros = indiceOtros;
+        this.transiciones = transiciones;
+        this.salida = salida;
+    }
+
+    static BuscadorAnticipos de(List<String> numerosAnticipos) {
+        String[] numeros = numerosAnticipos.stream()
+                .filter(numero -> numero != null && !numero.isEmpty())
+                .collect(LinkedHashSet<String>::new, LinkedHashSet::add, LinkedHashSet::addAll)
+                .toArray(new String[0]);
+        if (numeros.length == 0) {
+            return VACIO;
+        }
+
+        // Alfabeto compacto con los caracteres presentes en los números
+        int[] indiceAscii = new int[128];
+        Map<Character, Integer> indiceOtros = new HashMap<>();
+        int tamanoAlfabeto = 1;
+        int maxEstados = 1;
+        for (String numero : numeros) {
+            maxEstados += numero.length();
+            for (int i = 0; i < numero.length(); i++) {
+                char c = numero.charAt(i);
+                if (c < 128) {
+                    if (indiceAscii[c] == 0) {
+                        indiceAscii[c] = tamanoAlfabeto++;
+                    }
+                } else if (!indiceOtros.containsKey(c)) {
+                    indiceOtros.put(c, tamanoAlfabeto++);
+                }
+            }
+        }
+
+        // Trie; el estado 0 es la raíz y 0 también significa "sin transición" durante la construcción
+        int[][] transiciones = new int[maxEstados][tamanoAlfabeto];
+        int[] salida = new int[maxEstados];
+        Arrays.fill(salida, -1);
+        int estados = 1;
+        for (int n = 0; n < numeros.length; n++) {
+            String numero = numeros[n];
+            int estado = 0;
+            for (int i = 0; i < numero.length(); i++) {
+                int c = indice(numero.charAt(i), indiceAscii, indiceOtros);
+                if (transiciones[estado][c] == 0) {
+                    transiciones[estado][c] = estados++;
+                }
+                estado = transiciones[estado][c];
+            }
+            salida[estado] = n;
+        }
+
+        // Enlaces de fallo por niveles, completando las transiciones faltantes con las del fallo.
+        // Un número propio del estado es siempre más largo que cualquiera heredado del fallo.
+        int[] fallo = new int[estados];
+        ArrayDeque<Integer> cola = new ArrayDeque<>();
+        for (int c = 1; c < tamanoAlfabeto; c++) {
+            if (transiciones[0][c] != 0) {
+                cola.add(transiciones[0][c]);
+            }
+        }
+        while (!cola.isEmpty()) {
+            int estado = cola.poll();
+            if (salida[estado] < 0) {
+                salida[estado] = salida[fallo[estado]];
+            }
+            for (int c = 1; c < tamanoAlfabeto; c++) {
+                int siguiente = transiciones[estado][c];
+                if (siguiente != 0) {
+                    fallo[siguiente] = transiciones[fallo[estado]][c];
+                    cola.add(siguiente);
+                } else {
+                    transiciones[estado][c] = transiciones[fallo[estado]][c];
+                }
+            }
+        }
+
+        return new BuscadorAnticipos(numeros, indiceAscii, indiceOtros,
+                Arrays.copyOf(transiciones, estados), Arrays.copyOf(salida, estados));
+    }
+
+    /**
+     * @return el número de anticipo más largo contenido en la descripción, o null si no hay ninguno
+     */
+    String buscar(String descripcion) {
+        if (descripcion == null || numeros.length == 0) {
+            return null;
+        }
+
+        int estado = 0;
+        int mejor = -1;
+        int mejorLargo = 0;
+        for (int i = 0; i < descripcion.length(); i++) {
+            estado = transiciones[estado][indice(descripcion.charAt(i), indiceAscii, indiceOtros)];
+            int encontrado = salida[estado];
+            if (encontrado >= 0 && numeros[encontrado].length() > mejorLargo) {
+                mejor = encontrado;
+                mejorLargo = numeros[encontrado].length();
+            }
+        }
+        return mejor < 0 ? null : numeros[mejor];
+    }
+
+    private static int indice(char c, int[] indiceAscii, Map<Character, Integer> indiceOtros) {
+        if (c < 128) {
+            return indiceAscii[c];
+        }
+        Integer indice = indiceOtros.get(c);
+        return indice == null ? 0 : indice;
+    }
+}
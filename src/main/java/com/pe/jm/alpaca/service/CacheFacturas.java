@@ -0,0 +1,76 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.cache.LruCache;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Caché de lectura de facturas completas, incluidas las consultas sin resultado.
+ * Se invalida al registrar la factura; una lectura que empezó antes de una invalidación
+ * de su clave no guarda su resultado, para no dejar en caché un estado anterior al registro.
+ * Las versiones son por franja de claves: un registro solo descarta las lecturas en curso
+ * de su franja, no las de todas las facturas.
+ */
+@Component
+public class CacheFacturas {
+
+    private static final int FRANJAS = 1024;
+
+    private final LruCache<String, Optional<FacturaCompleta>> facturas;
+    // Versión de cada franja; solo se modifica con el candado de la franja
+    private final long[] versiones = new long[FRANJAS];
+    private final Object[] candados = new Object[FRANJAS];
+
+    public CacheFacturas(@Value("${facturas.consulta.cache.max-size:10000}") int maxSize,
+                         @Value("${facturas.consulta.cache.ttl:60000}") long ttl) {
+        this.facturas = new LruCache<>(maxSize, ttl);
+        for (int i = 0; i < FRANJAS; i++) {
+            candados[i] = new Object();
+        }
+    }
+
+    public static String clave(Long rucVendedor, String codigoFactura) {
+        return rucVendedor + "|" + codigoFactura;
+    }
+
+    /**
+     * @return la factura (o Optional.empty() si se sabe que no existe), o null si no está en caché
+     */
+    public Optional<FacturaCompleta> get(String clave) {
+        return facturas.get(clave);
+    }
+
+    /**
+     * Versión actual de la clave; se debe leer antes de consultar la base de datos y pasarla a guardar
+     */
+    public long version(String clave) {
+        int franja = franja(clave);
+        synchronized (candados[franja]) {
+            return versiones[franja];
+        }
+    }
+
+    public void guardar(String clave, Optional<FacturaCompleta> factura, long versionLeida) {
+        int franja = franja(clave);
+        synchronized (candados[franja]) {
+            if (versionLeida == versiones[franja]) {
+                facturas.put(clave, factura);
+            }
+        }
+    }
+
+    public void invalidar(String clave) {
+        int franja = franja(clave);
+        synchronized (candados[franja]) {
+            versiones[franja]++;
+            facturas.invalidar(clave);
+        }
+    }
+
+    private static int franja(String clave) {
+        return Math.floorMod(clave.hashCode(), FRANJAS);
+    }
+}
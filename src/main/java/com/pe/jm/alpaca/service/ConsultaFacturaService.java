@@ -0,0 +1,131 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.DetalleFactura;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import com.pe.jm.alpaca.repository.AnticipoAplicadoRepository;
+import com.pe.jm.alpaca.repository.DetalleFacturaRepository;
+import com.pe.jm.alpaca.repository.FacturaRepository;
+import com.pe.jm.alpaca.repository.FlujoFilas;
+import io.vertx.core.Future;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+public class ConsultaFacturaService {
+
+    private final FacturaRepository facturaRepository;
+    private final DetalleFacturaRepository detalleFacturaRepository;
+    private final AnticipoAplicadoRepository anticipoAplicadoRepository;
+    private final CacheFacturas cacheFacturas;
+    private final Metricas metricas;
+    private final ObjectMapper objectMapper;
+    private final int limitePorDefecto;
+    private final int limiteMaximo;
+    private final int tamanoFetch;
+
+    public ConsultaFacturaService(FacturaRepository facturaRepository,
+                                  DetalleFacturaRepository detalleFacturaRepository,
+                                  AnticipoAplicadoRepository anticipoAplicadoRepository,
+                                  CacheFacturas cacheFacturas,
+                                  Metricas metricas,
+                                  ObjectMapper objectMapper,
+                                  @Value("${facturas.listado.limite:1000}") int limitePorDefecto,
+                                  @Value("${facturas.listado.limite-maximo:100000}") int limiteMaximo,
+                                  @Value("${facturas.listado.fetch:500}") int tamanoFetch) {
+        this.facturaRepository = facturaRepository;
+        this.detalleFacturaRepository = detalleFacturaRepository;
+        this.anticipoAplicadoRepository = anticipoAplicadoRepository;
+        this.cacheFacturas = cacheFacturas;
+        this.metricas = metricas;
+        this.objectMapper = objectMapper;
+        this.limitePorDefecto = limitePorDefecto;
+        this.limiteMaximo = limiteMaximo;
+        this.tamanoFetch = tamanoFetch;
+    }
+
+    /**
+     * Obtiene la cabecera con sus detalles y anticipos aplicados. Las tres consultas se
+     * lanzan a la vez (cada una en su conexión del pool) y el resultado se guarda en caché.
+     * @return la factura, o null si no existe
+     */
+    public CompletableFuture<FacturaCompleta> obtenerFactura(Long rucVendedor, String codigoFactura) {
+        String clave = CacheFacturas.clave(rucVendedor, codigoFactura);
+        Optional<FacturaCompleta> enCache = cacheFacturas.get(clave);
+        if (enCache != null) {
+            return CompletableFuture.completedFuture(enCache.orElse(null));
+        }
+
+        long version = cacheFacturas.version(clave);
+        Future<Factura> facturaFuture = facturaRepository.findByRucVendedorAndCodigoFactura(rucVendedor, codigoFactura);
+        Future<List<DetalleFactura>> detallesFuture =
+                detalleFacturaRepository.findByRucVendedorAndCodigoFactura(rucVendedor, codigoFactura);
+        Future<List<AnticipoAplicado>> anticiposFuture = anticipoAplicadoRepository.findByVenta(rucVendedor, codigoFactura);
+
+        return metricas.etapa("consulta", () -> Future.all(facturaFuture, detallesFuture, anticiposFuture))
+                .map(v -> {
+                    Optional<FacturaCompleta> factura = Optional.ofNullable(facturaFuture.result())
+                            .map(cabecera -> FacturaCompleta.builder()
+                                    .factura(cabecera)
+                                    .detalles(detallesFuture.result())
+                                    .anticipos(anticiposFuture.result())
+                                    .build());
+                    cacheFacturas.guardar(clave, factura, version);
+                    return factura.orElse(null);
+                })
+                .toCompletionStage()
+                .toCompletableFuture();
+    }
+
+    /**
+     * Escribe en la salida, a medida que llegan del cursor, las facturas del vendedor entre desde y hasta:
+     * {"facturas": [...], "siguiente": {"despuesDeFecha": ..., "despuesDeCodigo": ...}}
+     * "siguiente" es el cursor para pedir la página que sigue, o null si esta fue la última.
+     * Si la consulta falla antes de la primera fila no se escribe nada y se lanza la excepción.
+     */
+    public void listarFacturas(Long rucVendedor, LocalDate desde, LocalDate hasta,
+                               LocalDate despuesDeFecha, String despuesDeCodigo, Integer limite,
+                               OutputStream salida) throws InterruptedException {
+        int filasPagina = limite == null ? limitePorDefecto : Math.min(limite, limiteMaximo);
+
+        try (FlujoFilas<Factura> flujo = facturaRepository.listarPorVendedorYFechas(
+                rucVendedor, desde, hasta, despuesDeFecha, despuesDeCodigo, filasPagina, tamanoFetch)) {
+            Factura factura = flujo.siguiente();
+
+            JsonGenerator generador = objectMapper.createGenerator(salida);
+            generador.writeStartObject();
+            generador.writeName("facturas");
+            generador.writeStartArray();
+            Factura ultima = null;
+            int filas = 0;
+            while (factura != null) {
+                generador.writePOJO(factura);
+                ultima = factura;
+                filas++;
+                factura = flujo.siguiente();
+            }
+            generador.writeEndArray();
+            generador.writeName("siguiente");
+            if (filas == filasPagina) {
+                generador.writePOJO(new Cursor(ultima.getFechaEmision(), ultima.getCodigoFactura()));
+            } else {
+                generador.writeNull();
+            }
+            generador.writeEndObject();
+            generador.flush();
+        }
+    }
+
+    private record Cursor(LocalDate despuesDeFecha, String despuesDeCodigo) {
+    }
+}
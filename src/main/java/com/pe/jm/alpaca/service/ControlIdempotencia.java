@@ -0,0 +1,93 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.cache.LruCache;
+import com.pe.jm.alpaca.dto.FacturaResponse;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Evita registrar dos veces la misma factura cuando n8n reintenta.
+ * Un reintento que llega mientras la factura sigue en proceso se une al mismo
+ * Future; uno que llega después recibe la respuesta guardada.
+ * Solo se guardan las respuestas exitosas, así un error transitorio se puede reintentar.
+ * La respuesta guardada no lleva validaciones: dependen del ?validacion de cada petición y el
+ * reintento no vuelve a evaluar las reglas (quien se une a un registro en curso recibe las de ese registro).
+ */
+@Component
+public class ControlIdempotencia {
+
+    private final ConcurrentHashMap<String, Future<FacturaResponse>> enCurso = new ConcurrentHashMap<>();
+    private final LruCache<String, FacturaResponse> recientes;
+
+    public ControlIdempotencia(@Value("${facturas.idempotencia.max-size:10000}") int maxSize,
+                               @Value("${facturas.idempotencia.ttl:3600000}") long ttl) {
+        this.recientes = new LruCache<>(maxSize, ttl);
+    }
+
+    public static String clave(Long rucVendedor, String codigoFactura) {
+        return rucVendedor + "|" + codigoFactura;
+    }
+
+    public Future<FacturaResponse> ejecutar(String clave, Supplier<Future<FacturaResponse>> registro) {
+        FacturaResponse previa = recientes.get(clave);
+        if (previa != null) {
+            return Future.succeededFuture(previa);
+        }
+
+        Promise<FacturaResponse> nuevo = Promise.promise();
+        Future<FacturaResponse> existente = enCurso.putIfAbsent(clave, nuevo.future());
+        if (existente != null) {
+            return existente;
+        }
+
+        // Otro hilo pudo terminar entre la consulta a recientes y el putIfAbsent
+        previa = recientes.get(clave);
+        if (previa != null) {
+            enCurso.remove(clave, nuevo.future());
+            nuevo.complete(previa);
+            return nuevo.future();
+        }
+
+        Future<FacturaResponse> resultado;
+        try {
+            resultado = registro.get();
+        } catch (RuntimeException e) {
+            resultado = Future.failedFuture(e);
+        }
+
+        resultado.onComplete(ar -> {
+            if (ar.succeeded() && ar.result() != null && ar.result().isSuccess()) {
+                recientes.put(clave, sinValidaciones(ar.result()));
+            }
+            enCurso.remove(clave, nuevo.future());
+            nuevo.handle(ar);
+        });
+        return nuevo.future();
+    }
+
+    private static FacturaResponse sinValidaciones(FacturaResponse respuesta) {
+        return FacturaResponse.builder()
+                .success(respuesta.isSuccess())
+                .message(respuesta.getMessage())
+                .codigoFactura(respuesta.getCodigoFactura())
+                .rucVendedor(respuesta.getRucVendedor())
+                .errores(respuesta.getErrores())
+                .build();
+    }
+
+    /**
+     * Versión bloqueante de ejecutar, para el modo de hilos virtuales
+     * @throws java.util.concurrent.CompletionException con la causa si el registro falla
+     */
+    public FacturaResponse ejecutarBloqueante(String clave, Supplier<FacturaResponse> registro) {
+        return ejecutar(clave, () -> Future.succeededFuture(registro.get()))
+                .toCompletionStage()
+                .toCompletableFuture()
+                .join();
+    }
+}
@@ -0,0 +1,290 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.cache.LruCache;
+import com.pe.jm.alpaca.dto.FacturaRequest;
+import com.pe.jm.alpaca.dto.FacturaResponse;
+import com.pe.jm.alpaca.dto.TicketResponse;
+import com.pe.jm.alpaca.journal.JournalFacturas;
+import com.pe.jm.alpaca.repository.SobrecargaException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Registro diferido (write-behind): la factura se valida, se guarda en el journal local
+ * y se responde con un ticket; un hilo de fondo vacía el journal hacia MySQL por lotes
+ * usando procesarFacturas. El offset solo avanza cuando cada factura del lote quedó registrada
+ * o rechazada por su contenido: ante errores transitorios (por ejemplo, MySQL caído) se reintentan
+ * las que faltan sin límite, y al apagar la aplicación el lote queda en el journal y se retoma en
+ * el siguiente arranque (las que ya se habían registrado cuentan como REGISTRADA). Un error desconocido
+ * se reintenta solo max-intentos veces, para que una factura no detenga a las que vienen detrás.
+ */
+@Service
+@ConditionalOnProperty(name = "facturas.journal.enabled", havingValue = "true")
+public class EscrituraDiferidaService {
+
+    private static final Logger log = LoggerFactory.getLogger(EscrituraDiferidaService.class);
+    private static final long PAUSA_REINTENTO_MS = 1000;
+
+    private final FacturaService facturaService;
+    private final ObjectMapper objectMapper;
+    private final JournalFacturas journal;
+    private final LruCache<String, TicketResponse> tickets;
+    private final int tamanoLote;
+    private final long esperaMaximaMs;
+    private final int maxIntentos;
+    private final Thread drenador;
+
+    private volatile boolean activo = true;
+
+    public EscrituraDiferidaService(FacturaService facturaService,
+                                    ObjectMapper objectMapper,
+                                    @Value("${facturas.journal.directorio:journal}") String directorio,
+                                    @Value("${facturas.journal.lote.tamano:500}") int tamanoLote,
+                                    @Value("${facturas.journal.grupo-fsync:256}") int grupoFsync,
+                                    @Value("${facturas.journal.max-pendientes:10000}") int maxPendientes,
+                                    @Value("${facturas.journal.max-bytes:67108864}") long maxBytes,
+                                    @Value("${facturas.journal.espera-maxima-ms:30000}") long esperaMaximaMs,
+                                    @Value("${facturas.journal.max-intentos:5}") int maxIntentos,
+                                    @Value("${facturas.journal.tickets.max-size:100000}") int ticketsMaxSize,
+                                    @Value("${facturas.journal.tickets.ttl:86400000}") long ticketsTtl) throws IOException {
+        this.facturaService = facturaService;
+        this.objectMapper = objectMapper;
+        this.journal = new JournalFacturas(Path.of(directorio), grupoFsync, maxPendientes, maxBytes);
+        this.tickets = new LruCache<>(ticketsMaxSize, ticketsTtl);
+        this.tamanoLote = tamanoLote;
+        this.esperaMaximaMs = esperaMaximaMs;
+        this.maxIntentos = maxIntentos;
+        this.drenador = new Thread(this::drenar, "journal-facturas-drenador");
+        this.drenador.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        drenador.start();
+    }
+
+    @PreDestroy
+    public void detener() throws IOException, InterruptedException {
+        activo = false;
+        drenador.join(10_000);
+        journal.close();
+    }
+
+    /**
+     * Valida la factura y, si es válida, la guarda en el journal junto con el modo de validación,
+     * para que el registro de fondo aplique las mismas reglas de totales.
+     * El future termina cuando el registro ya es durable en disco.
+     * @param modo validación de totales pedida (null = facturas.validacion.modo)
+     */
+    public CompletableFuture<TicketResponse> aceptar(FacturaRequest request, ModoValidacion modo) {
+        return facturaService.validarSolicitud(request, modo).thenCompose(errores -> {
+            if (!errores.isEmpty()) {
+                return CompletableFuture.completedFuture(TicketResponse.builder()
+                        .estado("RECHAZADA")
+                        .message("Factura rechazada: " + String.join("; ", errores))
+                        .errores(errores)
+                        .build());
+            }
+
+            String ticket = UUID.randomUUID().toString();
+            TicketResponse pendiente = ticket(ticket, "PENDIENTE", "Factura aceptada, pendiente de registro", request);
+            tickets.put(ticket, pendiente);
+
+            byte[] registro = objectMapper.writeValueAsBytes(new RegistroJournal(ticket, request, modo));
+            return journal.agregar(registro).handle((v, error) -> {
+                if (error == null) {
+                    return pendiente;
+                }
+                TicketResponse fallido = ticket(ticket, "ERROR", "No se pudo guardar la factura: " + error.getMessage(), request);
+                tickets.put(ticket, fallido);
+                return fallido;
+            });
+        });
+    }
+
+    /**
+     * @return el estado del ticket, o null si no se conoce (expirado o de antes de un reinicio)
+     */
+    public TicketResponse consultar(String ticket) {
+        return tickets.get(ticket);
+    }
+
+    private void drenar() {
+        while (activo) {
+            try {
+                if (!journal.esperarRegistros(PAUSA_REINTENTO_MS)) {
+                    continue;
+                }
+                JournalFacturas.Lectura lectura = journal.leer(tamanoLote);
+                List<RegistroJournal> registros = new ArrayList<>(lectura.registros().size());
+                for (byte[] bytes : lectura.registros()) {
+                    try {
+                        registros.add(objectMapper.readValue(bytes, RegistroJournal.class));
+                    } catch (RuntimeException e) {
+                        log.error("Registro ilegible en el journal de facturas, se descarta", e);
+                    }
+                }
+                if (registrarConReintentos(registros)) {
+                    journal.confirmar(lectura.offsetSiguiente());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.error("Error al vaciar el journal de facturas", e);
+                dormir(PAUSA_REINTENTO_MS);
+            }
+        }
+    }
+
+    /**
+     * Registra el lote hasta resolver cada factura. Las registradas, o que ya estaban registradas
+     * (por ejemplo, al reprocesar el journal tras una caída), quedan REGISTRADA; las rechazadas por
+     * su contenido quedan ERROR. Las que fallan por un error transitorio (conexión, timeout, bloqueo)
+     * se reintentan solas, con espera exponencial y sin límite de intentos; las que fallan por otro
+     * error, hasta maxIntentos veces, y luego quedan ERROR. Si el limitador no admite el lote, se reintenta entero.
+     * @return true si se resolvió todo el lote y se puede avanzar el offset; false si la aplicación se detiene antes
+     */
+    private boolean registrarConReintentos(List<RegistroJournal> registros) throws InterruptedException {
+        List<RegistroJournal> pendientes = registros;
+        Map<String, Integer> fallosDesconocidos = new HashMap<>();
+        for (int intento = 1; !pendientes.isEmpty(); intento++) {
+            if (intento > 1) {
+                if (!activo) {
+                    return false;
+                }
+                Thread.sleep(espera(intento - 1));
+            }
+
+            List<FacturaResponse> respuestas;
+            try {
+                respuestas = procesar(pendientes);
+            } catch (CompletionException e) {
+                // El limitador no admitió el lote: no se escribió nada, se reintenta todo tras la espera
+                if (!(e.getCause() instanceof SobrecargaException)) {
+                    throw e;
+                }
+                log.warn("{} facturas del journal sin registrar por sobrecarga (intento {})", pendientes.size(), intento);
+                continue;
+            }
+
+            List<RegistroJournal> fallidos = new ArrayList<>(0);
+            String ultimoError = null;
+            for (int i = 0; i < pendientes.size(); i++) {
+                FacturaResponse respuesta = respuestas.get(i);
+                RegistroJournal registro = pendientes.get(i);
+                if (respuesta.isSuccess()) {
+                    tickets.put(registro.ticket(), ticket(registro.ticket(), "REGISTRADA", respuesta.getMessage(), registro.factura()));
+                    continue;
+                }
+                Boolean registrada = estaRegistrada(registro.factura());
+                if (Boolean.TRUE.equals(registrada)) {
+                    tickets.put(registro.ticket(), ticket(registro.ticket(), "REGISTRADA",
+                            "La factura ya estaba registrada", registro.factura()));
+                } else if (registrada != null && respuesta.getErrores() != null) {
+                    tickets.put(registro.ticket(), ticket(registro.ticket(), "ERROR", respuesta.getMessage(), registro.factura()));
+                } else if (registrada != null && !respuesta.isTransitorio()
+                        && fallosDesconocidos.merge(registro.ticket(), 1, Integer::sum) >= maxIntentos) {
+                    log.error("Factura {} del journal descartada tras {} intentos: {}",
+                            registro.factura().getFactura().getSerieNumero(), maxIntentos, respuesta.getMessage());
+                    tickets.put(registro.ticket(), ticket(registro.ticket(), "ERROR",
+                            respuesta.getMessage() + " (sin registrar tras " + maxIntentos + " intentos)", registro.factura()));
+                } else {
+                    fallidos.add(registro);
+                    ultimoError = respuesta.getMessage();
+                }
+            }
+            if (!fallidos.isEmpty()) {
+                log.warn("{} facturas del journal sin registrar por un error transitorio (intento {}): {}",
+                        fallidos.size(), intento, ultimoError);
+            }
+            pendientes = fallidos;
+        }
+        return true;
+    }
+
+    /**
+     * Registra los registros con procesarFacturas, un llamado por cada modo de validación
+     * @return una respuesta por registro, en el mismo orden
+     */
+    private List<FacturaResponse> procesar(List<RegistroJournal> registros) {
+        Map<ModoValidacion, List<Integer>> porModo = new LinkedHashMap<>();
+        for (int i = 0; i < registros.size(); i++) {
+            porModo.computeIfAbsent(registros.get(i).modo(), modo -> new ArrayList<>()).add(i);
+        }
+
+        FacturaResponse[] respuestas = new FacturaResponse[registros.size()];
+        for (Map.Entry<ModoValidacion, List<Integer>> grupo : porModo.entrySet()) {
+            List<FacturaRequest> facturas = new ArrayList<>(grupo.getValue().size());
+            for (int indice : grupo.getValue()) {
+                facturas.add(registros.get(indice).factura());
+            }
+            List<FacturaResponse> resultado = facturaService.procesarFacturas(facturas, grupo.getKey()).join();
+            for (int i = 0; i < resultado.size(); i++) {
+                respuestas[grupo.getValue().get(i)] = resultado.get(i);
+            }
+        }
+        return Arrays.asList(respuestas);
+    }
+
+    /**
+     * @return null si no se pudo consultar (el error se trata como transitorio)
+     */
+    private Boolean estaRegistrada(FacturaRequest request) {
+        FacturaRequest.FacturaData facturaData = request.getFactura();
+        try {
+            return facturaService.estaRegistrada(Long.parseLong(facturaData.getRucEmisor()),
+                    facturaData.getSerieNumero()).join();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private long espera(int intento) {
+        return Math.min(PAUSA_REINTENTO_MS << Math.min(intento - 1, 10), esperaMaximaMs);
+    }
+
+    private TicketResponse ticket(String ticket, String estado, String mensaje, FacturaRequest request) {
+        FacturaRequest.FacturaData facturaData = request.getFactura();
+        return TicketResponse.builder()
+                .ticket(ticket)
+                .estado(estado)
+                .message(mensaje)
+                .codigoFactura(facturaData.getSerieNumero())
+                .rucVendedor(Long.parseLong(facturaData.getRucEmisor()))
+                .build();
+    }
+
+    private void dormir(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param modo validación de totales pedida al aceptar la factura; null en registros de versiones
+     *             anteriores, que se registran con facturas.validacion.modo
+     */
+    record RegistroJournal(String ticket, FacturaRequest factura, ModoValidacion modo) {
+    }
+}
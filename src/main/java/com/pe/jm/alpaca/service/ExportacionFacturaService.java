@@ -0,0 +1,134 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.repository.FacturaRepository;
+import com.pe.jm.alpaca.repository.FlujoFilas;
+import io.vertx.sqlclient.Row;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Exportación CSV de facturas con sus detalles (una línea por detalle), compatible con Excel:
+ * UTF-8 con BOM y campos entre comillas cuando hace falta. Las filas pasan del cursor a la
+ * salida sin crear objetos intermedios y la salida se envía por bloques de filas.
+ */
+@Service
+public class ExportacionFacturaService {
+
+    private static final char BOM = '\uFEFF';
+    private static final int BUFFER = 64 * 1024;
+
+    private final FacturaRepository facturaRepository;
+    private final char separador;
+    private final int tamanoFetch;
+    private final int filasPorEnvio;
+
+    public ExportacionFacturaService(FacturaRepository facturaRepository,
+                                     @Value("${facturas.exportacion.separador:,}") char separador,
+                                     @Value("${facturas.exportacion.fetch:1000}") int tamanoFetch,
+                                     @Value("${facturas.exportacion.filas-por-envio:2000}") int filasPorEnvio) {
+        this.facturaRepository = facturaRepository;
+        this.separador = separador;
+        this.tamanoFetch = tamanoFetch;
+        this.filasPorEnvio = filasPorEnvio;
+    }
+
+    /**
+     * Escribe el CSV en la salida. Si la consulta falla antes de la primera fila no se escribe nada
+     * y se lanza la excepción, para poder responder con un error.
+     */
+    public void exportarCsv(LocalDate desde, LocalDate hasta, Long rucVendedor, OutputStream salida)
+            throws IOException, InterruptedException {
+        try (FlujoFilas<Row> flujo = facturaRepository.exportarConDetalles(desde, hasta, rucVendedor, tamanoFetch)) {
+            Row row = flujo.siguiente();
+
+            Writer writer = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8), BUFFER);
+            writer.write(BOM);
+            escribirCabecera(writer, FacturaRepository.COLUMNAS_EXPORTACION);
+
+            int filas = 0;
+            while (row != null) {
+                escribirFila(writer, row);
+                if (++filas % filasPorEnvio == 0) {
+                    writer.flush();
+                }
+                row = flujo.siguiente();
+            }
+            writer.flush();
+        }
+    }
+
+    private void escribirCabecera(Writer writer, List<String> columnas) throws IOException {
+        for (int i = 0; i < columnas.size(); i++) {
+            if (i > 0) {
+                writer.write(separador);
+            }
+            writer.write(columnas.get(i));
+        }
+        writer.write("\r\n");
+    }
+
+    private void escribirFila(Writer writer, Row row) throws IOException {
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0) {
+                writer.write(separador);
+            }
+            Object valor = row.getValue(i);
+            if (valor == null) {
+                continue;
+            }
+            if (valor instanceof String texto) {
+                escribirTexto(writer, texto);
+            } else if (valor instanceof BigDecimal numero) {
+                writer.write(numero.toPlainString());
+            } else {
+                // Números enteros y fechas (LocalDate se escribe como yyyy-MM-dd)
+                writer.write(valor.toString());
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Escribe un campo de texto entre comillas si contiene el separador, comillas o saltos de línea.
+     * Un texto que empieza con =, +, - o @ se antepone con ' para que Excel no lo evalúe como fórmula.
+     */
+    private void escribirTexto(Writer writer, String texto) throws IOException {
+        boolean comillas = false;
+        for (int i = 0; i < texto.length() && !comillas; i++) {
+            char c = texto.charAt(i);
+            comillas = c == separador || c == '"' || c == '\n' || c == '\r';
+        }
+        boolean formula = !texto.isEmpty() && "=+-@".indexOf(texto.charAt(0)) >= 0;
+
+        if (!comillas && !formula) {
+            writer.write(texto);
+            return;
+        }
+        if (comillas) {
+            writer.write('"');
+        }
+        if (formula) {
+            writer.write('\'');
+        }
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        if (comillas) {
+            writer.write('"');
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.dto.FacturaRequest;
+import com.pe.jm.alpaca.dto.FacturaResponse;
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import com.pe.jm.alpaca.repository.AccesoBloqueante;
+import com.pe.jm.alpaca.repository.LimitadorAdaptativo;
+import com.pe.jm.alpaca.repository.SobrecargaException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.pe.jm.alpaca.repository.AccesoBloqueante.esperar;
+
+/**
+ * Registro de facturas en estilo secuencial para el modo de ejecución "virtual"
+ * (facturas.ejecucion.modo=virtual): cada paso espera a MySQL bloqueando un hilo virtual,
+ * que es barato, en lugar de encadenar Futures. Mismo contrato e idempotencia que
+ * FacturaService.procesarFactura.
+ */
+@Service
+public class FacturaBloqueanteService {
+
+    private final FacturaService facturaService;
+    private final AccesoBloqueante accesoBloqueante;
+    private final ControlIdempotencia controlIdempotencia;
+    private final Metricas metricas;
+    private final LimitadorAdaptativo limitador;
+    private final ExecutorService hilosVirtuales = Executors.newVirtualThreadPerTaskExecutor();
+
+    public FacturaBloqueanteService(FacturaService facturaService,
+                                    AccesoBloqueante accesoBloqueante,
+                                    ControlIdempotencia controlIdempotencia,
+                                    Metricas metricas,
+                                    LimitadorAdaptativo limitador) {
+        this.facturaService = facturaService;
+        this.accesoBloqueante = accesoBloqueante;
+        this.controlIdempotencia = controlIdempotencia;
+        this.metricas = metricas;
+        this.limitador = limitador;
+    }
+
+    @PreDestroy
+    public void detener() {
+        hilosVirtuales.shutdown();
+    }
+
+    /**
+     * Registra en el hilo actual si ya es virtual (spring.threads.virtual.enabled=true);
+     * si no, en un hilo virtual nuevo, para no bloquear un hilo de Tomcat.
+     */
+    public CompletableFuture<FacturaResponse> procesarFactura(FacturaRequest request) {
+        if (Thread.currentThread().isVirtual()) {
+            try {
+                return CompletableFuture.completedFuture(registrarFactura(request));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> registrarFactura(request), hilosVirtuales);
+    }
+
+    /**
+     * Igual que procesarFactura, para una factura ya armada al leer el JSON (FacturaCompletaDeserializer)
+     * @param modo validación de totales pedida (null = facturas.validacion.modo)
+     */
+    public CompletableFuture<FacturaResponse> procesarFactura(FacturaCompleta completa, ModoValidacion modo) {
+        if (Thread.currentThread().isVirtual()) {
+            try {
+                return CompletableFuture.completedFuture(registrarFactura(completa, modo));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> registrarFactura(completa, modo), hilosVirtuales);
+    }
+
+    /**
+     * Registra la factura de forma idempotente por (rucEmisor, serieNumero), bloqueando el hilo actual
+     * @throws SobrecargaException (posiblemente envuelta en CompletionException) si MySQL está saturado
+     */
+    public FacturaResponse registrarFactura(FacturaRequest request) {
+        FacturaRequest.FacturaData facturaData = request.getFactura();
+        if (facturaData == null || facturaData.getRucEmisor() == null || facturaData.getSerieNumero() == null) {
+            return registrar(request);
+        }
+
+        String clave = ControlIdempotencia.clave(
+            Long.parseLong(facturaData.getRucEmisor()), facturaData.getSerieNumero());
+        return controlIdempotencia.ejecutarBloqueante(clave, () -> registrar(request));
+    }
+
+    /**
+     * Igual que registrarFactura, para una factura ya armada al leer el JSON
+     * @throws SobrecargaException (posiblemente envuelta en CompletionException) si MySQL está saturado
+     */
+    public FacturaResponse registrarFactura(FacturaCompleta completa, ModoValidacion modo) {
+        facturaService.asignarProductos(completa);
+        String clave = ControlIdempotencia.clave(
+            completa.getFactura().getRucVendedor(), completa.getFactura().getCodigoFactura());
+        return controlIdempotencia.ejecutarBloqueante(clave, () -> registrarValidada(completa, modo));
+    }
+
+    private FacturaResponse registrar(FacturaRequest request) {
+        FacturaCompleta completa;
+        try {
+            completa = metricas.etapaSincrona("conversion",
+                    () -> facturaService.prepararFactura(request.getFactura()));
+        } catch (RuntimeException e) {
+            return facturaService.respuestaError("Error al procesar factura: " + e.getMessage());
+        }
+        return registrarValidada(completa, null);
+    }
+
+    /**
+     * Evalúa las reglas de totales antes de pedir admisión: en modo STRICT una factura inconsistente
+     * se rechaza sin ocupar MySQL
+     */
+    private FacturaResponse registrarValidada(FacturaCompleta completa, ModoValidacion modo) {
+        ValidadorFactura.Validacion validacion = facturaService.validarReglas(completa, modo);
+        if (validacion.rechaza()) {
+            return facturaService.conValidaciones(facturaService.respuestaErrores(validacion.errores()), validacion);
+        }
+        return facturaService.conValidaciones(limitador.admitirBloqueante(() -> registrar(completa)), validacion);
+    }
+
+    /**
+     * Los mismos pasos de FacturaService.registrarFactura, esperando cada uno en lugar de encadenarlos
+     */
+    private FacturaResponse registrar(FacturaCompleta completa) {
+        Factura factura = completa.getFactura();
+        try {
+            return metricas.etapaSincrona("registro", () -> {
+                List<String> errores = esperar(facturaService.validarExistencias(factura));
+                if (!errores.isEmpty()) {
+                    return facturaService.respuestaErrores(errores);
+                }
+
+                SaldoAnticiposService.Reserva reserva = esperar(facturaService.reservarSaldo(completa));
+                if (!reserva.errores().isEmpty()) {
+                    return facturaService.respuestaErrores(reserva.errores());
+                }
+
+                // Cabecera, detalles, anticipos, saldos, resúmenes y evento en una sola transacción
+                try {
+                    metricas.etapaSincrona("transaccion", () -> accesoBloqueante.enTransaccion(
+                            conn -> esperar(facturaService.insertarFactura(conn, completa))));
+                } catch (RuntimeException e) {
+                    return facturaService.resolverFallo(e, reserva);
+                }
+                return facturaService.registrada(factura);
+            });
+        } catch (RuntimeException e) {
+            return facturaService.resolverFallo(e, SaldoAnticiposService.Reserva.NINGUNA);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.DetalleFactura;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import org.springframework.boot.jackson.JacksonComponent;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.DeserializationContext;
+import tools.jackson.databind.ValueDeserializer;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lee el JSON de registrarFactura ({"factura": {...}}, el mismo contrato que FacturaRequest) y arma
+ * Factura, DetalleFactura y AnticipoAplicado en una sola pasada, sin el árbol intermedio de FacturaRequest:
+ * los montos se leen como BigDecimal desde el texto del token (valores exactos, sin pasar por double),
+ * los RUC se convierten a long desde los caracteres y la fecha dd/MM/yyyy se arma a mano, recordando la
+ * última fecha leída. Exige los mismos campos que convertirAFactura y responde los que falten.
+ */
+@JacksonComponent
+public class FacturaCompletaDeserializer extends ValueDeserializer<FacturaCompleta> {
+
+    // Las facturas de una misma tanda suelen compartir la fecha de emisión
+    private volatile FechaLeida ultimaFecha = new FechaLeida(0, null);
+
+    @Override
+    public FacturaCompleta deserialize(JsonParser p, DeserializationContext ctxt) {
+        if (!p.isExpectedStartObjectToken()) {
+            return (FacturaCompleta) ctxt.handleUnexpectedToken(FacturaCompleta.class, p);
+        }
+        FacturaCompleta completa = null;
+        for (String nombre = p.nextName(); nombre != null; nombre = p.nextName()) {
+            p.nextToken();
+            if ("factura".equals(nombre) && p.currentToken() != JsonToken.VALUE_NULL) {
+                completa = leerFactura(p, ctxt);
+            } else {
+                p.skipChildren();
+            }
+        }
+        if (completa == null) {
+            return ctxt.reportInputMismatch(this, "Falta el campo factura");
+        }
+        return completa;
+    }
+
+    private FacturaCompleta leerFactura(JsonParser p, DeserializationContext ctxt) {
+        esperarObjeto(p, ctxt, "factura");
+        Factura factura = new Factura();
+        factura.setFormaPago("Contado");
+        List<DetalleFactura> detalles = null;
+        List<String> numerosAnticipos = new ArrayList<>();
+        int itemsAnticipo = 0;
+        boolean hayTotales = false;
+
+        for (String nombre = p.nextName(); nombre != null; nombre = p.nextName()) {
+            JsonToken token = p.nextToken();
+            switch (nombre) {
+                case "serieNumero" -> factura.setCodigoFactura(leerTexto(p, ctxt, nombre));
+                case "rucEmisor" -> factura.setRucVendedor(leerRuc(p, ctxt, nombre));
+                case "fechaEmision" -> factura.setFechaEmision(leerFecha(p, ctxt));
+                case "ruc" -> factura.setRucCliente(leerRuc(p, ctxt, nombre));
+                case "moneda" -> factura.setTipoMoneda(leerTexto(p, ctxt, nombre));
+                case "observacion" -> factura.setObservacion(leerTexto(p, ctxt, nombre));
+                case "bienServicioCodigo" -> factura.setCodBienServicio(leerTexto(p, ctxt, nombre));
+                case "medioPagoCodigo" -> factura.setCodMedioPago(leerTexto(p, ctxt, nombre));
+                case "numeroCuentaBancoNacion" -> factura.setNroCtaBancoNacion(leerTexto(p, ctxt, nombre));
+                case "porcentajeDetraccion" -> factura.setPorcentajeDetraccion(leerMonto(p, ctxt, nombre));
+                case "montoDetraccion" -> factura.setMontoDetraccion(leerMonto(p, ctxt, nombre));
+                case "estadoFactura" ->
+                    factura.setAnulacion("ANULADO".equals(leerTexto(p, ctxt, nombre)) ? "1" : null);
+                case "tipoFactura" -> factura.setTipo(leerTexto(p, ctxt, nombre));
+                case "facturaAnticipo" -> {
+                    if (token == JsonToken.VALUE_NULL) {
+                        break;
+                    }
+                    esperarArreglo(p, ctxt, nombre);
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        String numero = leerNumeroAnticipo(p, ctxt);
+                        itemsAnticipo++;
+                        if (numero != null && !numero.isEmpty()) {
+                            numerosAnticipos.add(numero);
+                        }
+                    }
+                }
+                case "detalle" -> {
+                    if (token == JsonToken.VALUE_NULL) {
+                        break;
+                    }
+                    esperarArreglo(p, ctxt, nombre);
+                    detalles = new ArrayList<>();
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        detalles.add(leerDetalle(p, ctxt));
+                    }
+                }
+                case "totales" -> {
+                    if (token == JsonToken.VALUE_NULL) {
+                        break;
+                    }
+                    leerTotales(p, ctxt, factura);
+                    hayTotales = true;
+                }
+                default -> p.skipChildren();
+            }
+        }
+
+        validarObligatorios(ctxt, factura, detalles, hayTotales);
+        if (itemsAnticipo > 0) {
+            factura.setFacturaAnticipo(String.join(", ", numerosAnticipos));
+        }
+
+        // La cabecera puede venir después del detalle: la clave de cada línea se completa al final
+        BuscadorAnticipos buscadorAnticipos = BuscadorAnticipos.de(numerosAnticipos);
+        List<AnticipoAplicado> anticipos = new ArrayList<>();
+        for (DetalleFactura detalle : detalles) {
+            detalle.setRucVendedor(factura.getRucVendedor());
+            detalle.setCodigoFactura(factura.getCodigoFactura());
+
+            String numeroAnticipoEncontrado = buscadorAnticipos.buscar(detalle.getDescripcion());
+            if (numeroAnticipoEncontrado != null) {
+                anticipos.add(new AnticipoAplicado(factura.getRucVendedor(), factura.getCodigoFactura(),
+                        factura.getRucVendedor(), numeroAnticipoEncontrado, detalle.getValorUnitario()));
+            }
+        }
+        return new FacturaCompleta(factura, detalles, anticipos);
+    }
+
+    private DetalleFactura leerDetalle(JsonParser p, DeserializationContext ctxt) {
+        esperarObjeto(p, ctxt, "detalle");
+        DetalleFactura detalle = new DetalleFactura();
+        for (String nombre = p.nextName(); nombre != null; nombre = p.nextName()) {
+            p.nextToken();
+            switch (nombre) {
+                case "cantidad" -> detalle.setCantidad(leerMonto(p, ctxt, nombre));
+                case "unidadMedida" -> detalle.setUnidadMedida(leerTexto(p, ctxt, nombre));
+                case "descripcion" -> detalle.setDescripcion(leerTexto(p, ctxt, nombre));
+                case "valorUnitario" -> detalle.setValorUnitario(leerMonto(p, ctxt, nombre));
+                default -> p.skipChildren();
+            }
+        }
+        return detalle;
+    }
+
+    private void leerTotales(JsonParser p, DeserializationContext ctxt, Factura factura) {
+        esperarObjeto(p, ctxt, "totales");
+        for (String nombre = p.nextName(); nombre != null; nombre = p.nextName()) {
+            p.nextToken();
+            switch (nombre) {
+                case "subTotalVentas" -> factura.setSubTotalVentas(leerMonto(p, ctxt, nombre));
+                case "anticipos" -> factura.setAnticipos(leerMonto(p, ctxt, nombre));
+                case "valorVenta" -> factura.setValorVenta(leerMonto(p, ctxt, nombre));
+                case "importeTotal" -> factura.setImporteTotal(leerMonto(p, ctxt, nombre));
+                // descuentos, isc, igv, etc. no se guardan en AA_FACTURA
+                default -> p.skipChildren();
+            }
+        }
+    }
+
+    private String leerNumeroAnticipo(JsonParser p, DeserializationContext ctxt) {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        esperarObjeto(p, ctxt, "facturaAnticipo");
+        String numero = null;
+        for (String nombre = p.nextName(); nombre != null; nombre = p.nextName()) {
+            p.nextToken();
+            if ("numero".equals(nombre)) {
+                numero = leerTexto(p, ctxt, nombre);
+            } else {
+                p.skipChildren();
+            }
+        }
+        return numero;
+    }
+
+    private String leerTexto(JsonParser p, DeserializationContext ctxt, String campo) {
+        if (p.currentToken().isStructStart()) {
+            return ctxt.reportInputMismatch(this, "El campo %s debe ser un texto", campo);
+        }
+        return p.getValueAsString();
+    }
+
+    /**
+     * Monto exacto: número JSON o texto con el número, tal como viene
+     */
+    private BigDecimal leerMonto(JsonParser p, DeserializationContext ctxt, String campo) {
+        switch (p.currentToken()) {
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> {
+                return p.getDecimalValue();
+            }
+            case VALUE_STRING -> {
+                try {
+                    return new BigDecimal(p.getStringCharacters(), p.getStringOffset(), p.getStringLength());
+                } catch (NumberFormatException e) {
+                    return ctxt.reportInputMismatch(this, "El campo %s no es un número: '%s'", campo, p.getString());
+                }
+            }
+            case VALUE_NULL -> {
+                return null;
+            }
+            default -> {
+                return ctxt.reportInputMismatch(this, "El campo %s debe ser un número", campo);
+            }
+        }
+    }
+
+    /**
+     * RUC como texto de dígitos (el contrato actual) o como número
+     */
+    private Long leerRuc(JsonParser p, DeserializationContext ctxt, String campo) {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return p.getLongValue();
+        }
+        if (token != JsonToken.VALUE_STRING) {
+            return ctxt.reportInputMismatch(this, "El campo %s debe ser un RUC", campo);
+        }
+        char[] caracteres = p.getStringCharacters();
+        int inicio = p.getStringOffset();
+        int largo = p.getStringLength();
+        // Hasta 18 dígitos no hay desborde de long
+        if (largo == 0 || largo > 18) {
+            return ctxt.reportInputMismatch(this, "El campo %s no es un RUC válido: '%s'", campo, p.getString());
+        }
+        long ruc = 0;
+        for (int i = inicio; i < inicio + largo; i++) {
+            int digito = caracteres[i] - '0';
+            if (digito < 0 || digito > 9) {
+                return ctxt.reportInputMismatch(this, "El campo %s no es un RUC válido: '%s'", campo, p.getString());
+            }
+            ruc = ruc * 10 + digito;
+        }
+        return ruc;
+    }
+
+    /**
+     * Fecha en formato dd/MM/yyyy
+     */
+    private LocalDate leerFecha(JsonParser p, DeserializationContext ctxt) {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.VALUE_STRING || p.getStringLength() != 10) {
+            return fechaInvalida(p, ctxt);
+        }
+        char[] c = p.getStringCharacters();
+        int i = p.getStringOffset();
+        if (c[i + 2] != '/' || c[i + 5] != '/') {
+            return fechaInvalida(p, ctxt);
+        }
+        int dia = digitos(c, i, 2);
+        int mes = digitos(c, i + 3, 2);
+        int anio = digitos(c, i + 6, 4);
+        if (dia < 0 || mes < 0 || anio < 0) {
+            return fechaInvalida(p, ctxt);
+        }
+
+        int clave = anio * 10_000 + mes * 100 + dia;
+        FechaLeida leida = ultimaFecha;
+        if (leida.clave() == clave) {
+            return leida.fecha();
+        }
+        try {
+            LocalDate fecha = LocalDate.of(anio, mes, dia);
+            ultimaFecha = new FechaLeida(clave, fecha);
+            return fecha;
+        } catch (DateTimeException e) {
+            return fechaInvalida(p, ctxt);
+        }
+    }
+
+    private LocalDate fechaInvalida(JsonParser p, DeserializationContext ctxt) {
+        return ctxt.reportInputMismatch(this, "El campo fechaEmision debe tener el formato dd/MM/yyyy: '%s'",
+                p.getValueAsString());
+    }
+
+    /**
+     * @return el entero formado por los dígitos, o -1 si alguno no es dígito
+     */
+    private static int digitos(char[] c, int desde, int cantidad) {
+        int valor = 0;
+        for (int i = desde; i < desde + cantidad; i++) {
+            int digito = c[i] - '0';
+            if (digito < 0 || digito > 9) {
+                return -1;
+            }
+            valor = valor * 10 + digito;
+        }
+        return valor;
+    }
+
+    private void validarObligatorios(DeserializationContext ctxt, Factura factura, List<DetalleFactura> detalles,
+                                     boolean hayTotales) {
+        List<String> faltantes = new ArrayList<>();
+        agregarSiFalta(faltantes, factura.getCodigoFactura(), "serieNumero");
+        agregarSiFalta(faltantes, factura.getRucVendedor(), "rucEmisor");
+        agregarSiFalta(faltantes, factura.getFechaEmision(), "fechaEmision");
+        agregarSiFalta(faltantes, factura.getRucCliente(), "ruc");
+        agregarSiFalta(faltantes, factura.getPorcentajeDetraccion(), "porcentajeDetraccion");
+        agregarSiFalta(faltantes, factura.getMontoDetraccion(), "montoDetraccion");
+        agregarSiFalta(faltantes, detalles, "detalle");
+        if (!hayTotales) {
+            faltantes.add("totales");
+        } else {
+            agregarSiFalta(faltantes, factura.getSubTotalVentas(), "totales.subTotalVentas");
+            agregarSiFalta(faltantes, factura.getAnticipos(), "totales.anticipos");
+            agregarSiFalta(faltantes, factura.getValorVenta(), "totales.valorVenta");
+            agregarSiFalta(faltantes, factura.getImporteTotal(), "totales.importeTotal");
+        }
+        if (detalles != null) {
+            for (int i = 0; i < detalles.size(); i++) {
+                agregarSiFalta(faltantes, detalles.get(i).getCantidad(), "detalle[" + i + "].cantidad");
+                agregarSiFalta(faltantes, detalles.get(i).getValorUnitario(), "detalle[" + i + "].valorUnitario");
+            }
+        }
+        if (!faltantes.isEmpty()) {
+            ctxt.reportInputMismatch(this, "Faltan campos de la factura: %s", String.join(", ", faltantes));
+        }
+    }
+
+    private static void agregarSiFalta(List<String> faltantes, Object valor, String campo) {
+        if (valor == null) {
+            faltantes.add(campo);
+        }
+    }
+
+    private void esperarObjeto(JsonParser p, DeserializationContext ctxt, String campo) {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            ctxt.reportInputMismatch(this, "El campo %s debe ser un objeto", campo);
+        }
+    }
+
+    private void esperarArreglo(JsonParser p, DeserializationContext ctxt, String campo) {
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            ctxt.reportInputMismatch(this, "El campo %s debe ser un arreglo", campo);
+        }
+    }
+
+    private record FechaLeida(int clave, LocalDate fecha) {
+    }
+}
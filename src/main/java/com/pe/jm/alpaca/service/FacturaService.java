@@ -2,23 +2,40 @@ package com.pe.jm.alpaca.service;
 
 import com.pe.jm.alpaca.dto.FacturaRequest;
 import com.pe.jm.alpaca.dto.FacturaResponse;
+import com.pe.jm.alpaca.eventos.BandejaEventos;
+import com.pe.jm.alpaca.metricas.Metricas;
 import com.pe.jm.alpaca.model.AnticipoAplicado;
 import com.pe.jm.alpaca.model.DetalleFactura;
 import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
 import com.pe.jm.alpaca.repository.AnticipoAplicadoRepository;
 import com.pe.jm.alpaca.repository.ClienteRepository;
 import com.pe.jm.alpaca.repository.DetalleFacturaRepository;
 import com.pe.jm.alpaca.repository.FacturaRepository;
+import com.pe.jm.alpaca.repository.GestorTransacciones;
+import com.pe.jm.alpaca.repository.LimitadorAdaptativo;
+import com.pe.jm.alpaca.repository.SobrecargaException;
 import com.pe.jm.alpaca.repository.VendedorRepository;
 import io.vertx.core.Future;
+import io.vertx.core.http.ConnectionPoolTooBusyException;
+import io.vertx.mysqlclient.MySQLBatchException;
+import io.vertx.mysqlclient.MySQLException;
+import io.vertx.sqlclient.ClosedConnectionException;
+import io.vertx.sqlclient.SqlClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,6 +46,20 @@ public class FacturaService {
     private final AnticipoAplicadoRepository anticipoAplicadoRepository;
     private final ClienteRepository clienteRepository;
     private final VendedorRepository vendedorRepository;
+    private final GestorTransacciones gestorTransacciones;
+    private final ControlIdempotencia controlIdempotencia;
+    private final CacheFacturas cacheFacturas;
+    private final Metricas metricas;
+    private final LimitadorAdaptativo limitador;
+    private final IndiceProductos indiceProductos;
+    private final ResumenVentasService resumenVentas;
+    private final SaldoAnticiposService saldosAnticipos;
+    private final ValidadorFactura validadorFactura;
+    private final BandejaEventos bandejaEventos;
+    private final int tamanoLote;
+
+    // Espera de bloqueo, deadlock, demasiadas conexiones, servidor apagándose, consulta interrumpida
+    private static final Set<Integer> ERRORES_TRANSITORIOS = Set.of(1205, 1213, 1040, 1053, 1317, 1927);
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
@@ -36,74 +67,514 @@ public class FacturaService {
                           DetalleFacturaRepository detalleFacturaRepository,
                           AnticipoAplicadoRepository anticipoAplicadoRepository,
                           ClienteRepository clienteRepository,
-                          VendedorRepository vendedorRepository) {
+                          VendedorRepository vendedorRepository,
+                          GestorTransacciones gestorTransacciones,
+                          ControlIdempotencia controlIdempotencia,
+                          CacheFacturas cacheFacturas,
+                          Metricas metricas,
+                          LimitadorAdaptativo limitador,
+                          IndiceProductos indiceProductos,
+                          ResumenVentasService resumenVentas,
+                          SaldoAnticiposService saldosAnticipos,
+                          ValidadorFactura validadorFactura,
+                          BandejaEventos bandejaEventos,
+                          @Value("${facturas.lote.tamano:500}") int tamanoLote) {
         this.facturaRepository = facturaRepository;
         this.detalleFacturaRepository = detalleFacturaRepository;
         this.anticipoAplicadoRepository = anticipoAplicadoRepository;
         this.clienteRepository = clienteRepository;
         this.vendedorRepository = vendedorRepository;
+        this.gestorTransacciones = gestorTransacciones;
+        this.controlIdempotencia = controlIdempotencia;
+        this.cacheFacturas = cacheFacturas;
+        this.metricas = metricas;
+        this.limitador = limitador;
+        this.indiceProductos = indiceProductos;
+        this.resumenVentas = resumenVentas;
+        this.saldosAnticipos = saldosAnticipos;
+        this.validadorFactura = validadorFactura;
+        this.bandejaEventos = bandejaEventos;
+        this.tamanoLote = tamanoLote;
     }
 
+    /**
+     * Registra la factura de forma idempotente por (rucEmisor, serieNumero):
+     * los reintentos se unen al registro en curso o reciben la respuesta ya obtenida
+     */
     public CompletableFuture<FacturaResponse> procesarFactura(FacturaRequest request) {
+        return procesarFactura(request, null);
+    }
+
+    /**
+     * @param modo validación de totales pedida (null = facturas.validacion.modo)
+     */
+    public CompletableFuture<FacturaResponse> procesarFactura(FacturaRequest request, ModoValidacion modo) {
         FacturaRequest.FacturaData facturaData = request.getFactura();
+        if (facturaData == null || facturaData.getRucEmisor() == null || facturaData.getSerieNumero() == null) {
+            return registrarFactura(request, modo).toCompletionStage().toCompletableFuture();
+        }
 
-        // Convertir y crear la factura
-        Factura factura = convertirAFactura(facturaData);
+        String clave = ControlIdempotencia.clave(
+            Long.parseLong(facturaData.getRucEmisor()), facturaData.getSerieNumero());
+        return controlIdempotencia.ejecutar(clave, () -> registrarFactura(request, modo))
+            .toCompletionStage()
+            .toCompletableFuture();
+    }
 
-        // Procesar la factura
-        CompletableFuture<FacturaResponse> future = new CompletableFuture<>();
-
-        // Primero validar y crear vendedor si no existe
-        Long rucVendedor = Long.parseLong(facturaData.getRucEmisor());
-        Long rucCliente = Long.parseLong(facturaData.getRuc());
-
-        validarYCrearVendedor(rucVendedor)
-            .compose(v -> validarYCrearCliente(rucCliente))
-            // Insertar la factura
-            .compose(v -> facturaRepository.insert(factura))
-            // Insertar los detalles y anticipos
-            .compose(v -> insertarDetallesDirectamente(facturaData, factura))
-            .onSuccess(v -> {
-                FacturaResponse response = FacturaResponse.builder()
-                    .success(true)
-                    .message("Factura procesada exitosamente")
-                    .codigoFactura(factura.getCodigoFactura())
-                    .rucVendedor(factura.getRucVendedor())
-                    .build();
-                future.complete(response);
-            })
-            .onFailure(error -> {
-                FacturaResponse response = FacturaResponse.builder()
-                    .success(false)
-                    .message("Error al procesar factura: " + error.getMessage())
-                    .build();
-                future.complete(response);
-            });
+    /**
+     * Igual que procesarFactura, para una factura ya armada al leer el JSON (FacturaCompletaDeserializer)
+     */
+    public CompletableFuture<FacturaResponse> procesarFactura(FacturaCompleta completa) {
+        return procesarFactura(completa, null);
+    }
 
-        return future;
+    public CompletableFuture<FacturaResponse> procesarFactura(FacturaCompleta completa, ModoValidacion modo) {
+        return procesarFacturaEnVertx(completa, modo).toCompletionStage().toCompletableFuture();
+    }
+
+    /**
+     * Igual que procesarFactura pero devuelve un Future de Vert.x, para el servidor Vert.x Web:
+     * la petición se atiende de principio a fin en el event loop, sin pasar por otro hilo
+     */
+    public Future<FacturaResponse> procesarFacturaEnVertx(FacturaCompleta completa, ModoValidacion modo) {
+        asignarProductos(completa);
+        String clave = ControlIdempotencia.clave(
+            completa.getFactura().getRucVendedor(), completa.getFactura().getCodigoFactura());
+        return controlIdempotencia.ejecutar(clave, () -> registrarFactura(completa, modo));
+    }
+
+    private Future<FacturaResponse> registrarFactura(FacturaRequest request, ModoValidacion modo) {
+        FacturaRequest.FacturaData facturaData = request.getFactura();
+
+        // Convertir la factura con sus detalles y anticipos
+        FacturaCompleta completa = metricas.etapaSincrona("conversion", () -> prepararFactura(facturaData));
+        return registrarFactura(completa, modo);
     }
 
-    private Future<Void> validarYCrearVendedor(Long rucVendedor) {
-        return vendedorRepository.existsByRuc(rucVendedor)
-                .compose(existe -> {
-                    if (!existe) {
-                        return Future.failedFuture("El vendedor con RUC " + rucVendedor + " no existe en el sistema");
+    private Future<FacturaResponse> registrarFactura(FacturaCompleta completa, ModoValidacion modo) {
+        Factura factura = completa.getFactura();
+
+        // Reglas de totales en memoria: en modo STRICT una factura inconsistente no llega a MySQL
+        ValidadorFactura.Validacion validacion = validarReglas(completa, modo);
+        if (validacion.rechaza()) {
+            return Future.succeededFuture(conValidaciones(respuestaErrores(validacion.errores()), validacion));
+        }
+
+        // Validar vendedor, cliente y duplicado en paralelo; solo si no hay errores se inserta.
+        // Si MySQL está saturado se rechaza sin consultar nada y la sobrecarga llega al controlador (429).
+        // Los pasos son los mismos que recorre FacturaBloqueanteService, uno tras otro, en el modo virtual
+        return limitador.admitir(() -> metricas.etapa("registro", () -> validarExistencias(factura)
+            .compose(errores -> {
+                if (!errores.isEmpty()) {
+                    return Future.succeededFuture(respuestaErrores(errores));
+                }
+                return reservarSaldo(completa).compose(reserva -> {
+                    if (!reserva.errores().isEmpty()) {
+                        return Future.succeededFuture(respuestaErrores(reserva.errores()));
                     }
-                    return Future.succeededFuture();
+                    // Insertar cabecera, detalles y anticipos en una sola transacción
+                    return metricas.etapa("transaccion",
+                            () -> gestorTransacciones.ejecutar(conn -> insertarFactura(conn, completa)))
+                            .map(v -> registrada(factura))
+                            .recover(error -> Future.succeededFuture(resolverFallo(error, reserva)));
                 });
+            })))
+            .recover(error -> Future.succeededFuture(resolverFallo(error, SaldoAnticiposService.Reserva.NINGUNA)))
+            .map(respuesta -> conValidaciones(respuesta, validacion));
+    }
+
+    /**
+     * Valida vendedor, cliente y factura duplicada.
+     * @return Future fallido con la sobrecarga si MySQL está saturado
+     */
+    Future<List<String>> validarExistencias(Factura factura) {
+        return metricas.etapa("validacion", () -> validarFactura(factura));
+    }
+
+    /**
+     * Aparta el saldo de los anticipos que aplica la factura (ver SaldoAnticiposService)
+     */
+    Future<SaldoAnticiposService.Reserva> reservarSaldo(FacturaCompleta completa) {
+        return saldosAnticipos.reservar(List.of(completa)).map(reservas -> reservas.get(0));
+    }
+
+    /**
+     * Resuelve un registro que falló: devuelve el saldo apartado y arma la respuesta con respuestaFallo
+     * @throws SobrecargaException si el error indica que MySQL está saturado
+     */
+    FacturaResponse resolverFallo(Throwable error, SaldoAnticiposService.Reserva reserva) {
+        saldosAnticipos.liberar(reserva);
+        SobrecargaException sobrecarga = limitador.comoSobrecarga(error);
+        if (sobrecarga != null) {
+            throw sobrecarga;
+        }
+        return respuestaFallo(error);
+    }
+
+    /**
+     * @return true si la factura ya está en AA_FACTURA, consultando el primario
+     */
+    public CompletableFuture<Boolean> estaRegistrada(Long rucVendedor, String codigoFactura) {
+        return facturaRepository.existe(rucVendedor, codigoFactura).toCompletionStage().toCompletableFuture();
+    }
+
+    /**
+     * Convierte y valida la factura sin registrarla, con las mismas reglas de totales que el registro
+     * @param modo validación de totales pedida (null = facturas.validacion.modo)
+     * @return la lista de errores; vacía si la factura se puede registrar
+     */
+    public CompletableFuture<List<String>> validarSolicitud(FacturaRequest request, ModoValidacion modo) {
+        FacturaCompleta completa;
+        try {
+            completa = prepararFactura(request.getFactura());
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(List.of("Error al convertir factura: " + e.getMessage()));
+        }
+        ValidadorFactura.Validacion validacion = validarReglas(completa, modo);
+        if (validacion.rechaza()) {
+            return CompletableFuture.completedFuture(validacion.errores());
+        }
+        return validarFactura(completa.getFactura()).toCompletionStage().toCompletableFuture();
+    }
+
+    /**
+     * Registra varias facturas por lotes: por cada lote valida vendedores y clientes
+     * con una consulta IN (...) y escribe cabeceras, detalles y anticipos con executeBatch
+     * dentro de una transacción. Si el lote falla se reintenta factura por factura para
+     * aislar las que tienen error. Devuelve una respuesta por factura, en el mismo orden.
+     */
+    public CompletableFuture<List<FacturaResponse>> procesarFacturas(List<FacturaRequest> requests) {
+        return procesarFacturas(requests, null);
     }
 
-    private Future<Void> validarYCrearCliente(Long rucCliente) {
-        return clienteRepository.existsByRuc(rucCliente)
-                .compose(existe -> {
-                    if (!existe) {
-                        return Future.failedFuture("El cliente con RUC " + rucCliente + " no existe en el sistema");
+    /**
+     * Cada lote pasa por el limitador como un registro más (es una sola transacción). Si no se admite
+     * el primero, el Future falla con SobrecargaException sin haber registrado nada; si no se admite uno
+     * posterior, sus facturas quedan con un error transitorio.
+     * @param modo validación de totales pedida para todas las facturas (null = facturas.validacion.modo)
+     */
+    public CompletableFuture<List<FacturaResponse>> procesarFacturas(List<FacturaRequest> requests,
+                                                                     ModoValidacion modo) {
+        FacturaResponse[] respuestas = new FacturaResponse[requests.size()];
+        ValidadorFactura.Validacion[] validaciones = new ValidadorFactura.Validacion[requests.size()];
+        List<FacturaPendiente> pendientes = new ArrayList<>(requests.size());
+
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                FacturaCompleta completa = prepararFactura(requests.get(i).getFactura());
+                validaciones[i] = validarReglas(completa, modo);
+                if (validaciones[i].rechaza()) {
+                    respuestas[i] = respuestaErrores(validaciones[i].errores());
+                } else {
+                    pendientes.add(new FacturaPendiente(i, completa));
+                }
+            } catch (RuntimeException e) {
+                respuestas[i] = respuestaRechazo("Error al convertir factura: " + e.getMessage());
+            }
+        }
+
+        Future<Void> cadena = Future.succeededFuture();
+        for (int desde = 0; desde < pendientes.size(); desde += tamanoLote) {
+            List<FacturaPendiente> lote = pendientes.subList(desde, Math.min(desde + tamanoLote, pendientes.size()));
+            boolean primero = desde == 0;
+            cadena = cadena.compose(v -> limitador.admitir(() -> procesarLote(lote, respuestas))
+                    .recover(error -> {
+                        if (primero && error instanceof SobrecargaException) {
+                            return Future.failedFuture(error);
+                        }
+                        completarConFallo(lote, respuestas, error);
+                        return Future.succeededFuture();
+                    }));
+        }
+
+        CompletableFuture<List<FacturaResponse>> future = new CompletableFuture<>();
+        cadena.onComplete(ar -> {
+            if (ar.failed()) {
+                future.completeExceptionally(ar.cause());
+                return;
+            }
+            for (int i = 0; i < respuestas.length; i++) {
+                if (validaciones[i] != null) {
+                    conValidaciones(respuestas[i], validaciones[i]);
+                }
+            }
+            future.complete(Arrays.asList(respuestas));
+        });
+        return future;
+    }
+
+    /**
+     * Procesa un lote; nunca falla, los errores quedan en la respuesta de cada factura
+     */
+    private Future<Void> procesarLote(List<FacturaPendiente> lote, FacturaResponse[] respuestas) {
+        Set<Long> rucsVendedor = new HashSet<>();
+        Set<Long> rucsCliente = new HashSet<>();
+        for (FacturaPendiente pendiente : lote) {
+            rucsVendedor.add(pendiente.completa().getFactura().getRucVendedor());
+            rucsCliente.add(pendiente.completa().getFactura().getRucCliente());
+        }
+
+        Future<Set<Long>> vendedoresFuture = vendedorRepository.findRucsExistentes(rucsVendedor);
+        Future<Set<Long>> clientesFuture = clienteRepository.findRucsExistentes(rucsCliente);
+
+        return metricas.etapa("lote_validacion", () -> Future.all(vendedoresFuture, clientesFuture))
+                .compose(v -> {
+                    List<FacturaPendiente> validas = new ArrayList<>(lote.size());
+                    List<FacturaCompleta> completas = new ArrayList<>(lote.size());
+                    for (FacturaPendiente pendiente : lote) {
+                        Factura factura = pendiente.completa().getFactura();
+                        List<String> errores = new ArrayList<>(2);
+                        if (!vendedoresFuture.result().contains(factura.getRucVendedor())) {
+                            errores.add(mensajeVendedorInexistente(factura.getRucVendedor()));
+                        }
+                        if (!clientesFuture.result().contains(factura.getRucCliente())) {
+                            errores.add(mensajeClienteInexistente(factura.getRucCliente()));
+                        }
+                        if (errores.isEmpty()) {
+                            validas.add(pendiente);
+                            completas.add(pendiente.completa());
+                        } else {
+                            respuestas[pendiente.indice()] = respuestaErrores(errores);
+                        }
                     }
+                    return saldosAnticipos.reservar(completas).compose(reservas -> {
+                        List<FacturaPendiente> reservadas = new ArrayList<>(validas.size());
+                        for (int i = 0; i < validas.size(); i++) {
+                            FacturaPendiente pendiente = validas.get(i);
+                            SaldoAnticiposService.Reserva reserva = reservas.get(i);
+                            if (reserva.errores().isEmpty()) {
+                                reservadas.add(new FacturaPendiente(pendiente.indice(), pendiente.completa(), reserva));
+                            } else {
+                                respuestas[pendiente.indice()] = respuestaErrores(reserva.errores());
+                            }
+                        }
+                        // Si el lote falla, cada factura conserva su reserva hasta su reintento individual
+                        return metricas.etapa("lote_transaccion",
+                                    () -> gestorTransacciones.ejecutar(conn -> insertarLote(conn, reservadas)))
+                                .onSuccess(x -> reservadas.forEach(pendiente -> respuestas[pendiente.indice()] =
+                                    registrada(pendiente.completa().getFactura())))
+                                .recover(error -> metricas.etapa("lote_recuperacion",
+                                    () -> insertarUnoPorUno(reservadas, respuestas)));
+                    });
+                })
+                .recover(error -> {
+                    completarConFallo(lote, respuestas, error);
                     return Future.succeededFuture();
-                });
+                })
+                .mapEmpty();
+    }
+
+    /**
+     * Da a las facturas del lote que aún no tienen respuesta la del error que lo interrumpió
+     */
+    private void completarConFallo(List<FacturaPendiente> lote, FacturaResponse[] respuestas, Throwable error) {
+        for (FacturaPendiente pendiente : lote) {
+            if (respuestas[pendiente.indice()] == null) {
+                respuestas[pendiente.indice()] = respuestaFallo(error);
+            }
+        }
+    }
+
+    /**
+     * Reintenta cada factura del lote en su propia transacción, de forma secuencial
+     */
+    private Future<Void> insertarUnoPorUno(List<FacturaPendiente> lote, FacturaResponse[] respuestas) {
+        Future<Void> cadena = Future.succeededFuture();
+        for (FacturaPendiente pendiente : lote) {
+            cadena = cadena.compose(v -> gestorTransacciones
+                    .ejecutar(conn -> insertarFactura(conn, pendiente.completa()))
+                    .onSuccess(x -> respuestas[pendiente.indice()] =
+                        registrada(pendiente.completa().getFactura()))
+                    .otherwise(error -> {
+                        saldosAnticipos.liberar(pendiente.reserva());
+                        respuestas[pendiente.indice()] = respuestaFallo(error);
+                        return null;
+                    }));
+        }
+        return cadena;
+    }
+
+    /**
+     * Inserta cabeceras, detalles y anticipos de un lote con un executeBatch por tabla
+     */
+    private Future<Void> insertarLote(SqlClient conn, List<FacturaPendiente> lote) {
+        if (lote.isEmpty()) {
+            return Future.succeededFuture();
+        }
+
+        List<Factura> facturas = new ArrayList<>(lote.size());
+        List<FacturaCompleta> completas = new ArrayList<>(lote.size());
+        List<DetalleFactura> detalles = new ArrayList<>();
+        List<AnticipoAplicado> anticipos = new ArrayList<>();
+        for (FacturaPendiente pendiente : lote) {
+            facturas.add(pendiente.completa().getFactura());
+            completas.add(pendiente.completa());
+            detalles.addAll(pendiente.completa().getDetalles());
+            anticipos.addAll(pendiente.completa().getAnticipos());
+        }
+
+        return facturaRepository.insertBatch(conn, facturas)
+                .compose(v -> detalleFacturaRepository.insertBatch(conn, detalles))
+                .compose(v -> anticipoAplicadoRepository.insertBatch(conn, anticipos))
+                .compose(v -> saldosAnticipos.registrar(conn, completas))
+                .compose(v -> resumenVentas.acumular(conn, completas))
+                .compose(v -> bandejaEventos.registrar(conn, completas));
+    }
+
+    /**
+     * Invalida la factura en la caché de lectura y arma la respuesta exitosa
+     */
+    FacturaResponse registrada(Factura factura) {
+        cacheFacturas.invalidar(CacheFacturas.clave(factura.getRucVendedor(), factura.getCodigoFactura()));
+        return respuestaExitosa(factura);
+    }
+
+    private FacturaResponse respuestaExitosa(Factura factura) {
+        return FacturaResponse.builder()
+            .success(true)
+            .message("Factura procesada exitosamente")
+            .codigoFactura(factura.getCodigoFactura())
+            .rucVendedor(factura.getRucVendedor())
+            .build();
+    }
+
+    ValidadorFactura.Validacion validarReglas(FacturaCompleta completa, ModoValidacion modo) {
+        return metricas.etapaSincrona("reglas", () -> validadorFactura.validar(completa, modo));
+    }
+
+    /**
+     * Agrega a la respuesta el resultado de las reglas de totales, si se evaluaron
+     */
+    FacturaResponse conValidaciones(FacturaResponse respuesta, ValidadorFactura.Validacion validacion) {
+        respuesta.setValidaciones(validacion.resultados());
+        return respuesta;
+    }
+
+    FacturaResponse respuestaErrores(List<String> errores) {
+        return FacturaResponse.builder()
+            .success(false)
+            .message("Error al procesar factura: " + String.join("; ", errores))
+            .errores(errores)
+            .build();
+    }
+
+    /**
+     * Respuesta para un error al insertar: si MySQL rechazó la factura (clave duplicada, dato fuera de
+     * rango...) el mensaje va también en errores, porque reintentarla daría el mismo resultado;
+     * los errores de conexión, timeout o bloqueo quedan solo en el mensaje y se pueden reintentar.
+     * El error puede venir envuelto (CompletionException en el modo de hilos virtuales).
+     */
+    FacturaResponse respuestaFallo(Throwable error) {
+        MySQLException mysql = errorMySQL(error);
+        if (mysql != null && !ERRORES_TRANSITORIOS.contains(mysql.getErrorCode())) {
+            return respuestaRechazo("Error al procesar factura: " + mysql.getMessage());
+        }
+        FacturaResponse respuesta = respuestaError("Error al procesar factura: " + error.getMessage());
+        respuesta.setTransitorio(mysql != null || esErrorDeConexion(error));
+        return respuesta;
+    }
+
+    /**
+     * @return true si en la cadena de causas hay un error de red, un timeout o la saturación del pool
+     */
+    private static boolean esErrorDeConexion(Throwable error) {
+        for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+            if (causa instanceof IOException || causa instanceof ClosedConnectionException
+                    || causa instanceof TimeoutException || causa instanceof ConnectionPoolTooBusyException
+                    || causa instanceof SobrecargaException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return el primer MySQLException en la cadena de causas (de un batch, el de su primera iteración fallida),
+     * o null si no hay ninguno
+     */
+    private static MySQLException errorMySQL(Throwable error) {
+        for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+            if (causa instanceof MySQLBatchException batch && !batch.getIterationError().isEmpty()) {
+                causa = batch.getIterationError().values().iterator().next();
+            }
+            if (causa instanceof MySQLException mysql) {
+                return mysql;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Factura rechazada por su contenido: el mensaje va también en errores
+     */
+    FacturaResponse respuestaRechazo(String mensaje) {
+        return FacturaResponse.builder()
+            .success(false)
+            .message(mensaje)
+            .errores(List.of(mensaje))
+            .build();
     }
 
-    private Factura convertirAFactura(FacturaRequest.FacturaData facturaData) {
+    FacturaResponse respuestaError(String mensaje) {
+        return FacturaResponse.builder()
+            .success(false)
+            .message(mensaje)
+            .build();
+    }
+
+    private record FacturaPendiente(int indice, FacturaCompleta completa, SaldoAnticiposService.Reserva reserva) {
+
+        FacturaPendiente(int indice, FacturaCompleta completa) {
+            this(indice, completa, SaldoAnticiposService.Reserva.NINGUNA);
+        }
+    }
+
+    /**
+     * Lanza en paralelo las validaciones de vendedor, cliente y factura duplicada y espera a
+     * todas, para devolver la lista completa de errores (vacía si la factura es válida)
+     */
+    private Future<List<String>> validarFactura(Factura factura) {
+        Long rucVendedor = factura.getRucVendedor();
+        Long rucCliente = factura.getRucCliente();
+        String codigoFactura = factura.getCodigoFactura();
+
+        List<Future<String>> validaciones = List.of(
+            vendedorRepository.existsByRuc(rucVendedor)
+                .map(existe -> existe ? null : mensajeVendedorInexistente(rucVendedor)),
+            clienteRepository.existsByRuc(rucCliente)
+                .map(existe -> existe ? null : mensajeClienteInexistente(rucCliente)),
+            facturaRepository.findByRucVendedorAndCodigoFactura(rucVendedor, codigoFactura)
+                .map(existente -> existente == null ? null : mensajeFacturaDuplicada(rucVendedor, codigoFactura))
+        );
+
+        return Future.join(validaciones).transform(ar -> {
+            List<String> errores = new ArrayList<>();
+            for (Future<String> validacion : validaciones) {
+                if (validacion.failed() && limitador.comoSobrecarga(validacion.cause()) != null) {
+                    return Future.failedFuture(validacion.cause());
+                } else if (validacion.failed()) {
+                    errores.add("Error al validar factura: " + validacion.cause().getMessage());
+                } else if (validacion.result() != null) {
+                    errores.add(validacion.result());
+                }
+            }
+            return Future.succeededFuture(errores);
+        });
+    }
+
+    String mensajeVendedorInexistente(Long rucVendedor) {
+        return "El vendedor con RUC " + rucVendedor + " no existe en el sistema";
+    }
+
+    String mensajeClienteInexistente(Long rucCliente) {
+        return "El cliente con RUC " + rucCliente + " no existe en el sistema";
+    }
+
+    String mensajeFacturaDuplicada(Long rucVendedor, String codigoFactura) {
+        return "La factura " + codigoFactura + " del vendedor con RUC " + rucVendedor + " ya está registrada";
+    }
+
+    Factura convertirAFactura(FacturaRequest.FacturaData facturaData) {
         // Convertir fecha de formato dd/MM/yyyy a LocalDate
         LocalDate fechaEmision = LocalDate.parse(facturaData.getFechaEmision(), DATE_FORMATTER);
 
@@ -138,221 +609,14 @@ public class FacturaService {
             .build();
     }
 
-    private String obtenerFacturaAnticipoStr(FacturaRequest.FacturaData facturaData) {
-        if (facturaData.getFacturaAnticipo() != null && !facturaData.getFacturaAnticipo().isEmpty()) {
-            return facturaData.getFacturaAnticipo().stream()
-                .map(FacturaRequest.FacturaAnticipoItem::getNumero)
-                .filter(numero -> numero != null && !numero.isEmpty())
-                .collect(Collectors.joining(", "));
-        }
-        return null;
-    }
-
-    /**
-     * Obtiene la lista de números de anticipos desde los datos de la factura
-     */
-    private List<String> obtenerNumerosAnticipos(FacturaRequest.FacturaData facturaData) {
-        if (facturaData.getFacturaAnticipo() == null || facturaData.getFacturaAnticipo().isEmpty()) {
-            return new ArrayList<>();
-        }
-        return facturaData.getFacturaAnticipo().stream()
-                .map(FacturaRequest.FacturaAnticipoItem::getNumero)
-                .filter(numero -> numero != null && !numero.isEmpty())
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * Busca si la descripción contiene algún número de anticipo
-     * @return El número de anticipo encontrado, o null si no se encuentra
-     */
-    private String buscarNumeroAnticipo(String descripcion, List<String> numerosAnticipos) {
-        if (descripcion == null || numerosAnticipos.isEmpty()) {
-            return null;
-        }
-
-        for (String numeroAnticipo : numerosAnticipos) {
-            if (descripcion.contains(numeroAnticipo)) {
-                return numeroAnticipo;
-            }
-        }
-        return null;
-    }
-
-    // /**
-    //  * Valida los detalles y anticipos de la factura SIN insertar en base de datos.
-    //  * Retorna los datos validados listos para insertar.
-    //  */
-    // private Future<DatosValidados> validarDetallesYAnticipos(FacturaRequest.FacturaData facturaData, Factura factura) {
-    //     // ========== FASE 1: PREPARACIÓN ==========
-    //     // Obtener lista de números de facturas de anticipo
-    //     List<String> numerosAnticipos = obtenerNumerosAnticipos(facturaData);
-    //
-    //     // Listas para almacenar los objetos que se insertarán DESPUÉS de validar
-    //     List<AnticipoAplicado> anticiposParaInsertar = new ArrayList<>();
-    //     List<DetalleFactura> detallesParaInsertar = new ArrayList<>();
-    //
-    //     // ========== FASE 2: CALCULAR TOTALES ==========
-    //     BigDecimal anticiposAplicados = BigDecimal.ZERO;
-    //     BigDecimal subTotalVentas = BigDecimal.ZERO;
-    //
-    //     // Procesar cada detalle para calcular totales y preparar objetos
-    //     for (FacturaRequest.DetalleItem detalleItem : facturaData.getDetalle()) {
-    //         String descripcion = detalleItem.getDescripcion();
-    //
-    //         // Convertir a BigDecimal ANTES de operar (evita pérdida de precisión)
-    //         BigDecimal cantidad = BigDecimal.valueOf(detalleItem.getCantidad());
-    //         BigDecimal valorUnitario = BigDecimal.valueOf(detalleItem.getValorUnitario());
-    //         BigDecimal valorLinea = cantidad.multiply(valorUnitario);
-    //
-    //         // Verificar si es un anticipo
-    //         String numeroAnticipoEncontrado = buscarNumeroAnticipo(descripcion, numerosAnticipos);
-    //         boolean esAnticipo = numeroAnticipoEncontrado != null;
-    //
-    //         if (esAnticipo) {
-    //             // Acumular anticipos aplicados (usar valorUnitario directamente para anticipos)
-    //             anticiposAplicados = anticiposAplicados.add(valorUnitario);
-    //
-    //             // Preparar objeto anticipo (NO insertar todavía)
-    //             AnticipoAplicado anticipo = AnticipoAplicado.builder()
-    //                     .ventaRucVendedor(factura.getRucVendedor())
-    //                     .ventaCodigoFactura(factura.getCodigoFactura())
-    //                     .anticipoRucVendedor(factura.getRucVendedor())
-    //                     .anticipoCodigoFactura(numeroAnticipoEncontrado)
-    //                     .montoAplicado(valorUnitario)
-    //                     .build();
-    //             anticiposParaInsertar.add(anticipo);
-    //         } else {
-    //             // Acumular subtotal de ventas (usar cantidad * valorUnitario con precisión correcta)
-    //             subTotalVentas = subTotalVentas.add(valorLinea);
-    //         }
-    //
-    //         // Preparar objeto detalle (NO insertar todavía)
-    //         DetalleFactura detalle = DetalleFactura.builder()
-    //                 .rucVendedor(factura.getRucVendedor())
-    //                 .codigoFactura(factura.getCodigoFactura())
-    //                 .idProducto(null)
-    //                 .cantidad(cantidad)
-    //                 .unidadMedida(detalleItem.getUnidadMedida())
-    //                 .codigo(null)
-    //                 .descripcion(descripcion)
-    //                 .valorUnitario(valorUnitario)
-    //                 .build();
-    //         detallesParaInsertar.add(detalle);
-    //     }
-    //
-    //     // ========== FASE 3: VALIDAR TOTALES ==========
-    //     Future<Void> validacionFuture = validarTotalesSegunTipo(
-    //         factura,
-    //         facturaData,
-    //         anticiposAplicados,
-    //         subTotalVentas
-    //     );
-    //
-    //     // Si la validación falla, retornar el error SIN insertar nada
-    //     if (validacionFuture != null) {
-    //         return validacionFuture.map(v -> null); // Convertir Future<Void> a Future<DatosValidados>
-    //     }
-    //
-    //     // Si todas las validaciones pasaron, retornar los datos validados
-    //     return Future.succeededFuture(new DatosValidados(anticiposParaInsertar, detallesParaInsertar));
-    // }
-
-    // /**
-    //  * Valida los totales según el tipo de factura (VENTA o ANTICIPO)
-    //  * @return Future.failedFuture si hay error de validación, null si todo está correcto
-    //  */
-    // private Future<Void> validarTotalesSegunTipo(
-    //         Factura factura,
-    //         FacturaRequest.FacturaData facturaData,
-    //         BigDecimal anticiposAplicados,
-    //         BigDecimal subTotalVentas) {
-    //
-    //     if ("VENTA".equals(factura.getTipo())) {
-    //         return validarFacturaVenta(factura, anticiposAplicados, subTotalVentas);
-    //     }
-    //
-    //     if ("ANTICIPO".equals(factura.getTipo())) {
-    //         return validarFacturaAnticipo(factura, facturaData);
-    //     }
-    //
-    //     return null; // No hay validaciones para otros tipos
-    // }
-
-    // /**
-    //  * Valida una factura de tipo VENTA
-    //  */
-    // private Future<Void> validarFacturaVenta(
-    //         Factura factura,
-    //         BigDecimal anticiposAplicados,
-    //         BigDecimal subTotalVentas) {
-    //
-    //     // Validación 1: Suma de anticipos aplicados debe coincidir con campo anticipos
-    //     if (anticiposAplicados.abs().compareTo(factura.getAnticipos()) != 0) {
-    //         return Future.failedFuture(
-    //             String.format("Error en factura de tipo VENTA: La suma de anticipos aplicados (%s) " +
-    //                 "no coincide con el campo anticipos de la factura (%s).",
-    //                 anticiposAplicados.abs(), factura.getAnticipos())
-    //         );
-    //     }
-    //
-    //     // Validación 2: Subtotal de ventas debe coincidir
-    //     if (subTotalVentas.compareTo(factura.getSubTotalVentas()) != 0) {
-    //         return Future.failedFuture(
-    //             String.format("Error en factura de tipo VENTA: El subtotal de ventas calculado (%s) " +
-    //                 "no coincide con el campo subtotalVentas de la factura (%s).",
-    //                 subTotalVentas, factura.getSubTotalVentas())
-    //         );
-    //     }
-    //
-    //     // Validación 3: Valor de venta e importe total deben coincidir
-    //     BigDecimal valorVentaCalculado = subTotalVentas.subtract(anticiposAplicados.abs());
-    //
-    //     if (factura.getValorVenta().compareTo(valorVentaCalculado) != 0 ||
-    //         factura.getImporteTotal().compareTo(valorVentaCalculado) != 0) {
-    //         return Future.failedFuture(
-    //             String.format("Error en factura de tipo VENTA: El valor de venta calculado (%s) " +
-    //                 "no coincide con el campo valorVenta (%s) o el importeTotal (%s) de la factura.",
-    //                 valorVentaCalculado, factura.getValorVenta(), factura.getImporteTotal())
-    //         );
-    //     }
-    //
-    //     return null; // Todas las validaciones pasaron
-    // }
-
-    // /**
-    //  * Valida una factura de tipo ANTICIPO
-    //  */
-    // private Future<Void> validarFacturaAnticipo(
-    //         Factura factura,
-    //         FacturaRequest.FacturaData facturaData) {
-    //
-    //     if (facturaData.getDetalle() == null || facturaData.getDetalle().isEmpty()) {
-    //         return null; // No hay detalles para validar
-    //     }
-    //
-    //     BigDecimal valorUnitarioPrimerDetalle =
-    //         BigDecimal.valueOf(Math.abs(facturaData.getDetalle().get(0).getValorUnitario()));
-    //
-    //     // Validar que subtotalVentas == importeTotal == valorUnitario del primer detalle
-    //     if (factura.getSubTotalVentas().compareTo(factura.getImporteTotal()) != 0 ||
-    //         factura.getSubTotalVentas().compareTo(valorUnitarioPrimerDetalle) != 0) {
-    //         return Future.failedFuture(
-    //             String.format("Error en factura de tipo ANTICIPO: El subtotal y el importe total " +
-    //                 "deben ser iguales al valor del detalle. Valores: valorDetalle=%s, " +
-    //                 "importeTotal=%s, subTotalVentas=%s",
-    //                 valorUnitarioPrimerDetalle, factura.getImporteTotal(), factura.getSubTotalVentas())
-    //         );
-    //     }
-    //
-    //     return null; // Validación exitosa
-    // }
-
     /**
-     * Inserta directamente los detalles y anticipos sin validaciones
+     * Convierte la factura y arma sus detalles y anticipos aplicados, sin tocar la base de datos
      */
-    private Future<Void> insertarDetallesDirectamente(FacturaRequest.FacturaData facturaData, Factura factura) {
-        List<String> numerosAnticipos = obtenerNumerosAnticipos(facturaData);
-        List<Future<Long>> futures = new ArrayList<>();
+    FacturaCompleta prepararFactura(FacturaRequest.FacturaData facturaData) {
+        Factura factura = convertirAFactura(facturaData);
+        BuscadorAnticipos buscadorAnticipos = BuscadorAnticipos.de(obtenerNumerosAnticipos(facturaData));
+        List<DetalleFactura> detalles = new ArrayList<>(facturaData.getDetalle().size());
+        List<AnticipoAplicado> anticipos = new ArrayList<>();
 
         // Procesar cada detalle
         for (FacturaRequest.DetalleItem detalleItem : facturaData.getDetalle()) {
@@ -361,35 +625,85 @@ public class FacturaService {
             BigDecimal valorUnitario = BigDecimal.valueOf(detalleItem.getValorUnitario());
 
             // Verificar si es un anticipo
-            String numeroAnticipoEncontrado = buscarNumeroAnticipo(descripcion, numerosAnticipos);
+            String numeroAnticipoEncontrado = buscadorAnticipos.buscar(descripcion);
 
             if (numeroAnticipoEncontrado != null) {
-                // Insertar anticipo
-                AnticipoAplicado anticipo = AnticipoAplicado.builder()
+                anticipos.add(AnticipoAplicado.builder()
                         .ventaRucVendedor(factura.getRucVendedor())
                         .ventaCodigoFactura(factura.getCodigoFactura())
                         .anticipoRucVendedor(factura.getRucVendedor())
                         .anticipoCodigoFactura(numeroAnticipoEncontrado)
                         .montoAplicado(valorUnitario)
-                        .build();
-                futures.add(anticipoAplicadoRepository.insert(anticipo));
+                        .build());
             }
 
-            // Insertar detalle
-            DetalleFactura detalle = DetalleFactura.builder()
+            detalles.add(DetalleFactura.builder()
                     .rucVendedor(factura.getRucVendedor())
                     .codigoFactura(factura.getCodigoFactura())
-                    .idProducto(null)
+                    .idProducto(indiceProductos.resolver(descripcion))
                     .cantidad(cantidad)
                     .unidadMedida(detalleItem.getUnidadMedida())
                     .codigo(null)
                     .descripcion(descripcion)
                     .valorUnitario(valorUnitario)
-                    .build();
-            futures.add(detalleFacturaRepository.insert(detalle));
+                    .build());
         }
 
-        // Esperar a que todos los inserts terminen
-        return Future.all(futures).mapEmpty();
+        return FacturaCompleta.builder()
+                .factura(factura)
+                .detalles(detalles)
+                .anticipos(anticipos)
+                .build();
+    }
+
+    /**
+     * Asigna el producto del catálogo a las líneas que no lo tienen (ver IndiceProductos)
+     */
+    void asignarProductos(FacturaCompleta completa) {
+        indiceProductos.asignar(completa.getDetalles());
+    }
+
+    private String obtenerFacturaAnticipoStr(FacturaRequest.FacturaData facturaData) {
+        if (facturaData.getFacturaAnticipo() != null && !facturaData.getFacturaAnticipo().isEmpty()) {
+            return facturaData.getFacturaAnticipo().stream()
+                .map(FacturaRequest.FacturaAnticipoItem::getNumero)
+                .filter(numero -> numero != null && !numero.isEmpty())
+                .collect(Collectors.joining(", "));
+        }
+        return null;
+    }
+
+    /**
+     * Obtiene la lista de números de anticipos desde los datos de la factura
+     */
+    List<String> obtenerNumerosAnticipos(FacturaRequest.FacturaData facturaData) {
+        if (facturaData.getFacturaAnticipo() == null || facturaData.getFacturaAnticipo().isEmpty()) {
+            return new ArrayList<>();
+        }
+        return facturaData.getFacturaAnticipo().stream()
+                .map(FacturaRequest.FacturaAnticipoItem::getNumero)
+                .filter(numero -> numero != null && !numero.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Inserta la cabecera y luego sus detalles y anticipos, todo sobre la misma conexión.
+     * Es el mismo paso para los dos modos de ejecución: FacturaBloqueanteService lo espera dentro de su transacción
+     */
+    Future<Void> insertarFactura(SqlClient conn, FacturaCompleta completa) {
+        return facturaRepository.insert(conn, completa.getFactura())
+                .compose(v -> insertarDetallesDirectamente(conn, completa));
+    }
+
+    /**
+     * Inserta directamente los detalles y anticipos sin validaciones, con un batch por tabla,
+     * actualiza los saldos de anticipos y los resúmenes de ventas, y deja el evento en la bandeja
+     */
+    private Future<Void> insertarDetallesDirectamente(SqlClient conn, FacturaCompleta completa) {
+        return detalleFacturaRepository.insertBatch(conn, completa.getDetalles())
+                .compose(v -> anticipoAplicadoRepository.insertBatch(conn, completa.getAnticipos()))
+                .compose(v -> saldosAnticipos.registrar(conn, List.of(completa)))
+                .compose(v -> resumenVentas.acumular(conn, List.of(completa)))
+                .compose(v -> bandejaEventos.registrar(conn, List.of(completa)));
     }
 }
@@ -0,0 +1,174 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.dto.EventoImportacion;
+import com.pe.jm.alpaca.dto.FacturaRequest;
+import com.pe.jm.alpaca.dto.FacturaResponse;
+import com.pe.jm.alpaca.repository.SobrecargaException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Importación masiva de facturas en formato NDJSON (una FacturaRequest por línea).
+ * Lee y convierte línea a línea y registra por lotes con procesarFacturas; como mucho
+ * hay lotesEnVuelo lotes pendientes, y mientras tanto no se lee más entrada. Así la
+ * memoria no depende del tamaño del archivo y la cola de espera del pool no se desborda.
+ * Si el limitador rechaza un lote por sobrecarga, se espera lo que indica y se reenvía:
+ * la importación se frena en lugar de perder facturas.
+ */
+@Service
+public class ImportacionFacturaService {
+
+    private final FacturaService facturaService;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader lectorFactura;
+    private final int tamanoLote;
+    private final int lotesEnVuelo;
+
+    public ImportacionFacturaService(FacturaService facturaService,
+                                     ObjectMapper objectMapper,
+                                     @Value("${importacion.lote.tamano:200}") int tamanoLote,
+                                     @Value("${importacion.lotes-en-vuelo:2}") int lotesEnVuelo) {
+        this.facturaService = facturaService;
+        this.objectMapper = objectMapper;
+        this.lectorFactura = objectMapper.readerFor(FacturaRequest.class);
+        this.tamanoLote = tamanoLote;
+        this.lotesEnVuelo = lotesEnVuelo;
+    }
+
+    /**
+     * Lee facturas NDJSON de la entrada y escribe en la salida, también en NDJSON,
+     * un evento por cada línea con error, uno de progreso por lote y uno de resumen final
+     */
+    public void importar(InputStream entrada, OutputStream salida) throws IOException {
+        BufferedReader lector = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+        ArrayDeque<LoteEnVuelo> pendientes = new ArrayDeque<>();
+        Progreso progreso = new Progreso();
+
+        List<FacturaRequest> lote = new ArrayList<>(tamanoLote);
+        List<Long> lineasLote = new ArrayList<>(tamanoLote);
+        String linea;
+        while ((linea = lector.readLine()) != null) {
+            progreso.lineasLeidas++;
+            if (linea.isBlank()) {
+                continue;
+            }
+
+            try {
+                lote.add(lectorFactura.readValue(linea));
+                lineasLote.add(progreso.lineasLeidas);
+            } catch (JacksonException e) {
+                progreso.fallidas++;
+                escribir(salida, EventoImportacion.builder()
+                        .tipo("error")
+                        .linea(progreso.lineasLeidas)
+                        .mensaje("JSON inválido: " + e.getOriginalMessage())
+                        .build());
+            }
+
+            if (lote.size() == tamanoLote) {
+                if (pendientes.size() == lotesEnVuelo) {
+                    escribirResultados(pendientes.poll(), progreso, salida);
+                }
+                pendientes.add(new LoteEnVuelo(lineasLote, lote, facturaService.procesarFacturas(lote)));
+                lote = new ArrayList<>(tamanoLote);
+                lineasLote = new ArrayList<>(tamanoLote);
+            }
+        }
+
+        if (!lote.isEmpty()) {
+            pendientes.add(new LoteEnVuelo(lineasLote, lote, facturaService.procesarFacturas(lote)));
+        }
+        while (!pendientes.isEmpty()) {
+            escribirResultados(pendientes.poll(), progreso, salida);
+        }
+
+        escribir(salida, progreso.evento("resumen"));
+        salida.flush();
+    }
+
+    /**
+     * Espera un lote (bloquea el hilo de la petición, no el event loop) y escribe sus resultados
+     */
+    private void escribirResultados(LoteEnVuelo lote, Progreso progreso, OutputStream salida) throws IOException {
+        List<FacturaResponse> respuestas = esperarAdmitido(lote);
+        for (int i = 0; i < respuestas.size(); i++) {
+            FacturaResponse respuesta = respuestas.get(i);
+            if (respuesta.isSuccess()) {
+                progreso.exitosas++;
+            } else {
+                progreso.fallidas++;
+                escribir(salida, EventoImportacion.builder()
+                        .tipo("error")
+                        .linea(lote.lineas().get(i))
+                        .codigoFactura(respuesta.getCodigoFactura())
+                        .mensaje(respuesta.getMessage())
+                        .build());
+            }
+        }
+        escribir(salida, progreso.evento("progreso"));
+        salida.flush();
+    }
+
+    /**
+     * Espera las respuestas del lote, reenviándolo mientras el limitador lo rechace por sobrecarga
+     */
+    private List<FacturaResponse> esperarAdmitido(LoteEnVuelo lote) throws InterruptedIOException {
+        CompletableFuture<List<FacturaResponse>> respuestas = lote.respuestas();
+        while (true) {
+            try {
+                return respuestas.join();
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof SobrecargaException sobrecarga)) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(sobrecarga.getReintentarEnSegundos() * 1000L);
+                } catch (InterruptedException interrumpido) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Importación interrumpida");
+                }
+                respuestas = facturaService.procesarFacturas(lote.facturas());
+            }
+        }
+    }
+
+    private void escribir(OutputStream salida, EventoImportacion evento) throws IOException {
+        salida.write(objectMapper.writeValueAsBytes(evento));
+        salida.write('\n');
+    }
+
+    private record LoteEnVuelo(List<Long> lineas, List<FacturaRequest> facturas,
+                               CompletableFuture<List<FacturaResponse>> respuestas) {
+    }
+
+    private static final class Progreso {
+        private long lineasLeidas;
+        private long exitosas;
+        private long fallidas;
+
+        private EventoImportacion evento(String tipo) {
+            return EventoImportacion.builder()
+                    .tipo(tipo)
+                    .lineasLeidas(lineasLeidas)
+                    .exitosas(exitosas)
+                    .fallidas(fallidas)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.DetalleFactura;
+import com.pe.jm.alpaca.model.Producto;
+import com.pe.jm.alpaca.repository.ProductoRepository;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Índice en memoria del catálogo AA_PRODUCTO para asignar idProducto a las líneas de detalle sin
+ * consultar MySQL por cada línea. Las descripciones se normalizan a palabras (mayúsculas, sin tildes
+ * ni signos, sin artículos y preposiciones) y un producto corresponde a la línea si todas sus palabras
+ * aparecen en la descripción de la línea; si varios corresponden gana el más específico (más palabras)
+ * y, a igualdad, el de menor id. El catálogo se carga al arrancar y se recarga cada
+ * productos.indice.refresco-ms; si una carga falla se sigue usando el índice anterior.
+ */
+@Slf4j
+@Component
+public class IndiceProductos {
+
+    private static final Set<String> PALABRAS_VACIAS = Set.of(
+            "DE", "DEL", "LA", "LAS", "EL", "LOS", "Y", "E", "EN", "CON", "PARA", "POR", "AL", "A");
+
+    private final ProductoRepository productoRepository;
+    private final Vertx vertx;
+    private final long refrescoMs;
+
+    private volatile Indice indice = Indice.VACIO;
+    private long temporizador = -1;
+
+    public IndiceProductos(ProductoRepository productoRepository,
+                           Vertx vertx,
+                           Metricas metricas,
+                           @Value("${productos.indice.refresco-ms:300000}") long refrescoMs) {
+        this.productoRepository = productoRepository;
+        this.vertx = vertx;
+        this.refrescoMs = refrescoMs;
+        metricas.gauge("alpaca.productos.indexados", "Productos en el índice de descripciones",
+                () -> indice.productos.length);
+    }
+
+    /**
+     * La primera carga no se espera: hasta que termine las líneas quedan sin producto
+     */
+    @PostConstruct
+    public void iniciar() {
+        cargar();
+        if (refrescoMs > 0) {
+            temporizador = vertx.setPeriodic(refrescoMs, id -> cargar());
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (temporizador >= 0) {
+            vertx.cancelTimer(temporizador);
+        }
+    }
+
+    /**
+     * Lee el catálogo y reemplaza el índice; si falla se conserva el anterior
+     */
+    public Future<Void> cargar() {
+        Future<List<Producto>> productos;
+        try {
+            productos = productoRepository.findAll();
+        } catch (RuntimeException e) {
+            productos = Future.failedFuture(e);
+        }
+        return productos
+                .onSuccess(lista -> {
+                    indice = Indice.de(lista);
+                    log.debug("Índice de productos cargado: {} productos", indice.productos.length);
+                })
+                .onFailure(error -> log.warn("No se pudo cargar el catálogo de productos, se mantiene el índice "
+                        + "anterior ({} productos): {}", indice.productos.length, error.getMessage()))
+                .mapEmpty();
+    }
+
+    /**
+     * @return el id del producto que corresponde a la descripción, o null si ninguno
+     */
+    public Long resolver(String descripcion) {
+        return indice.resolver(descripcion);
+    }
+
+    /**
+     * @return el producto del catálogo cargado con ese id, o null si no está
+     */
+    public Producto producto(Long idProducto) {
+        return idProducto == null ? null : indice.porId.get(idProducto);
+    }
+
+    /**
+     * Asigna idProducto a las líneas que aún no lo tienen
+     */
+    public void asignar(List<DetalleFactura> detalles) {
+        Indice actual = indice;
+        if (actual.productos.length == 0) {
+            return;
+        }
+        for (DetalleFactura detalle : detalles) {
+            if (detalle.getIdProducto() == null) {
+                detalle.setIdProducto(actual.resolver(detalle.getDescripcion()));
+            }
+        }
+    }
+
+    static Set<String> palabras(String texto) {
+        Set<String> palabras = new LinkedHashSet<>();
+        if (texto == null) {
+            return palabras;
+        }
+        String normalizado = Normalizer.normalize(texto, Normalizer.Form.NFD).toUpperCase(Locale.ROOT);
+        StringBuilder palabra = new StringBuilder();
+        for (int i = 0; i <= normalizado.length(); i++) {
+            char c = i < normalizado.length() ? normalizado.charAt(i) : ' ';
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                palabra.append(c);
+            } else if (!palabra.isEmpty()) {
+                String p = palabra.toString();
+                if (!PALABRAS_VACIAS.contains(p)) {
+                    palabras.add(p);
+                }
+                palabra.setLength(0);
+            }
+        }
+        return palabras;
+    }
+
+    /**
+     * Cada producto se indexa solo bajo su palabra menos frecuente del catálogo: al resolver, cada
+     * producto candidato se revisa una sola vez y las listas por palabra quedan cortas.
+     */
+    private static final class Indice {
+
+        static final Indice VACIO = new Indice(new Producto[0], new String[0][], Map.of(), Map.of());
+
+        // Ordenados por id, así a igual número de palabras gana el menor
+        final Producto[] productos;
+        final String[][] palabrasPorProducto;
+        final Map<String, int[]> porPalabraAncla;
+        final Map<Long, Producto> porId;
+
+        private Indice(Producto[] productos, String[][] palabrasPorProducto, Map<String, int[]> porPalabraAncla,
+                       Map<Long, Producto> porId) {
+            this.productos = productos;
+            this.palabrasPorProducto = palabrasPorProducto;
+            this.porPalabraAncla = porPalabraAncla;
+            this.porId = porId;
+        }
+
+        static Indice de(List<Producto> catalogo) {
+            List<Producto> ordenados = new ArrayList<>(catalogo);
+            ordenados.removeIf(producto -> producto.getIdProducto() == null);
+            ordenados.sort((a, b) -> Long.compare(a.getIdProducto(), b.getIdProducto()));
+
+            List<Producto> indexados = new ArrayList<>(ordenados.size());
+            List<String[]> palabras = new ArrayList<>(ordenados.size());
+            Map<String, Integer> frecuencia = new HashMap<>();
+            Map<Long, Producto> porId = new HashMap<>(ordenados.size() * 2);
+            for (Producto producto : ordenados) {
+                porId.put(producto.getIdProducto(), producto);
+                Set<String> delProducto = palabras(producto.getDescripcion());
+                if (delProducto.isEmpty()) {
+                    continue;
+                }
+                indexados.add(producto);
+                palabras.add(delProducto.toArray(new String[0]));
+                for (String palabra : delProducto) {
+                    frecuencia.merge(palabra, 1, Integer::sum);
+                }
+            }
+
+            Map<String, List<Integer>> anclas = new HashMap<>();
+            for (int i = 0; i < palabras.size(); i++) {
+                String ancla = null;
+                for (String palabra : palabras.get(i)) {
+                    if (ancla == null || frecuencia.get(palabra) < frecuencia.get(ancla)) {
+                        ancla = palabra;
+                    }
+                }
+                anclas.computeIfAbsent(ancla, k -> new ArrayList<>()).add(i);
+            }
+            Map<String, int[]> porPalabraAncla = new HashMap<>(anclas.size() * 2);
+            anclas.forEach((palabra, lista) ->
+                    porPalabraAncla.put(palabra, lista.stream().mapToInt(Integer::intValue).toArray()));
+
+            return new Indice(indexados.toArray(new Producto[0]), palabras.toArray(new String[0][]), porPalabraAncla,
+                    porId);
+        }
+
+        Long resolver(String descripcion) {
+            if (productos.length == 0 || descripcion == null) {
+                return null;
+            }
+            Set<String> deLaLinea = new HashSet<>(palabras(descripcion));
+            int mejor = -1;
+            for (String palabra : deLaLinea) {
+                int[] candidatos = porPalabraAncla.get(palabra);
+                if (candidatos == null) {
+                    continue;
+                }
+                for (int candidato : candidatos) {
+                    if (contieneTodas(deLaLinea, palabrasPorProducto[candidato]) && esMejor(candidato, mejor)) {
+                        mejor = candidato;
+                    }
+                }
+            }
+            return mejor < 0 ? null : productos[mejor].getIdProducto();
+        }
+
+        private boolean esMejor(int candidato, int mejor) {
+            if (mejor < 0) {
+                return true;
+            }
+            int diferencia = palabrasPorProducto[candidato].length - palabrasPorProducto[mejor].length;
+            return diferencia > 0 || (diferencia == 0 && candidato < mejor);
+        }
+
+        private static boolean contieneTodas(Set<String> deLaLinea, String[] delProducto) {
+            return deLaLinea.containsAll(Arrays.asList(delProducto));
+        }
+    }
+}
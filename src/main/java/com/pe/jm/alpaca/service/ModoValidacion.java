@@ -0,0 +1,29 @@
+package com.pe.jm.alpaca.service;
+
+/**
+ * Qué hacer con las reglas de ValidadorFactura en un registro (parámetro validacion=strict|warn|off)
+ */
+public enum ModoValidacion {
+    /** Rechaza la factura si alguna regla falla, antes de consultar MySQL */
+    STRICT,
+    /** Registra la factura igual y devuelve el resultado de las reglas en la respuesta */
+    WARN,
+    /** No evalúa las reglas */
+    OFF;
+
+    /**
+     * @return el modo, o null si no se indicó
+     * @throws IllegalArgumentException si el valor no es strict, warn ni off
+     */
+    public static ModoValidacion de(String valor) {
+        if (valor == null || valor.isBlank()) {
+            return null;
+        }
+        for (ModoValidacion modo : values()) {
+            if (modo.name().equalsIgnoreCase(valor.trim())) {
+                return modo;
+            }
+        }
+        throw new IllegalArgumentException("Modo de validación inválido: " + valor + " (strict, warn u off)");
+    }
+}
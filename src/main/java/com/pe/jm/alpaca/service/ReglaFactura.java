@@ -0,0 +1,43 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.model.Factura;
+
+import java.math.BigDecimal;
+
+/**
+ * Regla sobre los totales de una factura, evaluada en memoria por ValidadorFactura.
+ * Además de sus reglas base, ValidadorFactura aplica los beans que implementen esta interfaz.
+ */
+public interface ReglaFactura {
+
+    /**
+     * Identificador de la regla en la respuesta
+     */
+    String nombre();
+
+    default boolean aplica(Factura factura) {
+        return true;
+    }
+
+    /**
+     * @return null si la factura cumple la regla; si no, el mensaje de error
+     */
+    String evaluar(Factura factura, Totales totales);
+
+    /**
+     * Totales calculados en una sola pasada por las líneas de detalle: subTotalVentas suma
+     * cantidad * valorUnitario de las líneas que no son anticipo y anticiposAplicados suma el
+     * valorUnitario de las que sí lo son
+     */
+    record Totales(BigDecimal subTotalVentas, BigDecimal anticiposAplicados, BigDecimal primerValorUnitario,
+                   int lineas, BigDecimal tolerancia) {
+
+        /**
+         * @return true si el valor declarado difiere del calculado a lo más en la tolerancia de redondeo
+         */
+        public boolean coincide(BigDecimal calculado, BigDecimal declarado) {
+            return calculado != null && declarado != null
+                    && calculado.subtract(declarado).abs().compareTo(tolerancia) <= 0;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.DetalleFactura;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import com.pe.jm.alpaca.model.Producto;
+import com.pe.jm.alpaca.model.ResumenVenta;
+import com.pe.jm.alpaca.repository.ResumenVentaRepository;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.sqlclient.SqlClient;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resúmenes de ventas por vendedor, cliente, día/mes, moneda y tipo de fibra/calidad del producto
+ * (resumenes.enabled). Cada registro suma sus líneas a AA_RESUMEN_VENTA_DIARIO y AA_RESUMEN_VENTA_MENSUAL
+ * en la misma transacción, así los tableros leen unas cientos de filas en lugar de recorrer las facturas.
+ * Las facturas anuladas y las líneas que aplican un anticipo no se suman; las líneas sin producto
+ * quedan con fibra y calidad vacías.
+ * reconstruir recalcula meses completos desde las facturas, por ejemplo tras cambiar el catálogo.
+ */
+@Slf4j
+@Service
+public class ResumenVentasService {
+
+    private final ResumenVentaRepository resumenVentaRepository;
+    private final IndiceProductos indiceProductos;
+    private final Vertx vertx;
+    private final boolean habilitado;
+    private final long intervaloReconstruccionMs;
+    private long temporizador = -1;
+
+    public ResumenVentasService(ResumenVentaRepository resumenVentaRepository,
+                                IndiceProductos indiceProductos,
+                                Vertx vertx,
+                                @Value("${resumenes.enabled:false}") boolean habilitado,
+                                @Value("${resumenes.reconstruccion.intervalo-ms:0}") long intervaloReconstruccionMs) {
+        this.resumenVentaRepository = resumenVentaRepository;
+        this.indiceProductos = indiceProductos;
+        this.vertx = vertx;
+        this.habilitado = habilitado;
+        this.intervaloReconstruccionMs = intervaloReconstruccionMs;
+    }
+
+    /**
+     * Si hay intervalo, recalcula periódicamente el mes en curso y el anterior
+     */
+    @PostConstruct
+    public void iniciar() {
+        if (habilitado && intervaloReconstruccionMs > 0) {
+            temporizador = vertx.setPeriodic(intervaloReconstruccionMs, id -> {
+                LocalDate hoy = LocalDate.now();
+                reconstruir(hoy.minusMonths(1), hoy).whenComplete((filas, error) -> {
+                    if (error != null) {
+                        log.warn("No se pudieron reconstruir los resúmenes de ventas: {}", error.getMessage());
+                    }
+                });
+            });
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (temporizador >= 0) {
+            vertx.cancelTimer(temporizador);
+        }
+    }
+
+    /**
+     * Suma las facturas a los resúmenes usando la conexión de la transacción que las inserta
+     */
+    public Future<Void> acumular(SqlClient conn, List<FacturaCompleta> facturas) {
+        if (!habilitado) {
+            return Future.succeededFuture();
+        }
+        List<ResumenVenta> diarios = incrementos(facturas);
+        return resumenVentaRepository.acumular(conn, diarios, porMes(diarios));
+    }
+
+    /**
+     * Recalcula los meses completos que tocan el rango [desde, hasta], uno por transacción
+     * @return filas diarias generadas
+     */
+    public CompletableFuture<Long> reconstruir(LocalDate desde, LocalDate hasta) {
+        Future<Long> cadena = Future.succeededFuture(0L);
+        for (LocalDate mes = desde.withDayOfMonth(1); !mes.isAfter(hasta); mes = mes.plusMonths(1)) {
+            LocalDate primerDia = mes;
+            cadena = cadena.compose(total -> resumenVentaRepository.recalcularMes(primerDia).map(filas -> total + filas));
+        }
+        return cadena.toCompletionStage().toCompletableFuture();
+    }
+
+    public CompletableFuture<List<ResumenVenta>> consultar(boolean mensual, Long rucVendedor, LocalDate desde,
+                                                           LocalDate hasta, Long rucCliente, String tipoMoneda,
+                                                           int limite) {
+        return resumenVentaRepository.consultar(mensual, rucVendedor, desde, hasta, rucCliente, tipoMoneda, limite)
+                .toCompletionStage()
+                .toCompletableFuture();
+    }
+
+    /**
+     * Incrementos diarios agrupados por clave y ordenados, para tomar los bloqueos de fila siempre en el mismo orden.
+     * Las líneas que aplican un anticipo no se suman: su cantidad es 1 UNIDAD y su importe negativo, y ya se
+     * contaron en la factura ANTICIPO. Se reconocen igual que al registrar (BuscadorAnticipos).
+     */
+    List<ResumenVenta> incrementos(List<FacturaCompleta> facturas) {
+        Map<Clave, ResumenVenta> porClave = new TreeMap<>();
+        for (FacturaCompleta completa : facturas) {
+            Factura factura = completa.getFactura();
+            if ("1".equals(factura.getAnulacion())) {
+                continue;
+            }
+            BuscadorAnticipos buscador = buscadorAnticipos(completa.getAnticipos());
+            Set<Clave> deLaFactura = new HashSet<>();
+            for (DetalleFactura detalle : completa.getDetalles()) {
+                if (buscador != null && buscador.buscar(detalle.getDescripcion()) != null) {
+                    continue;
+                }
+                Producto producto = indiceProductos.producto(detalle.getIdProducto());
+                Clave clave = new Clave(factura.getRucVendedor(), factura.getFechaEmision(), factura.getRucCliente(),
+                        vacioSiNulo(factura.getTipoMoneda()),
+                        producto == null ? "" : vacioSiNulo(producto.getTipoFibra()),
+                        producto == null ? "" : vacioSiNulo(producto.getTipoCalidad()));
+                ResumenVenta resumen = porClave.computeIfAbsent(clave, Clave::resumenVacio);
+                resumen.setCantidad(resumen.getCantidad().add(detalle.getCantidad()));
+                resumen.setImporte(resumen.getImporte().add(detalle.getCantidad()
+                        .multiply(detalle.getValorUnitario())
+                        .setScale(4, RoundingMode.HALF_UP)));
+                resumen.setLineas(resumen.getLineas() + 1);
+                if (deLaFactura.add(clave)) {
+                    resumen.setFacturas(resumen.getFacturas() + 1);
+                }
+            }
+        }
+        return new ArrayList<>(porClave.values());
+    }
+
+    /**
+     * @return null si la factura no aplica anticipos
+     */
+    private static BuscadorAnticipos buscadorAnticipos(List<AnticipoAplicado> anticipos) {
+        if (anticipos == null || anticipos.isEmpty()) {
+            return null;
+        }
+        List<String> numeros = new ArrayList<>(anticipos.size());
+        for (AnticipoAplicado anticipo : anticipos) {
+            numeros.add(anticipo.getAnticipoCodigoFactura());
+        }
+        return BuscadorAnticipos.de(numeros);
+    }
+
+    private static List<ResumenVenta> porMes(List<ResumenVenta> diarios) {
+        Map<Clave, ResumenVenta> porClave = new TreeMap<>();
+        for (ResumenVenta diario : diarios) {
+            Clave clave = new Clave(diario.getRucVendedor(), diario.getFecha().withDayOfMonth(1),
+                    diario.getRucCliente(), diario.getTipoMoneda(), diario.getTipoFibra(), diario.getTipoCalidad());
+            ResumenVenta mensual = porClave.computeIfAbsent(clave, Clave::resumenVacio);
+            mensual.setCantidad(mensual.getCantidad().add(diario.getCantidad()));
+            mensual.setImporte(mensual.getImporte().add(diario.getImporte()));
+            mensual.setLineas(mensual.getLineas() + diario.getLineas());
+            mensual.setFacturas(mensual.getFacturas() + diario.getFacturas());
+        }
+        return new ArrayList<>(porClave.values());
+    }
+
+    private static String vacioSiNulo(String valor) {
+        return valor == null ? "" : valor;
+    }
+
+    private record Clave(Long rucVendedor, LocalDate fecha, Long rucCliente, String tipoMoneda, String tipoFibra,
+                         String tipoCalidad) implements Comparable<Clave> {
+
+        private static final Comparator<Clave> ORDEN = Comparator
+                .comparing(Clave::rucVendedor)
+                .thenComparing(Clave::fecha)
+                .thenComparing(Clave::rucCliente)
+                .thenComparing(Clave::tipoMoneda)
+                .thenComparing(Clave::tipoFibra)
+                .thenComparing(Clave::tipoCalidad);
+
+        @Override
+        public int compareTo(Clave otra) {
+            return ORDEN.compare(this, otra);
+        }
+
+        ResumenVenta resumenVacio() {
+            return new ResumenVenta(rucVendedor, fecha, rucCliente, tipoMoneda, tipoFibra, tipoCalidad,
+                    BigDecimal.ZERO, BigDecimal.ZERO, 0, 0);
+        }
+    }
+}
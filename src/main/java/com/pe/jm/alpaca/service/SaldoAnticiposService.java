@@ -0,0 +1,305 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.cache.LruCache;
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import com.pe.jm.alpaca.model.SaldoAnticipo;
+import com.pe.jm.alpaca.repository.SaldoAnticipoRepository;
+import io.vertx.core.Future;
+import io.vertx.sqlclient.SqlClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Saldo de las facturas de anticipo (anticipos.saldo.enabled). Registrar un anticipo abre su saldo con el
+ * importe total y cada venta que lo aplica lo descuenta, en la misma transacción que la factura.
+ * Antes de la transacción el monto se aparta en una caché de saldos: una venta que excede el saldo se
+ * rechaza sin ir a MySQL, y dos ventas del mismo anticipo solo compiten por el candado de su franja,
+ * sin bloquear a las de otros anticipos. Si la transacción falla el monto apartado se devuelve.
+ * La caché es solo un atajo: el UPDATE ... WHERE SALDO >= ? de SaldoAnticipoRepository es el que decide.
+ */
+@Slf4j
+@Service
+public class SaldoAnticiposService {
+
+    private static final int FRANJAS = 64;
+
+    private final SaldoAnticipoRepository saldoAnticipoRepository;
+    private final boolean habilitado;
+    private final LruCache<String, Disponible> saldos;
+    private final Object[] candados = new Object[FRANJAS];
+
+    public SaldoAnticiposService(SaldoAnticipoRepository saldoAnticipoRepository,
+                                 @Value("${anticipos.saldo.enabled:false}") boolean habilitado,
+                                 @Value("${anticipos.saldo.cache.max-size:10000}") int maxSize,
+                                 @Value("${anticipos.saldo.cache.ttl:300000}") long ttl) {
+        this.saldoAnticipoRepository = saldoAnticipoRepository;
+        this.habilitado = habilitado;
+        this.saldos = new LruCache<>(maxSize, ttl);
+        for (int i = 0; i < FRANJAS; i++) {
+            candados[i] = new Object();
+        }
+    }
+
+    public static String clave(Long rucVendedor, String codigoFactura) {
+        return rucVendedor + "|" + codigoFactura;
+    }
+
+    /**
+     * Aparta el saldo que consumirá cada factura, en el orden de la lista: un anticipo de la lista ya se
+     * puede aplicar en las facturas que vienen después. Las facturas anuladas no apartan nada.
+     * @return una reserva por factura, en el mismo orden; con errores si no alcanza el saldo
+     */
+    public Future<List<Reserva>> reservar(List<FacturaCompleta> facturas) {
+        if (!habilitado) {
+            return Future.succeededFuture(ninguna(facturas.size()));
+        }
+
+        // Cargar en la caché los anticipos aplicados que no están ni se registran en esta lista
+        Map<String, AnticipoAplicado> porCargar = new LinkedHashMap<>();
+        List<String> nuevos = new ArrayList<>();
+        for (FacturaCompleta completa : facturas) {
+            Factura factura = completa.getFactura();
+            if (anulada(factura)) {
+                continue;
+            }
+            if (esAnticipo(factura)) {
+                nuevos.add(clave(factura.getRucVendedor(), factura.getCodigoFactura()));
+            }
+            for (AnticipoAplicado anticipo : completa.getAnticipos()) {
+                String clave = clave(anticipo.getAnticipoRucVendedor(), anticipo.getAnticipoCodigoFactura());
+                if (!nuevos.contains(clave) && saldos.get(clave) == null) {
+                    porCargar.putIfAbsent(clave, anticipo);
+                }
+            }
+        }
+
+        List<Future<Void>> cargas = new ArrayList<>(porCargar.size());
+        porCargar.forEach((clave, anticipo) -> cargas.add(saldoAnticipoRepository
+                .findByAnticipo(anticipo.getAnticipoRucVendedor(), anticipo.getAnticipoCodigoFactura())
+                .map(saldo -> {
+                    if (saldo != null) {
+                        synchronized (candado(clave)) {
+                            if (saldos.get(clave) == null) {
+                                saldos.put(clave, new Disponible(saldo.getSaldo()));
+                            }
+                        }
+                    }
+                    return null;
+                })));
+
+        return Future.all(cargas).map(v -> {
+            List<Reserva> reservas = new ArrayList<>(facturas.size());
+            for (FacturaCompleta completa : facturas) {
+                reservas.add(apartar(completa));
+            }
+            return reservas;
+        });
+    }
+
+    private Reserva apartar(FacturaCompleta completa) {
+        Factura factura = completa.getFactura();
+        if (anulada(factura)) {
+            return Reserva.NINGUNA;
+        }
+        if (esAnticipo(factura)) {
+            // Saldo provisional hasta que se confirme el registro; si falla, liberar lo quita
+            String clave = clave(factura.getRucVendedor(), factura.getCodigoFactura());
+            synchronized (candado(clave)) {
+                saldos.put(clave, new Disponible(factura.getImporteTotal()));
+            }
+            return new Reserva(List.of(), List.of(), clave);
+        }
+        if (completa.getAnticipos().isEmpty()) {
+            return Reserva.NINGUNA;
+        }
+
+        // Una venta puede aplicar el mismo anticipo en varias líneas
+        Map<String, AnticipoAplicado> porAnticipo = new LinkedHashMap<>();
+        Map<String, BigDecimal> montos = new LinkedHashMap<>();
+        for (AnticipoAplicado anticipo : completa.getAnticipos()) {
+            String clave = clave(anticipo.getAnticipoRucVendedor(), anticipo.getAnticipoCodigoFactura());
+            porAnticipo.putIfAbsent(clave, anticipo);
+            montos.merge(clave, anticipo.getMontoAplicado().abs(), BigDecimal::add);
+        }
+
+        List<String> errores = new ArrayList<>();
+        List<Apartado> apartados = new ArrayList<>(montos.size());
+        montos.forEach((clave, monto) -> {
+            AnticipoAplicado anticipo = porAnticipo.get(clave);
+            synchronized (candado(clave)) {
+                Disponible disponible = saldos.get(clave);
+                if (disponible == null) {
+                    errores.add(mensajeAnticipoInexistente(anticipo));
+                } else if (disponible.monto.compareTo(monto) < 0) {
+                    errores.add(mensajeSaldoInsuficiente(anticipo, disponible.monto, monto));
+                } else {
+                    disponible.monto = disponible.monto.subtract(monto);
+                    apartados.add(new Apartado(clave, disponible, monto));
+                }
+            }
+        });
+
+        Reserva reserva = new Reserva(errores, apartados, null);
+        if (!errores.isEmpty()) {
+            liberar(reserva);
+            return new Reserva(errores, List.of(), null);
+        }
+        return reserva;
+    }
+
+    /**
+     * Devuelve a la caché lo apartado por una factura que no se registró
+     */
+    public void liberar(Reserva reserva) {
+        for (Apartado apartado : reserva.apartados()) {
+            synchronized (candado(apartado.clave())) {
+                apartado.disponible().monto = apartado.disponible().monto.add(apartado.monto());
+            }
+        }
+        if (reserva.anticipoNuevo() != null) {
+            synchronized (candado(reserva.anticipoNuevo())) {
+                saldos.invalidar(reserva.anticipoNuevo());
+            }
+        }
+    }
+
+    /**
+     * Abre el saldo de los anticipos y descuenta el de los anticipos aplicados, con la conexión de la
+     * transacción que registra las facturas. Falla si algún anticipo no existe o no tiene saldo suficiente.
+     */
+    public Future<Void> registrar(SqlClient conn, List<FacturaCompleta> facturas) {
+        if (!habilitado) {
+            return Future.succeededFuture();
+        }
+
+        List<SaldoAnticipo> nuevos = new ArrayList<>();
+        List<AnticipoAplicado> consumos = new ArrayList<>();
+        for (FacturaCompleta completa : facturas) {
+            Factura factura = completa.getFactura();
+            if (anulada(factura)) {
+                continue;
+            }
+            if (esAnticipo(factura)) {
+                nuevos.add(SaldoAnticipo.builder()
+                        .rucVendedor(factura.getRucVendedor())
+                        .codigoFactura(factura.getCodigoFactura())
+                        .montoTotal(factura.getImporteTotal())
+                        .build());
+            }
+            consumos.addAll(completa.getAnticipos());
+        }
+        // Siempre en el mismo orden de filas, para que dos transacciones no se bloqueen mutuamente
+        consumos.sort(Comparator.comparing(AnticipoAplicado::getAnticipoRucVendedor)
+                .thenComparing(AnticipoAplicado::getAnticipoCodigoFactura));
+
+        return saldoAnticipoRepository.insertBatch(conn, nuevos)
+                .compose(v -> saldoAnticipoRepository.consumirBatch(conn, consumos))
+                .compose(rechazados -> {
+                    if (rechazados.isEmpty()) {
+                        return Future.succeededFuture();
+                    }
+                    // La caché estaba desactualizada: que la próxima reserva lea el saldo de MySQL
+                    for (AnticipoAplicado anticipo : rechazados) {
+                        String clave = clave(anticipo.getAnticipoRucVendedor(), anticipo.getAnticipoCodigoFactura());
+                        synchronized (candado(clave)) {
+                            saldos.invalidar(clave);
+                        }
+                    }
+                    AnticipoAplicado primero = rechazados.get(0);
+                    return Future.failedFuture(new IllegalStateException("El anticipo " + primero.getAnticipoCodigoFactura()
+                            + " del vendedor con RUC " + primero.getAnticipoRucVendedor()
+                            + " no está registrado o no tiene saldo suficiente"));
+                });
+    }
+
+    public CompletableFuture<SaldoAnticipo> consultar(Long rucVendedor, String codigoFactura) {
+        return saldoAnticipoRepository.consultar(rucVendedor, codigoFactura)
+                .toCompletionStage()
+                .toCompletableFuture();
+    }
+
+    public CompletableFuture<List<SaldoAnticipo>> consultarPorVendedor(Long rucVendedor, boolean soloConSaldo,
+                                                                       int limite) {
+        return saldoAnticipoRepository.findByVendedor(rucVendedor, soloConSaldo, limite)
+                .toCompletionStage()
+                .toCompletableFuture();
+    }
+
+    /**
+     * Recalcula los saldos desde las facturas y vacía la caché
+     * @return anticipos con saldo
+     */
+    public CompletableFuture<Long> reconstruir() {
+        return saldoAnticipoRepository.reconstruir()
+                .onSuccess(anticipos -> {
+                    saldos.invalidarTodo();
+                    log.info("Saldos de anticipos reconstruidos: {} anticipos", anticipos);
+                })
+                .toCompletionStage()
+                .toCompletableFuture();
+    }
+
+    String mensajeAnticipoInexistente(AnticipoAplicado anticipo) {
+        return "El anticipo " + anticipo.getAnticipoCodigoFactura() + " del vendedor con RUC "
+                + anticipo.getAnticipoRucVendedor() + " no está registrado";
+    }
+
+    String mensajeSaldoInsuficiente(AnticipoAplicado anticipo, BigDecimal saldo, BigDecimal monto) {
+        return "El anticipo " + anticipo.getAnticipoCodigoFactura() + " del vendedor con RUC "
+                + anticipo.getAnticipoRucVendedor() + " no tiene saldo suficiente (saldo: " + saldo
+                + ", monto a aplicar: " + monto + ")";
+    }
+
+    private Object candado(String clave) {
+        return candados[Math.floorMod(clave.hashCode(), FRANJAS)];
+    }
+
+    private static boolean anulada(Factura factura) {
+        return "1".equals(factura.getAnulacion());
+    }
+
+    private static boolean esAnticipo(Factura factura) {
+        return "ANTICIPO".equals(factura.getTipo());
+    }
+
+    private static List<Reserva> ninguna(int cantidad) {
+        List<Reserva> reservas = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            reservas.add(Reserva.NINGUNA);
+        }
+        return reservas;
+    }
+
+    /**
+     * Saldo en caché de un anticipo; solo se modifica con el candado de su franja
+     */
+    private static final class Disponible {
+        BigDecimal monto;
+
+        Disponible(BigDecimal monto) {
+            this.monto = monto;
+        }
+    }
+
+    private record Apartado(String clave, Disponible disponible, BigDecimal monto) {
+    }
+
+    /**
+     * Lo apartado por una factura; errores vacío si se puede registrar
+     */
+    public record Reserva(List<String> errores, List<Apartado> apartados, String anticipoNuevo) {
+
+        public static final Reserva NINGUNA = new Reserva(List.of(), List.of(), null);
+    }
+}
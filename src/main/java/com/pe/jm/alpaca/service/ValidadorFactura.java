@@ -0,0 +1,175 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.dto.ResultadoRegla;
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.DetalleFactura;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Reglas de totales de facturas VENTA y ANTICIPO, sin acceso a base de datos: una pasada por las
+ * líneas de detalle calcula subtotal y anticipos, y cada regla compara esos totales con los declarados.
+ * Los montos se comparan con la tolerancia facturas.validacion.tolerancia, porque los totales
+ * declarados vienen redondeados a 2 decimales y cantidad * valorUnitario no.
+ */
+@Component
+public class ValidadorFactura {
+
+    private static final List<ReglaFactura> REGLAS_BASE = List.of(
+            new Regla("venta.anticipos", "VENTA", (factura, totales) ->
+                    totales.coincide(totales.anticiposAplicados().abs(), factura.getAnticipos()) ? null
+                            : String.format("Error en factura de tipo VENTA: La suma de anticipos aplicados (%s) "
+                                    + "no coincide con el campo anticipos de la factura (%s).",
+                            totales.anticiposAplicados().abs(), factura.getAnticipos())),
+            new Regla("venta.subtotal", "VENTA", (factura, totales) ->
+                    totales.coincide(totales.subTotalVentas(), factura.getSubTotalVentas()) ? null
+                            : String.format("Error en factura de tipo VENTA: El subtotal de ventas calculado (%s) "
+                                    + "no coincide con el campo subtotalVentas de la factura (%s).",
+                            totales.subTotalVentas(), factura.getSubTotalVentas())),
+            new Regla("venta.valor-venta", "VENTA", (factura, totales) -> {
+                BigDecimal valorVentaCalculado = totales.subTotalVentas().subtract(totales.anticiposAplicados().abs());
+                return totales.coincide(valorVentaCalculado, factura.getValorVenta())
+                        && totales.coincide(valorVentaCalculado, factura.getImporteTotal()) ? null
+                        : String.format("Error en factura de tipo VENTA: El valor de venta calculado (%s) "
+                                + "no coincide con el campo valorVenta (%s) o el importeTotal (%s) de la factura.",
+                        valorVentaCalculado, factura.getValorVenta(), factura.getImporteTotal());
+            }),
+            new Regla("anticipo.importe", "ANTICIPO", (factura, totales) -> {
+                if (totales.lineas() == 0) {
+                    return null;
+                }
+                BigDecimal valorDetalle = totales.primerValorUnitario().abs();
+                return totales.coincide(factura.getSubTotalVentas(), factura.getImporteTotal())
+                        && totales.coincide(valorDetalle, factura.getSubTotalVentas()) ? null
+                        : String.format("Error en factura de tipo ANTICIPO: El subtotal y el importe total "
+                                + "deben ser iguales al valor del detalle. Valores: valorDetalle=%s, "
+                                + "importeTotal=%s, subTotalVentas=%s",
+                        valorDetalle, factura.getImporteTotal(), factura.getSubTotalVentas());
+            })
+    );
+
+    private final ModoValidacion modoPorDefecto;
+    private final BigDecimal tolerancia;
+    private final List<ReglaFactura> reglas;
+
+    public ValidadorFactura(@Value("${facturas.validacion.modo:off}") String modoPorDefecto,
+                            @Value("${facturas.validacion.tolerancia:0.01}") BigDecimal tolerancia,
+                            List<ReglaFactura> reglasAdicionales) {
+        ModoValidacion modo = ModoValidacion.de(modoPorDefecto);
+        this.modoPorDefecto = modo == null ? ModoValidacion.OFF : modo;
+        this.tolerancia = tolerancia;
+        this.reglas = new ArrayList<>(REGLAS_BASE.size() + reglasAdicionales.size());
+        this.reglas.addAll(REGLAS_BASE);
+        this.reglas.addAll(reglasAdicionales);
+    }
+
+    /**
+     * @param modo el pedido en la solicitud, o null para usar facturas.validacion.modo
+     */
+    public Validacion validar(FacturaCompleta completa, ModoValidacion modo) {
+        ModoValidacion efectivo = modo == null ? modoPorDefecto : modo;
+        if (efectivo == ModoValidacion.OFF) {
+            return Validacion.NINGUNA;
+        }
+
+        Factura factura = completa.getFactura();
+        ReglaFactura.Totales totales = null;
+        List<ResultadoRegla> resultados = new ArrayList<>(reglas.size());
+        for (ReglaFactura regla : reglas) {
+            if (!regla.aplica(factura)) {
+                continue;
+            }
+            if (totales == null) {
+                totales = totales(completa);
+            }
+            String error = regla.evaluar(factura, totales);
+            resultados.add(ResultadoRegla.builder()
+                    .regla(regla.nombre())
+                    .valido(error == null)
+                    .mensaje(error)
+                    .build());
+        }
+        return new Validacion(efectivo, resultados);
+    }
+
+    /**
+     * Recorre las líneas una vez; solo busca números de anticipo si la factura aplica alguno
+     */
+    ReglaFactura.Totales totales(FacturaCompleta completa) {
+        List<AnticipoAplicado> anticipos = completa.getAnticipos();
+        BuscadorAnticipos buscador = null;
+        if (anticipos != null && !anticipos.isEmpty()) {
+            List<String> numeros = new ArrayList<>(anticipos.size());
+            for (AnticipoAplicado anticipo : anticipos) {
+                numeros.add(anticipo.getAnticipoCodigoFactura());
+            }
+            buscador = BuscadorAnticipos.de(numeros);
+        }
+
+        BigDecimal subTotalVentas = BigDecimal.ZERO;
+        BigDecimal anticiposAplicados = BigDecimal.ZERO;
+        BigDecimal primerValorUnitario = null;
+        List<DetalleFactura> detalles = completa.getDetalles();
+        for (DetalleFactura detalle : detalles) {
+            if (primerValorUnitario == null) {
+                primerValorUnitario = detalle.getValorUnitario();
+            }
+            if (buscador != null && buscador.buscar(detalle.getDescripcion()) != null) {
+                anticiposAplicados = anticiposAplicados.add(detalle.getValorUnitario());
+            } else {
+                subTotalVentas = subTotalVentas.add(detalle.getCantidad().multiply(detalle.getValorUnitario()));
+            }
+        }
+        return new ReglaFactura.Totales(subTotalVentas, anticiposAplicados, primerValorUnitario, detalles.size(),
+                tolerancia);
+    }
+
+    /**
+     * Resultado de validar una factura; resultados es null si no se validó
+     */
+    public record Validacion(ModoValidacion modo, List<ResultadoRegla> resultados) {
+
+        public static final Validacion NINGUNA = new Validacion(ModoValidacion.OFF, null);
+
+        /**
+         * @return true si el modo es STRICT y alguna regla falló
+         */
+        public boolean rechaza() {
+            return modo == ModoValidacion.STRICT && !errores().isEmpty();
+        }
+
+        public List<String> errores() {
+            if (resultados == null) {
+                return List.of();
+            }
+            List<String> errores = new ArrayList<>(0);
+            for (ResultadoRegla resultado : resultados) {
+                if (!resultado.isValido()) {
+                    errores.add(resultado.getMensaje());
+                }
+            }
+            return errores;
+        }
+    }
+
+    private record Regla(String nombre, String tipo, BiFunction<Factura, ReglaFactura.Totales, String> evaluacion)
+            implements ReglaFactura {
+
+        @Override
+        public boolean aplica(Factura factura) {
+            return tipo.equals(factura.getTipo());
+        }
+
+        @Override
+        public String evaluar(Factura factura, Totales totales) {
+            return evaluacion.apply(factura, totales);
+        }
+    }
+}
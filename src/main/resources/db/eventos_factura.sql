@@ -0,0 +1,20 @@
+-- Bandeja de salida de eventos de facturas (eventos.enabled=true). Cada registro agrega una fila en la misma
+-- transacción que la factura; RelayEventos las publica en orden de ID por vendedor y las marca PUBLICADO,
+-- o FALLIDO si agotan eventos.relay.max-intentos. Las publicadas se borran tras eventos.retencion-horas.
+
+CREATE TABLE IF NOT EXISTS AA_EVENTO_FACTURA (
+    ID BIGINT NOT NULL AUTO_INCREMENT,
+    RUC_VENDEDOR BIGINT NOT NULL,
+    CODIGO_FACTURA VARCHAR(20) NOT NULL,
+    TIPO_EVENTO VARCHAR(40) NOT NULL,
+    DATOS TEXT NOT NULL,
+    FECHA_CREACION DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    ESTADO VARCHAR(10) NOT NULL DEFAULT 'PENDIENTE',
+    INTENTOS INT NOT NULL DEFAULT 0,
+    PROXIMO_INTENTO DATETIME(3) NULL,
+    ULTIMO_ERROR VARCHAR(500) NULL,
+    PUBLICADO_EN DATETIME(3) NULL,
+    PRIMARY KEY (ID),
+    KEY IDX_EVENTO_ESTADO (ESTADO, ID),
+    KEY IDX_EVENTO_ESPERA (ESTADO, PROXIMO_INTENTO, RUC_VENDEDOR)
+) ENGINE=InnoDB;
@@ -0,0 +1,36 @@
+-- Resúmenes de ventas (resumenes.enabled=true). FECHA es el día de emisión en la diaria y el primer día
+-- del mes en la mensual. TIPO_MONEDA, TIPO_FIBRA y TIPO_CALIDAD valen '' cuando no se conocen.
+-- Para llenarlas con las facturas existentes: POST /api/resumenes/ventas/reconstruir?desde=...&hasta=...
+
+CREATE TABLE IF NOT EXISTS AA_RESUMEN_VENTA_DIARIO (
+    RUC_VENDEDOR BIGINT NOT NULL,
+    FECHA DATE NOT NULL,
+    RUC_CLIENTE BIGINT NOT NULL,
+    TIPO_MONEDA VARCHAR(50) NOT NULL DEFAULT '',
+    TIPO_FIBRA VARCHAR(100) NOT NULL DEFAULT '',
+    TIPO_CALIDAD VARCHAR(100) NOT NULL DEFAULT '',
+    CANTIDAD DECIMAL(18,4) NOT NULL DEFAULT 0,
+    IMPORTE DECIMAL(18,4) NOT NULL DEFAULT 0,
+    LINEAS INT NOT NULL DEFAULT 0,
+    FACTURAS INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (RUC_VENDEDOR, FECHA, RUC_CLIENTE, TIPO_MONEDA, TIPO_FIBRA, TIPO_CALIDAD),
+    KEY IDX_RESUMEN_DIARIO_FECHA (FECHA)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS AA_RESUMEN_VENTA_MENSUAL (
+    RUC_VENDEDOR BIGINT NOT NULL,
+    FECHA DATE NOT NULL,
+    RUC_CLIENTE BIGINT NOT NULL,
+    TIPO_MONEDA VARCHAR(50) NOT NULL DEFAULT '',
+    TIPO_FIBRA VARCHAR(100) NOT NULL DEFAULT '',
+    TIPO_CALIDAD VARCHAR(100) NOT NULL DEFAULT '',
+    CANTIDAD DECIMAL(18,4) NOT NULL DEFAULT 0,
+    IMPORTE DECIMAL(18,4) NOT NULL DEFAULT 0,
+    LINEAS INT NOT NULL DEFAULT 0,
+    FACTURAS INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (RUC_VENDEDOR, FECHA, RUC_CLIENTE, TIPO_MONEDA, TIPO_FIBRA, TIPO_CALIDAD),
+    KEY IDX_RESUMEN_MENSUAL_FECHA (FECHA)
+) ENGINE=InnoDB;
+
+-- Acelera la reconstrucción por mes
+-- CREATE INDEX IDX_FACTURA_FECHA ON AA_FACTURA (FECHA_EMISION);
@@ -0,0 +1,17 @@
+-- Saldo de cada factura de tipo ANTICIPO (anticipos.saldo.enabled=true). MONTO_TOTAL es el IMPORTE_TOTAL del
+-- anticipo; cada venta que lo aplica suma ABS(MONTO_APLICADO) a MONTO_APLICADO y lo resta de SALDO.
+-- Las facturas anuladas no tienen saldo ni consumen saldo.
+-- Para llenarla con las facturas existentes: POST /api/anticipos/saldos/reconstruir
+
+CREATE TABLE IF NOT EXISTS AA_SALDO_ANTICIPO (
+    ANTICIPO_RUC_VENDEDOR BIGINT NOT NULL,
+    ANTICIPO_CODIGO_FACTURA VARCHAR(20) NOT NULL,
+    MONTO_TOTAL DECIMAL(14,2) NOT NULL,
+    MONTO_APLICADO DECIMAL(14,2) NOT NULL DEFAULT 0,
+    SALDO DECIMAL(14,2) NOT NULL,
+    APLICACIONES INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (ANTICIPO_RUC_VENDEDOR, ANTICIPO_CODIGO_FACTURA)
+) ENGINE=InnoDB;
+
+-- Acelera la reconstrucción
+-- CREATE INDEX IDX_ANTICIPO_APLICADO_ANTICIPO ON AA_ANTICIPO_APLICADO (ANTICIPO_RUC_VENDEDOR, ANTICIPO_CODIGO_FACTURA);
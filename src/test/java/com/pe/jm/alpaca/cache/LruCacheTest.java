@@ -0,0 +1,35 @@
+package com.pe.jm.alpaca.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LruCacheTest {
+
+	@Test
+	void descartaLaEntradaUsadaHaceMasTiempo() {
+		LruCache<String, Integer> cache = new LruCache<>(2, 60000);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		// Leer "a" la vuelve la más reciente: al llenarse sale "b"
+		assertEquals(1, cache.get("a"));
+		cache.put("c", 3);
+
+		assertNull(cache.get("b"));
+		assertEquals(1, cache.get("a"));
+		assertEquals(3, cache.get("c"));
+	}
+
+	@Test
+	void lasEntradasExpiranTrasElTtl() throws Exception {
+		LruCache<String, Integer> cache = new LruCache<>(10, 30);
+		cache.put("a", 1);
+		assertEquals(1, cache.get("a"));
+
+		Thread.sleep(60);
+		assertNull(cache.get("a"));
+		cache.put("a", 2);
+		assertEquals(2, cache.get("a"));
+	}
+}
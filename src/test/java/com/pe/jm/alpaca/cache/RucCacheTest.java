@@ -0,0 +1,55 @@
+package com.pe.jm.alpaca.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RucCacheTest {
+
+	private static final long RUC = 20608587030L;
+
+	@Test
+	void unaColisionReemplazaLaEntradaAnteriorSinConfundirlas() {
+		long otro = rucQueColisiona(RUC);
+		RucCache cache = new RucCache(2, 60000, 60000);
+		cache.registrar(RUC, true);
+		cache.registrar(otro, false);
+
+		assertNull(cache.consultar(RUC));
+		assertEquals(Boolean.FALSE, cache.consultar(otro));
+
+		// Invalidar el RUC desplazado no borra al que ocupa su posición
+		cache.invalidar(RUC);
+		assertEquals(Boolean.FALSE, cache.consultar(otro));
+	}
+
+	@Test
+	void lasEntradasNegativasExpiranAntesQueLasPositivas() throws Exception {
+		RucCache cache = new RucCache(1024, 60000, 30);
+		cache.registrar(RUC, true);
+		cache.registrar(20101019265L, false);
+		assertEquals(Boolean.FALSE, cache.consultar(20101019265L));
+
+		Thread.sleep(60);
+		assertEquals(Boolean.TRUE, cache.consultar(RUC));
+		assertNull(cache.consultar(20101019265L));
+
+		cache.invalidar(RUC);
+		assertNull(cache.consultar(RUC));
+	}
+
+	/**
+	 * Busca un RUC que cae en la misma posición que ruc en una tabla de dos entradas
+	 */
+	private static long rucQueColisiona(long ruc) {
+		for (long candidato = ruc + 1; ; candidato++) {
+			RucCache cache = new RucCache(2, 60000, 60000);
+			cache.registrar(ruc, true);
+			cache.registrar(candidato, true);
+			if (cache.consultar(ruc) == null) {
+				return candidato;
+			}
+		}
+	}
+}
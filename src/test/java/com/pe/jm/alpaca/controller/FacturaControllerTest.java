@@ -0,0 +1,30 @@
+package com.pe.jm.alpaca.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FacturaControllerTest {
+
+	// Sin servicios: una petición que llegue a consultar la base de datos falla con NullPointerException
+	private final FacturaController controlador = new FacturaController(null, null, null, null, null, null, "async");
+
+	@Test
+	void elCursorDelListadoSeRechazaSiLlegaAMedias() throws Exception {
+		LocalDate desde = LocalDate.of(2024, 1, 1);
+		LocalDate hasta = LocalDate.of(2024, 12, 31);
+
+		MockHttpServletResponse soloFecha = new MockHttpServletResponse();
+		controlador.listarFacturas(20608587030L, desde, hasta, LocalDate.of(2024, 6, 1), null, null, soloFecha);
+		assertEquals(400, soloFecha.getStatus());
+		assertEquals("despuesDeFecha y despuesDeCodigo deben enviarse juntos", soloFecha.getErrorMessage());
+
+		MockHttpServletResponse soloCodigo = new MockHttpServletResponse();
+		controlador.listarFacturas(20608587030L, desde, hasta, null, "V001-1", null, soloCodigo);
+		assertEquals(400, soloCodigo.getStatus());
+		assertEquals("despuesDeFecha y despuesDeCodigo deben enviarse juntos", soloCodigo.getErrorMessage());
+	}
+}
@@ -0,0 +1,76 @@
+package com.pe.jm.alpaca.eventos;
+
+import com.pe.jm.alpaca.model.EventoFactura;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DestinoWebhookTest {
+
+	private final AtomicInteger estado = new AtomicInteger(200);
+	private final AtomicReference<String> recibido = new AtomicReference<>();
+	private HttpServer servidor;
+	private DestinoWebhook destino;
+
+	@BeforeEach
+	void iniciar() throws IOException {
+		servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		servidor.createContext("/eventos", intercambio -> {
+			recibido.set(new String(intercambio.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+			intercambio.sendResponseHeaders(estado.get(), -1);
+			intercambio.close();
+		});
+		servidor.start();
+		destino = new DestinoWebhook(JsonMapper.builder().build(),
+				"http://127.0.0.1:" + servidor.getAddress().getPort() + "/eventos", 2000);
+	}
+
+	@AfterEach
+	void detener() {
+		servidor.stop(0);
+	}
+
+	@Test
+	void publicaLosEventosEnOrdenConLosDatosSinEscapar() throws Exception {
+		destino.publicar(List.of(evento(1L, "V001-1"), evento(2L, "V001-2")))
+				.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+		String cuerpo = recibido.get();
+		assertEquals(0, cuerpo.indexOf("[{\"id\":1,"));
+		assertTrue(cuerpo.indexOf("\"codigoFactura\":\"V001-1\"") < cuerpo.indexOf("\"codigoFactura\":\"V001-2\""));
+		assertTrue(cuerpo.contains("\"datos\":{\"codigoFactura\":\"V001-2\"}"));
+	}
+
+	@Test
+	void unaRespuestaFueraDe2xxEsUnFallo() {
+		estado.set(500);
+
+		assertThrows(Exception.class, () -> destino.publicar(List.of(evento(1L, "V001-1")))
+				.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS));
+	}
+
+	private static EventoFactura evento(Long id, String codigo) {
+		return EventoFactura.builder()
+				.id(id)
+				.rucVendedor(20608587030L)
+				.codigoFactura(codigo)
+				.tipoEvento(BandejaEventos.FACTURA_REGISTRADA)
+				.datos("{\"codigoFactura\":\"" + codigo + "\"}")
+				.intentos(0)
+				.build();
+	}
+}
@@ -0,0 +1,183 @@
+package com.pe.jm.alpaca.eventos;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.EventoFactura;
+import com.pe.jm.alpaca.repository.EventoFacturaRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RelayEventosTest {
+
+	private static final Long RUC_A = 20608587030L;
+	private static final Long RUC_B = 20101019265L;
+
+	private final Vertx vertx = Vertx.vertx();
+	private final BandejaEnMemoria bandeja = new BandejaEnMemoria();
+	private final DestinoGrabado destino = new DestinoGrabado();
+
+	@AfterEach
+	void cerrar() {
+		vertx.close();
+	}
+
+	@Test
+	void publicaCadaVendedorEnOrdenYEnUnaSolaLlamada() {
+		RelayEventos relay = relay(10);
+		bandeja.agregar(1L, RUC_A, 2L, RUC_B, 3L, RUC_A);
+
+		relay.ciclo();
+
+		assertEquals(List.of(List.of(1L, 3L), List.of(2L)), destino.envios);
+		assertEquals(Set.of(1L, 2L, 3L), bandeja.publicados);
+	}
+
+	@Test
+	void reintentaSoloLaCabeceraConEsperaExponencialYLosSiguientesEsperan() {
+		RelayEventos relay = relay(10);
+		bandeja.agregar(1L, RUC_A, 2L, RUC_A);
+		destino.fallar.add(RUC_A);
+
+		relay.ciclo();
+		// Mientras espera el reintento, el vendedor no se lee
+		relay.ciclo();
+		bandeja.vencerEsperas();
+		relay.ciclo();
+		bandeja.vencerEsperas();
+		relay.ciclo();
+
+		assertEquals(List.of(List.of(1L, 2L), List.of(1L), List.of(1L)), destino.envios);
+		assertEquals(List.of(1000L, 2000L, 4000L), bandeja.esperas);
+
+		destino.fallar.clear();
+		bandeja.vencerEsperas();
+		relay.ciclo();
+		relay.ciclo();
+
+		assertEquals(List.of(List.of(1L, 2L), List.of(1L), List.of(1L), List.of(1L), List.of(2L)), destino.envios);
+		assertEquals(Set.of(1L, 2L), bandeja.publicados);
+	}
+
+	@Test
+	void trasMaxIntentosElEventoQuedaFallidoYElVendedorContinua() {
+		RelayEventos relay = relay(2);
+		bandeja.agregar(1L, RUC_A, 2L, RUC_B, 3L, RUC_A);
+		destino.fallarEvento = 1L;
+
+		relay.ciclo();
+		bandeja.vencerEsperas();
+		relay.ciclo();
+		relay.ciclo();
+
+		assertEquals(Set.of(1L), bandeja.fallidos);
+		assertEquals(Set.of(2L, 3L), bandeja.publicados);
+		assertEquals(List.of(List.of(1L, 3L), List.of(2L), List.of(1L), List.of(3L)), destino.envios);
+	}
+
+	private RelayEventos relay(int maxIntentos) {
+		StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("destino", destino));
+		RelayEventos relay = new RelayEventos(bandeja, beans.getBeanProvider(DestinoEventos.class), vertx,
+				new Metricas(new SimpleMeterRegistry()), true, true, 3_600_000, 0, 100, 1000, maxIntentos, 0);
+		relay.iniciar();
+		return relay;
+	}
+
+	/**
+	 * Emula PENDIENTES_SQL: pendientes en orden de ID, sin los vendedores cuya cabecera espera un reintento
+	 */
+	private static final class BandejaEnMemoria extends EventoFacturaRepository {
+		final Map<Long, EventoFactura> pendientes = new LinkedHashMap<>();
+		final Set<Long> esperando = new HashSet<>();
+		final Set<Long> publicados = new HashSet<>();
+		final Set<Long> fallidos = new HashSet<>();
+		final List<Long> esperas = new ArrayList<>();
+
+		BandejaEnMemoria() {
+			super(null, null);
+		}
+
+		void agregar(Object... idsYRucs) {
+			for (int i = 0; i < idsYRucs.length; i += 2) {
+				Long id = (Long) idsYRucs[i];
+				pendientes.put(id, EventoFactura.builder().id(id).rucVendedor((Long) idsYRucs[i + 1])
+						.codigoFactura("V001-" + id).tipoEvento(BandejaEventos.FACTURA_REGISTRADA).datos("{}").intentos(0).build());
+			}
+		}
+
+		void vencerEsperas() {
+			esperando.clear();
+		}
+
+		@Override
+		public Future<List<EventoFactura>> pendientes(long margenMs, int limite) {
+			Set<Long> bloqueados = new HashSet<>();
+			for (Long id : esperando) {
+				bloqueados.add(pendientes.get(id).getRucVendedor());
+			}
+			List<EventoFactura> eventos = new ArrayList<>();
+			for (EventoFactura evento : pendientes.values()) {
+				if (!bloqueados.contains(evento.getRucVendedor()) && eventos.size() < limite) {
+					eventos.add(copia(evento));
+				}
+			}
+			return Future.succeededFuture(eventos);
+		}
+
+		@Override
+		public Future<Long> marcarPublicados(List<EventoFactura> eventos) {
+			for (EventoFactura evento : eventos) {
+				pendientes.remove(evento.getId());
+				publicados.add(evento.getId());
+			}
+			return Future.succeededFuture((long) eventos.size());
+		}
+
+		@Override
+		public Future<Void> marcarFallido(Long id, boolean definitivo, long esperaMs, String error) {
+			EventoFactura evento = pendientes.get(id);
+			evento.setIntentos(evento.getIntentos() + 1);
+			if (definitivo) {
+				pendientes.remove(id);
+				fallidos.add(id);
+			} else {
+				esperando.add(id);
+				esperas.add(esperaMs);
+			}
+			return Future.succeededFuture();
+		}
+
+		private static EventoFactura copia(EventoFactura evento) {
+			return EventoFactura.builder().id(evento.getId()).rucVendedor(evento.getRucVendedor())
+					.codigoFactura(evento.getCodigoFactura()).tipoEvento(evento.getTipoEvento())
+					.datos(evento.getDatos()).intentos(evento.getIntentos()).build();
+		}
+	}
+
+	private static final class DestinoGrabado implements DestinoEventos {
+		final List<List<Long>> envios = new ArrayList<>();
+		final Set<Long> fallar = new HashSet<>();
+		Long fallarEvento;
+
+		@Override
+		public Future<Void> publicar(List<EventoFactura> eventos) {
+			List<Long> ids = eventos.stream().map(EventoFactura::getId).toList();
+			envios.add(ids);
+			if (fallar.contains(eventos.get(0).getRucVendedor()) || ids.contains(fallarEvento)) {
+				return Future.failedFuture("destino no disponible");
+			}
+			return Future.succeededFuture();
+		}
+	}
+}
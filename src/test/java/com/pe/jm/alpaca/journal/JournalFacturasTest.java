@@ -0,0 +1,76 @@
+package com.pe.jm.alpaca.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JournalFacturasTest {
+
+	@TempDir
+	Path directorio;
+
+	@Test
+	void alReabrirRetomaDesdeElOffsetYDescartaLaLineaIncompleta() throws Exception {
+		try (JournalFacturas journal = abrir(1 << 20)) {
+			agregar(journal, "a", "b", "c");
+			JournalFacturas.Lectura lectura = journal.leer(2);
+			assertEquals(List.of("a", "b"), textos(lectura));
+			journal.confirmar(lectura.offsetSiguiente());
+		}
+
+		// Caída a mitad de escritura: el último registro quedó sin salto de línea
+		Path archivo = directorio.resolve("facturas.journal");
+		Files.write(archivo, "{\"incomp".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		try (JournalFacturas journal = abrir(1 << 20)) {
+			assertEquals(6, Files.size(archivo));
+			agregar(journal, "d");
+			JournalFacturas.Lectura lectura = journal.leer(10);
+			assertEquals(List.of("c", "d"), textos(lectura));
+			assertEquals(8, lectura.offsetSiguiente());
+		}
+	}
+
+	@Test
+	void compactaCuandoTodoFueConsumidoYReanudaDesdeCero() throws Exception {
+		Path archivo = directorio.resolve("facturas.journal");
+		try (JournalFacturas journal = abrir(4)) {
+			agregar(journal, "a", "b");
+			journal.confirmar(journal.leer(10).offsetSiguiente());
+
+			// El siguiente grupo encuentra el journal consumido y por encima de maxBytes
+			agregar(journal, "c");
+			assertEquals(2, Files.size(archivo));
+			JournalFacturas.Lectura lectura = journal.leer(10);
+			assertEquals(List.of("c"), textos(lectura));
+			assertEquals(2, lectura.offsetSiguiente());
+		}
+
+		try (JournalFacturas journal = abrir(4)) {
+			assertEquals(List.of("c"), textos(journal.leer(10)));
+		}
+	}
+
+	private JournalFacturas abrir(long maxBytes) throws Exception {
+		return new JournalFacturas(directorio, 16, 100, maxBytes);
+	}
+
+	private static void agregar(JournalFacturas journal, String... registros) {
+		for (String registro : registros) {
+			journal.agregar(registro.getBytes(StandardCharsets.UTF_8)).join();
+		}
+	}
+
+	private static List<String> textos(JournalFacturas.Lectura lectura) {
+		return lectura.registros().stream()
+				.map(registro -> new String(registro, StandardCharsets.UTF_8))
+				.toList();
+	}
+}
@@ -0,0 +1,61 @@
+package com.pe.jm.alpaca.repository;
+
+import io.vertx.mysqlclient.MySQLPool;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class EnrutadorLecturasTest {
+
+	private static final String FACTURA = EnrutadorLecturas.claveFactura(20608587030L, "V001-1");
+	private static final String CLIENTE = EnrutadorLecturas.claveCliente(20101019265L);
+
+	private final MySQLPool primario = pool();
+	private final MySQLPool replica = pool();
+
+	@Test
+	void loEscritoSeLeeDelPrimarioHastaQueTerminaLaVentana() throws Exception {
+		EnrutadorLecturas lecturas = new EnrutadorLecturas(primario, replica, 100, 50);
+		assertSame(replica, lecturas.lectura(FACTURA));
+		assertSame(replica, lecturas.lectura(List.of(FACTURA, CLIENTE)));
+
+		lecturas.registrarEscritura(FACTURA);
+		assertSame(primario, lecturas.lectura(FACTURA));
+		assertSame(replica, lecturas.lectura(CLIENTE));
+		// Basta con que una de las claves se haya escrito para ir al primario
+		assertSame(primario, lecturas.lectura(List.of(CLIENTE, FACTURA)));
+		assertSame(replica, lecturas.lectura(List.of(CLIENTE)));
+		// Los listados siempre toleran el retraso de la réplica
+		assertSame(replica, lecturas.lectura());
+
+		Thread.sleep(80);
+		assertSame(replica, lecturas.lectura(FACTURA));
+		assertSame(replica, lecturas.lectura(List.of(CLIENTE, FACTURA)));
+	}
+
+	@Test
+	void sinReplicaTodoVaAlPrimario() {
+		EnrutadorLecturas lecturas = new EnrutadorLecturas(primario, primario, 100, 60000);
+		lecturas.registrarEscritura(FACTURA);
+		assertSame(primario, lecturas.lectura(FACTURA));
+		assertSame(primario, lecturas.lectura(CLIENTE));
+		assertSame(primario, lecturas.lectura(List.of(FACTURA, CLIENTE)));
+		assertSame(primario, lecturas.lectura());
+	}
+
+	/**
+	 * Pool sin conexión: el enrutador solo lo compara por identidad
+	 */
+	private static MySQLPool pool() {
+		return (MySQLPool) Proxy.newProxyInstance(MySQLPool.class.getClassLoader(), new Class<?>[] {MySQLPool.class},
+				(proxy, metodo, args) -> switch (metodo.getName()) {
+					case "equals" -> proxy == args[0];
+					case "hashCode" -> System.identityHashCode(proxy);
+					case "toString" -> "pool";
+					default -> throw new UnsupportedOperationException(metodo.getName());
+				});
+	}
+}
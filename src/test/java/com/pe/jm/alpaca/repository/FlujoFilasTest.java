@@ -0,0 +1,221 @@
+package com.pe.jm.alpaca.repository;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.PreparedStatement;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowStream;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlujoFilasTest {
+
+	private static final int FILAS = 10;
+	private static final int CAPACIDAD = 4;
+
+	@Test
+	void siElConsumidorVaciaLaColaAntesDeLaPausaElCursorSeReanudaIgual() throws Exception {
+		Vertx vertx = Vertx.vertx();
+		try {
+			Context contexto = vertx.getOrCreateContext();
+			FilasSimuladas stream = new FilasSimuladas(contexto, FILAS);
+			CountDownLatch conexionCerrada = new CountDownLatch(1);
+			Pool pool = pool(stream, conexionCerrada);
+			AtomicInteger mapeadas = new AtomicInteger();
+			CountDownLatch colaLlena = new CountDownLatch(1);
+			CountDownLatch consumidorAlDia = new CountDownLatch(1);
+
+			CompletableFuture<FlujoFilas<Integer>> abierto = new CompletableFuture<>();
+			contexto.runOnContext(v -> {
+				FlujoFilas<Integer> flujo = FlujoFilas.abrir(pool, "SELECT", Tuple.tuple(), CAPACIDAD, row -> mapeadas.incrementAndGet());
+				pausarTarde(flujo, colaLlena, consumidorAlDia);
+				abierto.complete(flujo);
+			});
+
+			try (FlujoFilas<Integer> flujo = abierto.join()) {
+				assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+					colaLlena.await();
+					for (int i = 1; i <= FILAS; i++) {
+						assertEquals(i, flujo.siguiente());
+						if (i == CAPACIDAD) {
+							consumidorAlDia.countDown();
+						}
+					}
+					assertNull(flujo.siguiente());
+				});
+			}
+
+			// La conexión se libera en el event loop justo después de entregar el fin
+			assertTrue(conexionCerrada.await(5, TimeUnit.SECONDS));
+			assertTrue(stream.pausas > 0);
+		} finally {
+			vertx.close().toCompletionStage().toCompletableFuture().join();
+		}
+	}
+
+	/**
+	 * Reproduce la carrera de la pausa: la primera vez que el event loop ve la cola llena, avisa y espera a
+	 * que el consumidor la vacíe (viendo el cursor aún sin pausar) antes de seguir hacia la pausa
+	 */
+	private static void pausarTarde(FlujoFilas<?> flujo, CountDownLatch colaLlena, CountDownLatch consumidorAlDia) {
+		LinkedBlockingQueue<Object> cola = new LinkedBlockingQueue<>() {
+			@Override
+			public int size() {
+				int tamano = super.size();
+				if (tamano >= CAPACIDAD && Context.isOnEventLoopThread() && consumidorAlDia.getCount() > 0) {
+					colaLlena.countDown();
+					try {
+						consumidorAlDia.await(5, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return tamano;
+			}
+		};
+		try {
+			Field campo = FlujoFilas.class.getDeclaredField("cola");
+			campo.setAccessible(true);
+			campo.set(flujo, cola);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Pool pool(FilasSimuladas stream, CountDownLatch conexionCerrada) {
+		PreparedStatement preparedStatement = simulado(PreparedStatement.class, (metodo, args) ->
+				metodo.equals("createStream") ? stream : null);
+		SqlConnection conexion = simulado(SqlConnection.class, (metodo, args) -> switch (metodo) {
+			case "begin" -> Future.succeededFuture();
+			case "prepare" -> Future.succeededFuture(preparedStatement);
+			case "close" -> {
+				conexionCerrada.countDown();
+				yield Future.succeededFuture();
+			}
+			default -> null;
+		});
+		return simulado(Pool.class, (metodo, args) ->
+				metodo.equals("getConnection") ? Future.succeededFuture(conexion) : null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T simulado(Class<T> tipo, BiFunction<String, Object[], Object> respuesta) {
+		return (T) Proxy.newProxyInstance(tipo.getClassLoader(), new Class<?>[] {tipo}, (proxy, metodo, args) -> {
+			Object resultado = respuesta.apply(metodo.getName(), args);
+			if (resultado == null && metodo.getReturnType() != void.class) {
+				throw new UnsupportedOperationException(metodo.getName());
+			}
+			return resultado;
+		});
+	}
+
+	/**
+	 * Cursor que emite una fila por tarea del event loop, para que el consumidor lea entre filas
+	 */
+	private static final class FilasSimuladas implements RowStream<Row> {
+
+		private final Context contexto;
+		private final int total;
+		private Handler<Row> filas;
+		private Handler<Void> fin;
+		private int enviadas;
+		private int pausas;
+		private boolean pausado;
+		private boolean programado;
+		private boolean cerrado;
+
+		FilasSimuladas(Context contexto, int total) {
+			this.contexto = contexto;
+			this.total = total;
+		}
+
+		private void emitir() {
+			if (programado) {
+				return;
+			}
+			programado = true;
+			contexto.runOnContext(v -> {
+				programado = false;
+				if (pausado || cerrado) {
+					return;
+				}
+				if (enviadas == total) {
+					cerrado = true;
+					fin.handle(null);
+					return;
+				}
+				enviadas++;
+				filas.handle(null);
+				emitir();
+			});
+		}
+
+		@Override
+		public RowStream<Row> exceptionHandler(Handler<Throwable> handler) {
+			return this;
+		}
+
+		@Override
+		public RowStream<Row> handler(Handler<Row> handler) {
+			filas = handler;
+			emitir();
+			return this;
+		}
+
+		@Override
+		public RowStream<Row> pause() {
+			pausado = true;
+			pausas++;
+			return this;
+		}
+
+		@Override
+		public RowStream<Row> resume() {
+			pausado = false;
+			emitir();
+			return this;
+		}
+
+		@Override
+		public RowStream<Row> endHandler(Handler<Void> handler) {
+			fin = handler;
+			return this;
+		}
+
+		@Override
+		public RowStream<Row> fetch(long cantidad) {
+			return resume();
+		}
+
+		@Override
+		public Future<Void> close() {
+			cerrado = true;
+			return Future.succeededFuture();
+		}
+
+		@Override
+		public void close(Handler<AsyncResult<Void>> handler) {
+			close().onComplete(handler);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.pe.jm.alpaca.repository;
+
+import com.pe.jm.alpaca.controller.FacturaController;
+import com.pe.jm.alpaca.dto.FacturaRequest;
+import com.pe.jm.alpaca.dto.FacturaResponse;
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import com.pe.jm.alpaca.service.FacturaService;
+import com.pe.jm.alpaca.service.IndiceProductos;
+import com.pe.jm.alpaca.service.ModoValidacion;
+import com.pe.jm.alpaca.service.ValidadorFactura;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.http.ConnectionPoolTooBusyException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LimitadorAdaptativoTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	void reduceMultiplicativamenteHastaElMinimoYUnaVezPorVentana() throws Exception {
+		LimitadorAdaptativo limitador = limitador(2, 20, 0);
+		limitador.registrarEspera(200_000_000L, true);
+		assertEquals(15.0, limite());
+		limitador.registrarEspera(0, false);
+		assertEquals(11.0, limite());
+		for (int i = 0; i < 20; i++) {
+			limitador.registrarEspera(0, false);
+		}
+		assertEquals(2.0, limite());
+
+		SimpleMeterRegistry otroRegistry = new SimpleMeterRegistry();
+		LimitadorAdaptativo conVentana = new LimitadorAdaptativo(new Metricas(otroRegistry), true, 2, 20, 100, 100, 3);
+		Thread.sleep(150);
+		conVentana.registrarEspera(0, false);
+		conVentana.registrarEspera(0, false);
+		conVentana.registrarEspera(0, false);
+		assertEquals(15.0, otroRegistry.get("alpaca.limitador.limite").gauge().value());
+	}
+
+	@Test
+	void aumentaDeAUnoPorLimiteSoloSiElLimiteSeEstaUsando() {
+		LimitadorAdaptativo limitador = limitador(2, 20, 0);
+		limitador.registrarEspera(0, false);
+		assertEquals(15.0, limite());
+
+		// Sin registros en curso, que las conexiones lleguen a tiempo no sube el límite
+		limitador.registrarEspera(1_000_000L, true);
+		assertEquals(15.0, limite());
+
+		List<Promise<Void>> enCurso = ocupar(limitador, 8);
+		for (int i = 0; i < 15; i++) {
+			limitador.registrarEspera(1_000_000L, true);
+		}
+		assertEquals(15.0, limite());
+		limitador.registrarEspera(1_000_000L, true);
+		assertEquals(16.0, limite());
+		enCurso.forEach(Promise::complete);
+	}
+
+	@Test
+	void rechazaConSobrecargaYElControladorRespondeTooManyRequests() throws Exception {
+		LimitadorAdaptativo limitador = limitador(1, 1, 0);
+		List<Promise<Void>> enCurso = ocupar(limitador, 1);
+
+		Future<Void> rechazado = limitador.admitir(() -> Future.succeededFuture());
+		SobrecargaException sobrecarga = assertInstanceOf(SobrecargaException.class, rechazado.cause());
+		assertEquals(3, sobrecarga.getReintentarEnSegundos());
+		assertEquals(1.0, registry.get("alpaca.limitador.rechazos").counter().count());
+
+		FacturaController controlador = new FacturaController(new FacturaServiceLimitado(limitador),
+				null, null, null, null, null, "async");
+		ResponseEntity<FacturaResponse> respuesta = controlador.registrarFactura(factura(), null).get();
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS, respuesta.getStatusCode());
+		assertEquals("3", respuesta.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+		// Al terminar el registro en curso se libera su cupo
+		enCurso.forEach(Promise::complete);
+		assertEquals(HttpStatus.OK, controlador.registrarFactura(factura(), null).get().getStatusCode());
+	}
+
+	@Test
+	void unLoteNoAdmitidoRechazaElRegistroMasivoConTooManyRequests() throws Exception {
+		LimitadorAdaptativo limitador = limitador(1, 1, 0);
+		List<Promise<Void>> enCurso = ocupar(limitador, 1);
+		Metricas metricas = new Metricas(registry);
+		FacturaService servicio = new FacturaService(null, null, null, null, null, null, null, null, metricas,
+				limitador, new IndiceProductos(null, null, metricas, 0), null, null,
+				new ValidadorFactura("off", new BigDecimal("0.01"), List.of()), null, 500);
+
+		FacturaController controlador = new FacturaController(servicio, null, null, null, null, null, "async");
+		ResponseEntity<List<FacturaResponse>> respuesta = controlador.registrarFacturas(List.of(request()), null).get();
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS, respuesta.getStatusCode());
+		assertEquals("3", respuesta.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+		assertEquals(1.0, registry.get("alpaca.limitador.rechazos").counter().count());
+		enCurso.forEach(Promise::complete);
+	}
+
+	@Test
+	void elPoolSaturadoCuentaComoSobrecarga() {
+		LimitadorAdaptativo limitador = limitador(2, 20, 0);
+
+		SobrecargaException sobrecarga = limitador.comoSobrecarga(
+				new RuntimeException(new ConnectionPoolTooBusyException("cola llena")));
+		assertNotNull(sobrecarga);
+		assertEquals(15.0, limite());
+		assertNull(limitador.comoSobrecarga(new IllegalStateException("otro error")));
+	}
+
+	private LimitadorAdaptativo limitador(int minimo, int maximo, long ventanaMs) {
+		return new LimitadorAdaptativo(new Metricas(registry), true, minimo, maximo, 100, ventanaMs, 3);
+	}
+
+	private double limite() {
+		return registry.get("alpaca.limitador.limite").gauge().value();
+	}
+
+	private static List<Promise<Void>> ocupar(LimitadorAdaptativo limitador, int cuantos) {
+		List<Promise<Void>> promesas = new ArrayList<>();
+		for (int i = 0; i < cuantos; i++) {
+			Promise<Void> promesa = Promise.promise();
+			assertFalse(limitador.admitir(promesa::future).failed());
+			promesas.add(promesa);
+		}
+		return promesas;
+	}
+
+	private static FacturaRequest request() {
+		return JsonMapper.builder().build().readValue("""
+				{"factura": {"serieNumero": "V001-1", "rucEmisor": "20608587030", "fechaEmision": "01/01/2024",
+				 "ruc": "20101019265", "moneda": "DOLAR AMERICANO", "porcentajeDetraccion": 0, "montoDetraccion": 0,
+				 "tipoFactura": "VENTA",
+				 "detalle": [{"cantidad": 2, "unidadMedida": "KILOGRAMO", "descripcion": "FIBRA HUACAYA BABY", "valorUnitario": 10}],
+				 "totales": {"subTotalVentas": 20, "anticipos": 0, "valorVenta": 20, "importeTotal": 20}}}
+				""", FacturaRequest.class);
+	}
+
+	private static FacturaCompleta factura() {
+		return FacturaCompleta.builder()
+				.factura(Factura.builder().rucVendedor(20608587030L).codigoFactura("V001-1").build())
+				.detalles(List.of())
+				.anticipos(List.of())
+				.build();
+	}
+
+	/**
+	 * Registra pasando por el limitador, sin validar ni tocar la base de datos
+	 */
+	private static final class FacturaServiceLimitado extends FacturaService {
+
+		private final LimitadorAdaptativo limitador;
+
+		FacturaServiceLimitado(LimitadorAdaptativo limitador) {
+			super(null, null, null, null, null, null, null, null, null, limitador, null, null, null, null, null, 0);
+			this.limitador = limitador;
+		}
+
+		@Override
+		public CompletableFuture<FacturaResponse> procesarFactura(FacturaCompleta completa, ModoValidacion modo) {
+			return limitador.admitir(() -> Future.succeededFuture(FacturaResponse.builder()
+							.success(true)
+							.message("Factura procesada exitosamente")
+							.build()))
+					.toCompletionStage()
+					.toCompletableFuture();
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.pe.jm.alpaca.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BuscadorAnticiposTest {
+
+	@Test
+	void encuentraElNumeroContenidoEnLaDescripcion() {
+		BuscadorAnticipos buscador = BuscadorAnticipos.de(List.of("E001-100", "E001-205"));
+
+		assertEquals("E001-205", buscador.buscar("ANTICIPO SEGUN FACTURA E001-205 DEL 01/12/2024"));
+		assertNull(buscador.buscar("FIBRA DE ALPACA HUACAYA BABY"));
+		assertNull(buscador.buscar(null));
+	}
+
+	@Test
+	void prefiereElNumeroMasLargo() {
+		BuscadorAnticipos buscador = BuscadorAnticipos.de(List.of("F001-12", "F001-123"));
+
+		assertEquals("F001-123", buscador.buscar("APLICACION ANTICIPO F001-123"));
+		assertEquals("F001-12", buscador.buscar("APLICACION ANTICIPO F001-12 Y OTROS"));
+	}
+
+	@Test
+	void aIgualLargoGanaElPrimeroEnAparecer() {
+		BuscadorAnticipos buscador = BuscadorAnticipos.de(List.of("E001-200", "E001-100"));
+
+		assertEquals("E001-100", buscador.buscar("ANTICIPOS E001-100 Y E001-200"));
+	}
+
+	@Test
+	void reconoceNumerosQueSeSolapan() {
+		BuscadorAnticipos buscador = BuscadorAnticipos.de(List.of("E001-1001", "1001-7"));
+
+		assertEquals("E001-1001", buscador.buscar("REF E001-1001-7"));
+		assertEquals("1001-7", buscador.buscar("REF E002-1001-7"));
+	}
+
+	@Test
+	void sinAnticiposNoEncuentraNada() {
+		assertNull(BuscadorAnticipos.de(List.of()).buscar("ANTICIPO E001-100"));
+	}
+}
@@ -0,0 +1,49 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CacheFacturasTest {
+
+	private final CacheFacturas cache = new CacheFacturas(100, 60000);
+
+	@Test
+	void unRegistroSoloDescartaLasLecturasEnCursoDeSuClave() {
+		String leida = CacheFacturas.clave(20608587030L, "V001-1");
+		String registrada = CacheFacturas.clave(20608587030L, "V001-2");
+		long versionLeida = cache.version(leida);
+		long versionRegistrada = cache.version(registrada);
+
+		cache.invalidar(registrada);
+		cache.guardar(leida, Optional.of(factura("V001-1")), versionLeida);
+		cache.guardar(registrada, Optional.empty(), versionRegistrada);
+
+		assertEquals("V001-1", cache.get(leida).orElseThrow().getFactura().getCodigoFactura());
+		assertNull(cache.get(registrada));
+	}
+
+	@Test
+	void invalidarBorraLaFacturaYLaConsultaSinResultado() {
+		String clave = CacheFacturas.clave(20608587030L, "V001-3");
+		cache.guardar(clave, Optional.empty(), cache.version(clave));
+		assertEquals(Optional.empty(), cache.get(clave));
+
+		cache.invalidar(clave);
+		assertNull(cache.get(clave));
+	}
+
+	private static FacturaCompleta factura(String codigo) {
+		return FacturaCompleta.builder()
+				.factura(Factura.builder().rucVendedor(20608587030L).codigoFactura(codigo).build())
+				.detalles(List.of())
+				.anticipos(List.of())
+				.build();
+	}
+}
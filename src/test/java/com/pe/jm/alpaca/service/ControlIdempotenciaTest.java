@@ -0,0 +1,122 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.dto.FacturaResponse;
+import com.pe.jm.alpaca.dto.ResultadoRegla;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ControlIdempotenciaTest {
+
+	private static final String CLAVE = ControlIdempotencia.clave(20608587030L, "V001-1");
+
+	@Test
+	void losReintentosSimultaneosSeUnenAlMismoRegistro() {
+		ControlIdempotencia control = new ControlIdempotencia(100, 60000);
+		AtomicInteger registros = new AtomicInteger();
+		Promise<FacturaResponse> enProceso = Promise.promise();
+		CountDownLatch salida = new CountDownLatch(8);
+
+		ExecutorService hilos = Executors.newFixedThreadPool(8);
+		List<CompletableFuture<Future<FacturaResponse>>> llamadas = new ArrayList<>();
+		try {
+			for (int i = 0; i < 8; i++) {
+				llamadas.add(CompletableFuture.supplyAsync(() -> {
+					salida.countDown();
+					esperar(salida);
+					return control.ejecutar(CLAVE, () -> {
+						registros.incrementAndGet();
+						return enProceso.future();
+					});
+				}, hilos));
+			}
+
+			List<Future<FacturaResponse>> respuestas = new ArrayList<>();
+			for (CompletableFuture<Future<FacturaResponse>> llamada : llamadas) {
+				respuestas.add(llamada.join());
+			}
+			FacturaResponse exito = exito();
+			enProceso.complete(exito);
+
+			assertEquals(1, registros.get());
+			for (Future<FacturaResponse> respuesta : respuestas) {
+				assertSame(exito, respuesta.result());
+			}
+		} finally {
+			hilos.shutdownNow();
+		}
+
+		// Terminado el registro, un reintento recibe la respuesta guardada sin volver a registrar
+		control.ejecutar(CLAVE, () -> {
+			registros.incrementAndGet();
+			return Future.succeededFuture(exito());
+		}).result();
+		assertEquals(1, registros.get());
+	}
+
+	@Test
+	void soloGuardaLasRespuestasExitosasYRespetaElTtl() throws Exception {
+		ControlIdempotencia control = new ControlIdempotencia(100, 50);
+		AtomicInteger registros = new AtomicInteger();
+
+		FacturaResponse fallo = FacturaResponse.builder().success(false).message("Error").build();
+		assertFalse(control.ejecutar(CLAVE, () -> {
+			registros.incrementAndGet();
+			return Future.succeededFuture(fallo);
+		}).result().isSuccess());
+		assertTrue(control.ejecutar(CLAVE, () -> {
+			registros.incrementAndGet();
+			return Future.succeededFuture(exito());
+		}).result().isSuccess());
+		assertEquals(2, registros.get());
+
+		Thread.sleep(80);
+		control.ejecutar(CLAVE, () -> {
+			registros.incrementAndGet();
+			return Future.succeededFuture(exito());
+		}).result();
+		assertEquals(3, registros.get());
+	}
+
+	@Test
+	void laRespuestaGuardadaNoRepiteLasValidacionesDelPrimerRegistro() {
+		ControlIdempotencia control = new ControlIdempotencia(100, 60000);
+		FacturaResponse primera = exito();
+		primera.setCodigoFactura("V001-1");
+		primera.setValidaciones(List.of(new ResultadoRegla("subtotal", false, "subtotal distinto")));
+		assertSame(primera, control.ejecutar(CLAVE, () -> Future.succeededFuture(primera)).result());
+
+		// Un reintento con otro ?validacion no debe recibir las reglas evaluadas para el primero
+		FacturaResponse reintento = control.ejecutar(CLAVE, () -> Future.succeededFuture(exito())).result();
+		assertTrue(reintento.isSuccess());
+		assertEquals("V001-1", reintento.getCodigoFactura());
+		assertNull(reintento.getValidaciones());
+		assertEquals(1, primera.getValidaciones().size());
+	}
+
+	private static void esperar(CountDownLatch salida) {
+		try {
+			salida.await();
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static FacturaResponse exito() {
+		return FacturaResponse.builder().success(true).message("Factura procesada exitosamente").build();
+	}
+}
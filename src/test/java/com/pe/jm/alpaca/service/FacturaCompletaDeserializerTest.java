@@ -0,0 +1,107 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.exc.MismatchedInputException;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.module.SimpleModule;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FacturaCompletaDeserializerTest {
+
+	private final ObjectMapper mapper = JsonMapper.builder()
+			.addModule(new SimpleModule().addDeserializer(FacturaCompleta.class, new FacturaCompletaDeserializer()))
+			.build();
+
+	@Test
+	void leeLaFacturaConSusAnticiposYMontosExactos() {
+		FacturaCompleta completa = leer(factura("01/01/2024", "12.75"));
+
+		assertEquals(20608587030L, completa.getFactura().getRucVendedor());
+		assertEquals(20101019265L, completa.getFactura().getRucCliente());
+		assertEquals(LocalDate.of(2024, 1, 1), completa.getFactura().getFechaEmision());
+		assertEquals(new BigDecimal("401.63"), completa.getFactura().getImporteTotal());
+		assertEquals("E001-9", completa.getFactura().getFacturaAnticipo());
+		assertNull(completa.getFactura().getAnulacion());
+		assertEquals(2, completa.getDetalles().size());
+		assertEquals(new BigDecimal("12.75"), completa.getDetalles().get(0).getValorUnitario());
+		assertEquals("V001-1", completa.getDetalles().get(1).getCodigoFactura());
+
+		assertEquals(1, completa.getAnticipos().size());
+		AnticipoAplicado anticipo = completa.getAnticipos().get(0);
+		assertEquals("E001-9", anticipo.getAnticipoCodigoFactura());
+		assertEquals(new BigDecimal("-100.00"), anticipo.getMontoAplicado());
+	}
+
+	@Test
+	void informaTodosLosCamposFaltantes() {
+		String json = """
+				{"factura": {"rucEmisor": "20608587030", "fechaEmision": "01/01/2024",
+				 "detalle": [{"descripcion": "FIBRA", "cantidad": 1}]}}
+				""";
+
+		String mensaje = error(json);
+		assertTrue(mensaje.contains("serieNumero"), mensaje);
+		assertTrue(mensaje.contains("ruc,"), mensaje);
+		assertTrue(mensaje.contains("totales"), mensaje);
+		assertTrue(mensaje.contains("detalle[0].valorUnitario"), mensaje);
+		assertTrue(error("{\"otro\": 1}").contains("Falta el campo factura"));
+	}
+
+	@Test
+	void rechazaMontosYRucNoNumericos() {
+		assertTrue(error(factura("01/01/2024", "\"12,75\"")).contains("El campo valorUnitario no es un número: '12,75'"));
+		assertTrue(error(factura("01/01/2024", "{}")).contains("El campo valorUnitario debe ser un número"));
+		assertTrue(error(factura("01/01/2024", "12.75").replace("\"20101019265\"", "\"2010101926X\""))
+				.contains("El campo ruc no es un RUC válido"));
+	}
+
+	@Test
+	void rechazaFechasInvalidas() {
+		assertTrue(error(factura("31/02/2024", "12.75")).contains("formato dd/MM/yyyy: '31/02/2024'"));
+		assertTrue(error(factura("2024-01-01", "12.75")).contains("formato dd/MM/yyyy: '2024-01-01'"));
+		assertTrue(error(factura("1/1/2024", "12.75")).contains("formato dd/MM/yyyy"));
+	}
+
+	@Test
+	void reutilizaLaUltimaFechaLeida() {
+		LocalDate primera = leer(factura("15/03/2024", "12.75")).getFactura().getFechaEmision();
+		LocalDate segunda = leer(factura("15/03/2024", "12.75")).getFactura().getFechaEmision();
+		LocalDate otra = leer(factura("16/03/2024", "12.75")).getFactura().getFechaEmision();
+
+		assertSame(primera, segunda);
+		assertEquals(LocalDate.of(2024, 3, 16), otra);
+		assertEquals(LocalDate.of(2024, 3, 15), leer(factura("15/03/2024", "12.75")).getFactura().getFechaEmision());
+	}
+
+	private FacturaCompleta leer(String json) {
+		return mapper.readValue(json, FacturaCompleta.class);
+	}
+
+	private String error(String json) {
+		return assertThrows(MismatchedInputException.class, () -> leer(json)).getOriginalMessage();
+	}
+
+	private static String factura(String fechaEmision, String valorUnitario) {
+		return """
+				{"factura": {
+				  "detalle": [
+				    {"cantidad": 10.5, "unidadMedida": "KILOGRAMO", "descripcion": "FIBRA DE ALPACA", "valorUnitario": %s},
+				    {"cantidad": 1, "unidadMedida": "UNIDAD", "descripcion": "ANTICIPO SEGUN FACTURA E001-9", "valorUnitario": "-100.00"}],
+				  "serieNumero": "V001-1", "rucEmisor": "20608587030", "fechaEmision": "%s", "ruc": "20101019265",
+				  "moneda": "SOLES", "facturaAnticipo": [{"numero": "E001-9"}, {"numero": ""}, null],
+				  "porcentajeDetraccion": 4, "montoDetraccion": 0, "estadoFactura": "EMITIDO", "tipoFactura": "VENTA",
+				  "totales": {"subTotalVentas": 133.88, "anticipos": 100.00, "valorVenta": 33.88, "igv": 0, "importeTotal": 401.63}}}
+				""".formatted(valorUnitario, fechaEmision);
+	}
+}
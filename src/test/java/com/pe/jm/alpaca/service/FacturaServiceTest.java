@@ -0,0 +1,82 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.dto.FacturaRequest;
+import com.pe.jm.alpaca.dto.FacturaResponse;
+import com.pe.jm.alpaca.metricas.Metricas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.mysqlclient.MySQLBatchException;
+import io.vertx.mysqlclient.MySQLException;
+import io.vertx.sqlclient.ClosedConnectionException;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FacturaServiceTest {
+
+	private final FacturaService servicio = new FacturaService(null, null, null, null, null, null, null, null,
+			null, null, null, null, null, null, null, 500);
+
+	@Test
+	void unRechazoDeMySQLEnvueltoSigueSiendoDefinitivo() {
+		MySQLException duplicada = new MySQLException("Duplicate entry 'V001-1' for key 'PRIMARY'", 1062, "23000");
+
+		// Modo de hilos virtuales: AccesoBloqueante.esperar envuelve el error en CompletionException
+		FacturaResponse virtual = servicio.respuestaFallo(new CompletionException(duplicada.getMessage(), duplicada));
+		assertNotNull(virtual.getErrores());
+
+		MySQLBatchException batch = new MySQLBatchException();
+		batch.reportError(0, duplicada);
+		assertNotNull(servicio.respuestaFallo(new CompletionException(batch)).getErrores());
+
+		MySQLException deadlock = new MySQLException("Deadlock found", 1213, "40001");
+		assertNull(servicio.respuestaFallo(new CompletionException(deadlock)).getErrores());
+	}
+
+	@Test
+	void soloLosErroresDeConexionYLosTransitoriosDeMySQLSeReintentanSinLimite() {
+		assertTrue(servicio.respuestaFallo(new CompletionException(
+				new MySQLException("Lock wait timeout exceeded", 1205, "HY000"))).isTransitorio());
+		assertTrue(servicio.respuestaFallo(new CompletionException(ClosedConnectionException.INSTANCE)).isTransitorio());
+		assertTrue(servicio.respuestaFallo(new TimeoutException("pool")).isTransitorio());
+
+		// Un error desconocido (un bug, un dato inesperado) agota los intentos del journal
+		FacturaResponse desconocido = servicio.respuestaFallo(new CompletionException(new NullPointerException("detalle")));
+		assertFalse(desconocido.isTransitorio());
+		assertNull(desconocido.getErrores());
+	}
+
+	@Test
+	void validarSolicitudAplicaLasReglasDeTotalesDelModoPedido() {
+		Metricas metricas = new Metricas(new SimpleMeterRegistry());
+		FacturaService conReglas = new FacturaService(null, null, null, null, null, null, null, null,
+				metricas, null, new IndiceProductos(null, null, metricas, 0), null, null,
+				new ValidadorFactura("off", new BigDecimal("0.01"), List.of()), null, 500);
+
+		// 3 x 10.5 x 12.75 = 401.625, pero el subtotal declarado es 500.00
+		FacturaRequest request = JsonMapper.builder().build().readValue("""
+				{"factura": {"serieNumero": "V001-1", "rucEmisor": "20608587030", "fechaEmision": "01/01/2024",
+				 "ruc": "20101019265", "moneda": "DOLAR AMERICANO", "porcentajeDetraccion": 0, "montoDetraccion": 0,
+				 "tipoFactura": "VENTA",
+				 "detalle": [
+				   {"cantidad": 10.5, "unidadMedida": "KILOGRAMO", "descripcion": "FIBRA HUACAYA BABY 0", "valorUnitario": 12.75},
+				   {"cantidad": 10.5, "unidadMedida": "KILOGRAMO", "descripcion": "FIBRA HUACAYA BABY 1", "valorUnitario": 12.75},
+				   {"cantidad": 10.5, "unidadMedida": "KILOGRAMO", "descripcion": "FIBRA HUACAYA BABY 2", "valorUnitario": 12.75}],
+				 "totales": {"subTotalVentas": 500.00, "anticipos": 0, "valorVenta": 500.00, "importeTotal": 500.00}}}
+				""", FacturaRequest.class);
+
+		// En modo strict se rechaza sin consultar MySQL (los repositorios son null)
+		List<String> errores = conReglas.validarSolicitud(request, ModoValidacion.STRICT).join();
+		assertEquals(2, errores.size());
+		assertTrue(errores.get(0).contains("401.625"));
+	}
+}
@@ -0,0 +1,65 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.Producto;
+import com.pe.jm.alpaca.repository.ProductoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Future;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IndiceProductosTest {
+
+	private final RepositorioFijo repositorio = new RepositorioFijo();
+	private final IndiceProductos indice = new IndiceProductos(repositorio, null,
+			new Metricas(new SimpleMeterRegistry()), 0);
+
+	@Test
+	void asignaElProductoMasEspecifico() {
+		cargar(Future.succeededFuture(List.of(
+				producto(1L, "Fibra de alpaca Huacaya"),
+				producto(2L, "FIBRA ALPACA HUACAYA BABY"),
+				producto(3L, "Fibra alpaca Suri"))));
+
+		assertEquals(2L, indice.resolver("FIBRA DE ALPACA HUACAYA BABY 22.5 MICRONES LOTE 3"));
+		assertEquals(1L, indice.resolver("fibra alpaca huacaya color blanco"));
+		assertEquals(3L, indice.resolver("FIBRA DE ALPACA SÚRI"));
+		assertNull(indice.resolver("ANTICIPO SEGUN FACTURA E001-100"));
+		assertNull(indice.resolver(null));
+	}
+
+	@Test
+	void siLaCargaFallaConservaElIndiceAnterior() {
+		cargar(Future.succeededFuture(List.of(producto(7L, "TOPS ALPACA"))));
+		assertEquals(7L, indice.resolver("TOPS DE ALPACA"));
+
+		cargar(Future.failedFuture("sin conexión"));
+		assertEquals(7L, indice.resolver("TOPS DE ALPACA"));
+	}
+
+	private void cargar(Future<List<Producto>> catalogo) {
+		repositorio.catalogo = catalogo;
+		indice.cargar();
+	}
+
+	private static Producto producto(Long id, String descripcion) {
+		return Producto.builder().idProducto(id).descripcion(descripcion).build();
+	}
+
+	private static final class RepositorioFijo extends ProductoRepository {
+		Future<List<Producto>> catalogo;
+
+		RepositorioFijo() {
+			super(null, null);
+		}
+
+		@Override
+		public Future<List<Producto>> findAll() {
+			return catalogo;
+		}
+	}
+}
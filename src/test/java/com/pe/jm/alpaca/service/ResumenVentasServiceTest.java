@@ -0,0 +1,60 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.metricas.Metricas;
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.DetalleFactura;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import com.pe.jm.alpaca.model.ResumenVenta;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResumenVentasServiceTest {
+
+	private final ResumenVentasService servicio = new ResumenVentasService(null,
+			new IndiceProductos(null, null, new Metricas(new SimpleMeterRegistry()), 0), null, true, 0);
+
+	@Test
+	void lasLineasQueAplicanUnAnticipoNoSeSuman() {
+		Factura factura = Factura.builder()
+				.rucVendedor(20608587030L)
+				.codigoFactura("V001-1")
+				.fechaEmision(LocalDate.of(2024, 1, 1))
+				.rucCliente(20101019265L)
+				.tipoMoneda("SOLES")
+				.build();
+		FacturaCompleta completa = FacturaCompleta.builder()
+				.factura(factura)
+				.detalles(List.of(
+						linea("FIBRA DE ALPACA HUACAYA LOTE 1", "10.5", "12.75"),
+						linea("FIBRA DE ALPACA HUACAYA LOTE 2", "4.5", "12.75"),
+						linea("ANTICIPO SEGUN FACTURA E001-9", "1", "-100.00")))
+				.anticipos(List.of(AnticipoAplicado.builder()
+						.anticipoCodigoFactura("E001-9")
+						.montoAplicado(new BigDecimal("-100.00"))
+						.build()))
+				.build();
+
+		List<ResumenVenta> resumenes = servicio.incrementos(List.of(completa));
+
+		assertEquals(1, resumenes.size());
+		assertEquals(new BigDecimal("15.0"), resumenes.get(0).getCantidad());
+		assertEquals(new BigDecimal("191.2500"), resumenes.get(0).getImporte());
+		assertEquals(2, resumenes.get(0).getLineas());
+		assertEquals(1, resumenes.get(0).getFacturas());
+	}
+
+	private static DetalleFactura linea(String descripcion, String cantidad, String valorUnitario) {
+		return DetalleFactura.builder()
+				.descripcion(descripcion)
+				.cantidad(new BigDecimal(cantidad))
+				.valorUnitario(new BigDecimal(valorUnitario))
+				.build();
+	}
+}
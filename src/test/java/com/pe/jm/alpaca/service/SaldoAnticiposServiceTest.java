@@ -0,0 +1,94 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import com.pe.jm.alpaca.model.SaldoAnticipo;
+import com.pe.jm.alpaca.repository.SaldoAnticipoRepository;
+import io.vertx.core.Future;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SaldoAnticiposServiceTest {
+
+	private static final Long RUC = 20608587030L;
+
+	private final RepositorioFijo repositorio = new RepositorioFijo();
+	private final SaldoAnticiposService servicio = new SaldoAnticiposService(repositorio, true, 100, 60000);
+
+	@Test
+	void rechazaLaVentaQueExcedeElSaldoApartado() {
+		repositorio.saldos.put("E001-9", new BigDecimal("100.00"));
+
+		SaldoAnticiposService.Reserva primera = reservar(venta("V001-1", "E001-9", "-60.00"));
+		SaldoAnticiposService.Reserva segunda = reservar(venta("V001-2", "E001-9", "-60.00"));
+
+		assertTrue(primera.errores().isEmpty());
+		assertEquals(1, segunda.errores().size());
+		assertTrue(segunda.errores().get(0).contains("no tiene saldo suficiente"));
+
+		// Si la primera no se registra, su monto vuelve a estar disponible
+		servicio.liberar(primera);
+		assertTrue(reservar(venta("V001-3", "E001-9", "-100.00")).errores().isEmpty());
+	}
+
+	@Test
+	void unAnticipoDeLaListaSePuedeAplicarEnLasFacturasSiguientes() {
+		Factura anticipo = Factura.builder()
+				.rucVendedor(RUC)
+				.codigoFactura("E001-20")
+				.tipo("ANTICIPO")
+				.importeTotal(new BigDecimal("50.00"))
+				.build();
+		List<SaldoAnticiposService.Reserva> reservas = servicio.reservar(List.of(
+				venta("V001-1", "E001-20", "-10.00"),
+				FacturaCompleta.builder().factura(anticipo).detalles(List.of()).anticipos(List.of()).build(),
+				venta("V001-2", "E001-20", "-50.00"),
+				venta("V001-3", "E001-20", "-0.01"))).result();
+
+		assertTrue(reservas.get(0).errores().get(0).contains("no está registrado"));
+		assertTrue(reservas.get(1).errores().isEmpty());
+		assertTrue(reservas.get(2).errores().isEmpty());
+		assertEquals(1, reservas.get(3).errores().size());
+	}
+
+	private SaldoAnticiposService.Reserva reservar(FacturaCompleta venta) {
+		return servicio.reservar(List.of(venta)).result().get(0);
+	}
+
+	private static FacturaCompleta venta(String codigo, String anticipo, String monto) {
+		return FacturaCompleta.builder()
+				.factura(Factura.builder().rucVendedor(RUC).codigoFactura(codigo).tipo("VENTA").build())
+				.detalles(List.of())
+				.anticipos(List.of(AnticipoAplicado.builder()
+						.ventaRucVendedor(RUC)
+						.ventaCodigoFactura(codigo)
+						.anticipoRucVendedor(RUC)
+						.anticipoCodigoFactura(anticipo)
+						.montoAplicado(new BigDecimal(monto))
+						.build()))
+				.build();
+	}
+
+	private static final class RepositorioFijo extends SaldoAnticipoRepository {
+		final Map<String, BigDecimal> saldos = new HashMap<>();
+
+		RepositorioFijo() {
+			super(null, null, null);
+		}
+
+		@Override
+		public Future<SaldoAnticipo> findByAnticipo(Long rucVendedor, String codigoFactura) {
+			BigDecimal saldo = saldos.get(codigoFactura);
+			return Future.succeededFuture(saldo == null ? null
+					: SaldoAnticipo.builder().rucVendedor(rucVendedor).codigoFactura(codigoFactura).saldo(saldo).build());
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.pe.jm.alpaca.service;
+
+import com.pe.jm.alpaca.dto.ResultadoRegla;
+import com.pe.jm.alpaca.model.AnticipoAplicado;
+import com.pe.jm.alpaca.model.DetalleFactura;
+import com.pe.jm.alpaca.model.Factura;
+import com.pe.jm.alpaca.model.FacturaCompleta;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidadorFacturaTest {
+
+	private final ValidadorFactura validador = new ValidadorFactura("off", new BigDecimal("0.01"), List.of());
+
+	@Test
+	void ventaConAnticipoCuadraConRedondeo() {
+		// 3 x 10.5 x 12.75 = 401.625, declarado 401.63; anticipo de 100.00
+		ValidadorFactura.Validacion validacion = validador.validar(venta("100.00", "401.63", "301.63", "301.63"),
+				ModoValidacion.STRICT);
+
+		assertFalse(validacion.rechaza());
+		assertEquals(List.of("venta.anticipos", "venta.subtotal", "venta.valor-venta"),
+				validacion.resultados().stream().map(ResultadoRegla::getRegla).toList());
+		assertTrue(validacion.resultados().stream().allMatch(ResultadoRegla::isValido));
+	}
+
+	@Test
+	void strictRechazaYWarnSoloInforma() {
+		FacturaCompleta descuadrada = venta("100.00", "401.63", "401.63", "401.63");
+
+		ValidadorFactura.Validacion estricta = validador.validar(descuadrada, ModoValidacion.STRICT);
+		assertTrue(estricta.rechaza());
+		assertEquals(1, estricta.errores().size());
+		assertTrue(estricta.errores().get(0).contains("valor de venta calculado (301.625"));
+
+		ValidadorFactura.Validacion advertencia = validador.validar(descuadrada, ModoValidacion.WARN);
+		assertFalse(advertencia.rechaza());
+		assertEquals(estricta.errores(), advertencia.errores());
+	}
+
+	@Test
+	void anticipoDebeCoincidirConSuDetalle() {
+		Factura factura = Factura.builder()
+				.tipo("ANTICIPO")
+				.subTotalVentas(new BigDecimal("500.00"))
+				.importeTotal(new BigDecimal("500.00"))
+				.build();
+		FacturaCompleta completa = FacturaCompleta.builder()
+				.factura(factura)
+				.detalles(List.of(linea("ANTICIPO POR FIBRA", "1", "450.00")))
+				.anticipos(List.of())
+				.build();
+
+		ValidadorFactura.Validacion validacion = validador.validar(completa, ModoValidacion.STRICT);
+		assertTrue(validacion.rechaza());
+		assertEquals("anticipo.importe", validacion.resultados().get(0).getRegla());
+	}
+
+	@Test
+	void offNoEvaluaYUsaElModoPorDefecto() {
+		ValidadorFactura.Validacion validacion = validador.validar(venta("0", "1", "1", "1"), null);
+
+		assertFalse(validacion.rechaza());
+		assertNull(validacion.resultados());
+	}
+
+	private static FacturaCompleta venta(String anticipos, String subTotal, String valorVenta, String importeTotal) {
+		Factura factura = Factura.builder()
+				.tipo("VENTA")
+				.anticipos(new BigDecimal(anticipos))
+				.subTotalVentas(new BigDecimal(subTotal))
+				.valorVenta(new BigDecimal(valorVenta))
+				.importeTotal(new BigDecimal(importeTotal))
+				.build();
+		return FacturaCompleta.builder()
+				.factura(factura)
+				.detalles(List.of(
+						linea("FIBRA DE ALPACA HUACAYA LOTE 1", "10.5", "12.75"),
+						linea("FIBRA DE ALPACA HUACAYA LOTE 2", "10.5", "12.75"),
+						linea("FIBRA DE ALPACA HUACAYA LOTE 3", "10.5", "12.75"),
+						linea("ANTICIPO SEGUN FACTURA E001-9", "1", "-100.00")))
+				.anticipos(List.of(AnticipoAplicado.builder()
+						.anticipoCodigoFactura("E001-9")
+						.montoAplicado(new BigDecimal("-100.00"))
+						.build()))
+				.build();
+	}
+
+	private static DetalleFactura linea(String descripcion, String cantidad, String valorUnitario) {
+		return DetalleFactura.builder()
+				.descripcion(descripcion)
+				.cantidad(new BigDecimal(cantidad))
+				.valorUnitario(new BigDecimal(valorUnitario))
+				.build();
+	}
+}